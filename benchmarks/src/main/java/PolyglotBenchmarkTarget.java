@@ -0,0 +1,101 @@
+import com.example.polyglotast.PolyglotTreeHandler;
+import com.example.polyglotls.benchmarks.BenchmarkTarget;
+import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+public class PolyglotBenchmarkTarget implements BenchmarkTarget {
+
+    private PolyglotLanguageServer server; // Server measured
+    private PolyglotTextDocumentService textDocumentService; // Text document service of the server
+
+    @Override
+    public void start() throws Exception {
+        this.server = new PolyglotLanguageServer();
+        this.server.connect(new StubLanguageClient());
+        InitializeParams params = new InitializeParams();
+        params.setCapabilities(new ClientCapabilities());
+        this.server.initialize(params).get();
+        // Downstream language servers are not launched
+        this.server.languageClientManager = new StubLanguageClientManager(this.server);
+        this.textDocumentService = (PolyglotTextDocumentService) this.server.getTextDocumentService();
+    }
+
+    @Override
+    public void stop() {
+        // exit() would stop the JVM : close() only stops the executors, timers & background threads of the server
+        this.server.close();
+        PolyglotTreeHandler.getfilePathToTreeHandler().clear();
+        PolyglotTreeHandler.getfilePathOfTreeHandler().clear();
+    }
+
+    @Override
+    public void createTree(Path file) throws Exception {
+        this.textDocumentService.createTree(file.toUri().toString());
+    }
+
+    @Override
+    public void changeTree(Path file, String code) throws Exception {
+        this.textDocumentService.changeTree(file.toUri().toString(), code);
+    }
+
+    @Override
+    public Object checkInconsistencies(Path file) {
+        PolyglotTreeHandler tree = this.server.workspaceManager.getTree(file);
+        return this.textDocumentService.checkInconsistencies(new HashSet<>(tree.getHostTrees()));
+    }
+
+    @Override
+    public Object completion(Path file, int line, int character) throws Exception {
+        return this.textDocumentService.completion(new CompletionParams(new TextDocumentIdentifier(file.toUri().toString()), new Position(line, character))).get();
+    }
+
+    @Override
+    public Object hover(Path file, int line, int character) throws Exception {
+        return this.textDocumentService.hover(new HoverParams(new TextDocumentIdentifier(file.toUri().toString()), new Position(line, character))).get();
+    }
+
+    @Override
+    public void invalidateHovers(Path file) {
+        Set<Path> closure = this.server.importExportIndex.getHostClosure(file);
+        for (Path path : closure != null ? closure : Set.of(file)) {
+            this.server.hoverCache.invalidate(path);
+        }
+    }
+
+    @Override
+    public Object rename(Path file, int line, int character, String newName) throws Exception {
+        return this.textDocumentService.rename(new RenameParams(new TextDocumentIdentifier(file.toUri().toString()), new Position(line, character), newName)).get();
+    }
+
+    /**
+     * Client ignoring the diagnostics & messages of the server
+     */
+    private static class StubLanguageClient implements LanguageClient {
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
@@ -0,0 +1,423 @@
+import com.example.polyglotls.benchmarks.SyntheticWorkspace;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.launch.LSPLauncher;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.LanguageServer;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class PolyglotLoadGenerator {
+
+    private static final int PIPE_SIZE = 1 << 20; // Size of the in-memory pipes between the client & the server
+    private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1); // Highest latency tracked by the histograms (microseconds)
+
+    private final Config config; // Configuration of the load test
+    private final Map<String, MethodStatistics> statistics; // Latency histogram & counters of each method
+    private final AtomicLong tickets; // Next step to send (shared by all the workers)
+    private volatile long measureStart; // Time when the first measured step was sent (ns)
+    private RemoteEndpoint endpoint; // Client endpoint connected to the server
+
+    public PolyglotLoadGenerator(Config config){
+        this.config = config;
+        this.statistics = new ConcurrentHashMap<>();
+        this.tickets = new AtomicLong();
+    }
+
+    /**
+     * Run a load test : java -cp target/benchmarks.jar PolyglotLoadGenerator [config.json]
+     * @param args path of the configuration file (optional, defaults are used otherwise)
+     */
+    public static void main(String[] args) throws Exception {
+        Config config = args.length > 0 ? new Gson().fromJson(Files.readString(Paths.get(args[0])), Config.class) : new Config();
+        Map<String, Object> results = new PolyglotLoadGenerator(config).run();
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(results);
+        System.out.println(json);
+        if(config.output != null && !config.output.isEmpty()) Files.writeString(Paths.get(config.output), json);
+        // The server listens until its input is closed, don't wait for it
+        System.exit(0);
+    }
+
+    /**
+     * Start a server over in-memory pipes, open the session files, then send the steps from all the workers
+     * @return results of the load test
+     */
+    public Map<String, Object> run() throws Exception {
+        SyntheticWorkspace workspace = null;
+        Path root;
+        List<Step> setup = new ArrayList<>();
+        List<Step> steps = new ArrayList<>();
+        int expectedFiles = 0;
+        if(this.config.session == null || this.config.session.isEmpty()){
+            workspace = new SyntheticWorkspace(this.config.programs, this.config.guestsPerProgram, this.config.exportsPerFile);
+            root = workspace.getRoot();
+            this.syntheticSession(workspace, setup, steps);
+            expectedFiles = this.config.programs * (1 + this.config.guestsPerProgram);
+        } else {
+            root = Paths.get(this.config.workspace).toAbsolutePath();
+            this.recordedSession(Paths.get(this.config.session), root, setup, steps);
+        }
+        if(steps.isEmpty()) throw new IllegalArgumentException("The session has no step to measure");
+
+        try {
+            this.connect(root);
+            for (Step step : setup) {
+                step.send(this.endpoint);
+            }
+            this.awaitIndexed(expectedFiles);
+
+            long start = System.nanoTime();
+            ArrayList<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, this.config.concurrency); i++) {
+                Thread worker = new Thread(() -> this.work(steps, start), "load-worker-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return this.results(System.nanoTime());
+        } finally {
+            if(workspace != null) workspace.delete();
+        }
+    }
+
+    /**
+     * Start the server with PolyglotLanguageServerLauncher.startServer, connect a client to it and initialize it
+     * @param root root folder of the workspace
+     */
+    private void connect(Path root) throws Exception {
+        PipedOutputStream clientOut = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(clientOut, PIPE_SIZE);
+        PipedOutputStream serverOut = new PipedOutputStream();
+        PipedInputStream clientIn = new PipedInputStream(serverOut, PIPE_SIZE);
+        Thread server = new Thread(() -> {
+            try {
+                PolyglotLanguageServerLauncher.startServer(serverIn, serverOut);
+            } catch (Exception e) {
+                System.err.println(e);
+            }
+        }, "load-server");
+        server.setDaemon(true);
+        server.start();
+
+        Launcher<LanguageServer> launcher = LSPLauncher.createClientLauncher(new SilentClient(), clientIn, clientOut);
+        launcher.startListening();
+        this.endpoint = launcher.getRemoteEndpoint();
+        InitializeParams params = new InitializeParams();
+        params.setClientInfo(new ClientInfo("Polyglot load generator", "v1"));
+        params.setCapabilities(new ClientCapabilities());
+        params.setRootUri(root.toUri().toString());
+        launcher.getRemoteProxy().initialize(params).get(this.config.requestTimeoutMs, TimeUnit.MILLISECONDS);
+        launcher.getRemoteProxy().initialized(new InitializedParams());
+    }
+
+    /**
+     * Wait until the server has indexed the files opened by the setup (the files count reaches the expected one, or stops changing)
+     * @param expectedFiles number of files expected in the index (0 : unknown)
+     */
+    private void awaitIndexed(int expectedFiles) throws Exception {
+        long deadline = System.currentTimeMillis() + this.config.readyTimeoutMs;
+        double previous = -1;
+        int stablePolls = 0;
+        while(System.currentTimeMillis() < deadline){
+            Object result = this.endpoint.request("$/polyglot/index", null).get(this.config.requestTimeoutMs, TimeUnit.MILLISECONDS);
+            double files = new Gson().toJsonTree(result).getAsJsonObject().get("files").getAsDouble();
+            if(expectedFiles > 0 && files >= expectedFiles) return;
+            stablePolls = files > 0 && files == previous ? stablePolls + 1 : 0;
+            if(expectedFiles == 0 && stablePolls >= 3) return;
+            previous = files;
+            Thread.sleep(200);
+        }
+        System.err.println("The server has not indexed the session files after " + this.config.readyTimeoutMs + " ms, measuring anyway");
+    }
+
+    /**
+     * Send steps until all the tickets are taken. With a rate, each ticket has an intended start time and latencies are measured from it,
+     * so a server falling behind the schedule is not hidden by the workers waiting for it (coordinated omission)
+     * @param steps steps of the session, sent in round robin
+     * @param start start time of the load (ns)
+     */
+    private void work(List<Step> steps, long start){
+        long total = (long) this.config.warmupRequests + this.config.requests;
+        double interval = this.config.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / this.config.rate : 0;
+        while(true){
+            long ticket = this.tickets.getAndIncrement();
+            if(ticket >= total) return;
+            long intended = interval > 0 ? start + (long) (ticket * interval) : System.nanoTime();
+            long wait;
+            while((wait = intended - System.nanoTime()) > 0){
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = ticket >= this.config.warmupRequests;
+            if(ticket == this.config.warmupRequests) this.measureStart = intended;
+
+            Step step = steps.get((int) (ticket % steps.size()));
+            CompletableFuture<?> response = step.send(this.endpoint);
+            MethodStatistics methodStatistics = measured ? this.statistics.computeIfAbsent(step.method(), m -> new MethodStatistics()) : null;
+            if(response == null){
+                // Notifications have no response, only their count is measured
+                if(measured) methodStatistics.notifications.increment();
+                continue;
+            }
+            boolean failed = false;
+            try {
+                response.get(this.config.requestTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                failed = true;
+            }
+            if(!measured) continue;
+            if(failed) methodStatistics.errors.increment();
+            else methodStatistics.latencies.recordValue(Math.min(HIGHEST_LATENCY, Math.max(0, (System.nanoTime() - intended) / 1000)));
+        }
+    }
+
+    /**
+     * Build the results of the load test : latency percentiles (microseconds) & throughput of each method, and the total throughput
+     * @param end end time of the load (ns)
+     * @return results
+     */
+    private Map<String, Object> results(long end){
+        double seconds = Math.max(1, end - this.measureStart) / 1e9;
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("config", this.config);
+        results.put("durationSeconds", seconds);
+        long total = 0;
+        Map<String, Object> methods = new LinkedHashMap<>();
+        for (Map.Entry<String, MethodStatistics> entry : this.statistics.entrySet()) {
+            Histogram latencies = entry.getValue().latencies;
+            long count = latencies.getTotalCount() + entry.getValue().notifications.sum();
+            total += count;
+            Map<String, Object> method = new LinkedHashMap<>();
+            method.put("count", count);
+            method.put("errors", entry.getValue().errors.sum());
+            method.put("throughput", count / seconds);
+            if(latencies.getTotalCount() > 0){
+                method.put("p50", latencies.getValueAtPercentile(50));
+                method.put("p99", latencies.getValueAtPercentile(99));
+                method.put("p999", latencies.getValueAtPercentile(99.9));
+                method.put("max", latencies.getMaxValue());
+                method.put("mean", latencies.getMean());
+            }
+            methods.put(entry.getKey(), method);
+        }
+        results.put("throughput", total / seconds);
+        results.put("latencyUnit", "us");
+        results.put("methods", methods);
+        return results;
+    }
+
+    /**
+     * Build a synthetic session : every host is opened, then hover/completion/rename/didChange steps are drawn from the mix
+     * @param workspace generated workspace
+     * @param setup list to fill with the setup steps (not measured)
+     * @param steps list to fill with the measured steps
+     */
+    private void syntheticSession(SyntheticWorkspace workspace, List<Step> setup, List<Step> steps){
+        List<Path> hosts = workspace.getHosts();
+        ArrayList<ChangeStep> changes = new ArrayList<>();
+        for (int i = 0; i < hosts.size(); i++) {
+            String uri = hosts.get(i).toUri().toString();
+            setup.add(new RequestStep("textDocument/didOpen", new DidOpenTextDocumentParams(new TextDocumentItem(uri, "python", 1, workspace.getHostCode(i))), false));
+            changes.add(new ChangeStep(uri, workspace.getFirstImportLine() - 1));
+        }
+        int totalWeight = 0;
+        for (int weight : this.config.mix.values()) {
+            totalWeight += weight;
+        }
+        if(totalWeight <= 0) return;
+        Random random = new Random(this.config.seed);
+        for (int i = 0; i < this.config.sessionLength; i++) {
+            int program = random.nextInt(hosts.size());
+            TextDocumentIdentifier document = new TextDocumentIdentifier(hosts.get(program).toUri().toString());
+            int draw = random.nextInt(totalWeight);
+            String method = null;
+            for (Map.Entry<String, Integer> entry : this.config.mix.entrySet()) {
+                draw -= entry.getValue();
+                if(draw < 0){
+                    method = entry.getKey();
+                    break;
+                }
+            }
+            switch (method){
+                case "textDocument/hover":
+                    steps.add(new RequestStep(method, new HoverParams(document, new Position(workspace.getFirstImportLine(), 0)), true));
+                    break;
+                case "textDocument/completion":
+                    steps.add(new RequestStep(method, new CompletionParams(document, new Position(workspace.getEndLine(), 0)), true));
+                    break;
+                case "textDocument/rename":
+                    steps.add(new RequestStep(method, new RenameParams(document, new Position(workspace.getFirstImportLine(), workspace.getFirstImportNameCharacter()), "renamed"), true));
+                    break;
+                case "textDocument/didChange":
+                    steps.add(changes.get(program));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown method in the mix : " + method);
+            }
+        }
+    }
+
+    /**
+     * Load a recorded session : one JSON message per line ({"method": ..., "params": ..., "request": true|false}),
+     * "${workspace}" is replaced by the uri of the workspace folder. The didOpen notifications are the setup, the other messages are measured
+     * @param session path of the session file
+     * @param root workspace folder
+     * @param setup list to fill with the setup steps (not measured)
+     * @param steps list to fill with the measured steps
+     */
+    private void recordedSession(Path session, Path root, List<Step> setup, List<Step> steps) throws IOException {
+        String rootUri = root.toUri().toString().replaceAll("/$", "");
+        for (String line : Files.readAllLines(session, StandardCharsets.UTF_8)) {
+            if(line.isBlank()) continue;
+            JsonObject message = JsonParser.parseString(line.replace("${workspace}", rootUri)).getAsJsonObject();
+            String method = message.get("method").getAsString();
+            boolean request = message.has("request") ? message.get("request").getAsBoolean() : !method.startsWith("textDocument/did");
+            RequestStep step = new RequestStep(method, message.get("params"), request);
+            if(method.equals("textDocument/didOpen")) setup.add(step);
+            else steps.add(step);
+        }
+    }
+
+    private interface Step {
+        /**
+         * Get the LSP method of the step
+         * @return method name
+         */
+        String method();
+
+        /**
+         * Send the step to the server
+         * @param endpoint client endpoint
+         * @return response future, null for a notification
+         */
+        CompletableFuture<?> send(RemoteEndpoint endpoint);
+    }
+
+    private static class RequestStep implements Step {
+        private final String method; // LSP method
+        private final Object params; // Parameters of the message (lsp4j object or raw json)
+        private final boolean request; // The message expects a response
+
+        RequestStep(String method, Object params, boolean request){
+            this.method = method;
+            this.params = params;
+            this.request = request;
+        }
+
+        @Override
+        public String method(){
+            return this.method;
+        }
+
+        @Override
+        public CompletableFuture<?> send(RemoteEndpoint endpoint){
+            Object params = this.params instanceof JsonElement && ((JsonElement) this.params).isJsonNull() ? null : this.params;
+            if(this.request) return endpoint.request(this.method, params);
+            endpoint.notify(this.method, params);
+            return null;
+        }
+    }
+
+    private static class ChangeStep implements Step {
+        private final String uri; // Uri of the host edited
+        private final int emptyLine; // Line of the empty line inserted & removed alternately
+        private int version = 1; // Version of the document known by the server
+
+        ChangeStep(String uri, int emptyLine){
+            this.uri = uri;
+            this.emptyLine = emptyLine;
+        }
+
+        @Override
+        public String method(){
+            return "textDocument/didChange";
+        }
+
+        /**
+         * Insert an empty line, or remove it if the previous change inserted it (the version & the send are atomic, so the server gets the changes in order)
+         */
+        @Override
+        public synchronized CompletableFuture<?> send(RemoteEndpoint endpoint){
+            this.version++;
+            TextDocumentContentChangeEvent change = this.version % 2 == 0
+                    ? new TextDocumentContentChangeEvent(new Range(new Position(this.emptyLine, 0), new Position(this.emptyLine, 0)), "\n")
+                    : new TextDocumentContentChangeEvent(new Range(new Position(this.emptyLine, 0), new Position(this.emptyLine + 1, 0)), "");
+            endpoint.notify(this.method(), new DidChangeTextDocumentParams(new VersionedTextDocumentIdentifier(this.uri, this.version), List.of(change)));
+            return null;
+        }
+    }
+
+    private static class MethodStatistics {
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY, 3); // Latencies of the responses (microseconds)
+        final LongAdder errors = new LongAdder(); // Number of failed or timed out requests
+        final LongAdder notifications = new LongAdder(); // Number of notifications sent
+    }
+
+    public static class Config {
+        public String session = ""; // Recorded session to replay ("" : synthetic session)
+        public String workspace = "."; // Workspace folder of the recorded session
+        public int programs = 10; // Number of programs of the synthetic workspace
+        public int guestsPerProgram = 3; // Number of javascript guests of each synthetic program
+        public int exportsPerFile = 10; // Number of variables exported by each synthetic file
+        public Map<String, Integer> mix = new LinkedHashMap<>(Map.of("textDocument/hover", 4, "textDocument/completion", 3, "textDocument/rename", 1, "textDocument/didChange", 2)); // Weight of each method in the synthetic session
+        public int sessionLength = 1000; // Number of steps of the synthetic session (replayed in round robin)
+        public long seed = 42; // Seed of the synthetic session
+        public int concurrency = 4; // Number of workers sending steps, each waits for its response before the next step
+        public double rate = 0; // Steps per second sent by all the workers (0 : as fast as the workers can)
+        public int warmupRequests = 1000; // Number of steps sent before measuring
+        public int requests = 10000; // Number of steps measured
+        public long requestTimeoutMs = 30000; // Time after which a request is counted as an error
+        public long readyTimeoutMs = 60000; // Maximum time to wait for the server to index the session files
+        public String output = "load-results.json"; // File of the JSON results ("" : standard output only)
+    }
+
+    private static class SilentClient implements LanguageClient {
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
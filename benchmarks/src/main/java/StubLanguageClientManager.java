@@ -0,0 +1,66 @@
+import org.eclipse.lsp4j.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+public class StubLanguageClientManager extends LanguageClientManager {
+
+    public StubLanguageClientManager(PolyglotLanguageServer languageServer){
+        super(languageServer);
+    }
+
+    @Override
+    public void didOpenRequest(DidOpenTextDocumentParams params){
+    }
+
+    @Override
+    public void didChangeRequest(DidChangeTextDocumentParams params, Supplier<String> fullText){
+    }
+
+    @Override
+    public void didSaveRequest(DidSaveTextDocumentParams params){
+    }
+
+    @Override
+    public void didCloseRequest(DidCloseTextDocumentParams params){
+    }
+
+    @Override
+    public List<FileRename> didRenameFiles(RenameFilesParams params){
+        return List.of();
+    }
+
+    /**
+     * Answer a hover request with the type of a javascript variable
+     * @param params HoverParams
+     * @return hover future, already completed
+     */
+    @Override
+    public CompletableFuture<Hover> hoverRequest(HoverParams params){
+        return CompletableFuture.completedFuture(new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "let value: number[]")));
+    }
+
+    /**
+     * Answer a rename request with the edit of the renamed position only
+     * @param params RenameParams
+     * @return workspace edit future, already completed
+     */
+    @Override
+    public CompletableFuture<WorkspaceEdit> renameRequest(RenameParams params){
+        HashMap<String, List<TextEdit>> changes = new HashMap<>();
+        changes.put(params.getTextDocument().getUri(), List.of(new TextEdit(new Range(params.getPosition(), params.getPosition()), params.getNewName())));
+        return CompletableFuture.completedFuture(new WorkspaceEdit(changes));
+    }
+
+    @Override
+    public CompletableFuture<Object> shutdown(){
+        return CompletableFuture.completedFuture(new Object());
+    }
+
+    @Override
+    public LanguageServerClient createNewClient(String language, int instance){
+        return null;
+    }
+}
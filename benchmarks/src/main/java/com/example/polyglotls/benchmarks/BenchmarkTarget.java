@@ -0,0 +1,69 @@
+package com.example.polyglotls.benchmarks;
+
+import java.nio.file.Path;
+
+public interface BenchmarkTarget {
+
+    /**
+     * Start a new server, connected to stub downstream language servers & to a stub client
+     */
+    void start() throws Exception;
+
+    /**
+     * Stop the server & forget every AST (the AST library keeps them in static maps)
+     */
+    void stop();
+
+    /**
+     * Open a file : parse it with the files of its directory & process their diagnostics
+     * @param file path of the file
+     */
+    void createTree(Path file) throws Exception;
+
+    /**
+     * Reparse a file with a new content & update the diagnostics
+     * @param file path of the file
+     * @param code new content of the file
+     */
+    void changeTree(Path file, String code) throws Exception;
+
+    /**
+     * Check the import/export inconsistencies of the programs of a file
+     * @param file path of the file
+     * @return paths covered by the check
+     */
+    Object checkInconsistencies(Path file);
+
+    /**
+     * Compute the completion items of a position
+     * @return completion items
+     */
+    Object completion(Path file, int line, int character) throws Exception;
+
+    /**
+     * Compute the hover of a position
+     * @return hover
+     */
+    Object hover(Path file, int line, int character) throws Exception;
+
+    /**
+     * Forget the cached hovers depending on a file, as if the files of its program had been reparsed
+     * @param file path of the file
+     */
+    void invalidateHovers(Path file);
+
+    /**
+     * Compute the edits renaming the polyglot variable of a position
+     * @return workspace edit
+     */
+    Object rename(Path file, int line, int character, String newName) throws Exception;
+
+    /**
+     * Load the implementation of the target : the server classes are in the default package, which can't be imported
+     * from a named package (and JMH refuses benchmarks in the default package), so PolyglotBenchmarkTarget is loaded by name
+     * @return a new target
+     */
+    static BenchmarkTarget load() throws ReflectiveOperationException {
+        return (BenchmarkTarget) Class.forName("PolyglotBenchmarkTarget").getDeclaredConstructor().newInstance();
+    }
+}
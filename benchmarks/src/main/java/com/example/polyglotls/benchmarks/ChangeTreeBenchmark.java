@@ -0,0 +1,38 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ChangeTreeBenchmark {
+
+    @Param({"shift", "rename"})
+    public String edit; // Kind of edition
+
+    private String original; // Code of the host before the edition
+    private String edited; // Code of the host after the edition
+    private boolean toggle; // The host alternates between both codes, so each invocation is a real edition
+
+    @Setup(Level.Trial)
+    public void prepare(WorkspaceState state) {
+        int program = state.programs / 2;
+        this.original = state.workspace.getHostCode(program);
+        this.edited = this.edit.equals("shift") ? state.workspace.shiftedHostCode(program) : state.workspace.renamedHostCode(program);
+    }
+
+    /**
+     * Edit the host : reparse, facts diff, and the checks & diagnostics the edition requires
+     * (an edition that only moves the statements remaps the diagnostics, an edition of an import checks the whole program)
+     */
+    @Benchmark
+    public void changeTree(WorkspaceState state) throws Exception {
+        this.toggle = !this.toggle;
+        state.target.changeTree(state.host(), this.toggle ? this.edited : this.original);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CheckInconsistenciesBenchmark {
+
+    /**
+     * Check the imports/exports of a whole program (DU builder visit & diagnostics of every file of the program)
+     * @return paths covered by the check
+     */
+    @Benchmark
+    public Object checkInconsistencies(WorkspaceState state) {
+        return state.target.checkInconsistencies(state.host());
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompletionBenchmark {
+
+    /**
+     * Complete the polyglot variables not imported yet, at the end of a host
+     * @return completion items
+     */
+    @Benchmark
+    public Object completion(WorkspaceState state) throws Exception {
+        return state.target.completion(state.host(), state.workspace.getEndLine(), 0);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HoverBenchmark {
+
+    /**
+     * Hover a variable imported from a javascript guest, answered by the hover cache after the first invocation
+     * @return hover
+     */
+    @Benchmark
+    public Object hover(WorkspaceState state) throws Exception {
+        return state.target.hover(state.host(), state.workspace.getFirstImportLine(), 0);
+    }
+
+    /**
+     * Hover a variable imported from a javascript guest, with the cached hovers of its program invalidated
+     * (typing visit, then the stubbed javascript server answers the type)
+     * @return hover
+     */
+    @Benchmark
+    public Object hoverUncached(WorkspaceState state) throws Exception {
+        state.target.invalidateHovers(state.host());
+        return state.target.hover(state.host(), state.workspace.getFirstImportLine(), 0);
+    }
+}
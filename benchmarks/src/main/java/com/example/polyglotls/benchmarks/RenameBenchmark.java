@@ -0,0 +1,22 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenameBenchmark {
+
+    /**
+     * Rename a polyglot variable from its name in an import (edits of every export & import of the program)
+     * @return workspace edit
+     */
+    @Benchmark
+    public Object rename(WorkspaceState state) throws Exception {
+        return state.target.rename(state.host(), state.workspace.getFirstImportLine(), state.workspace.getFirstImportNameCharacter(), "renamed");
+    }
+}
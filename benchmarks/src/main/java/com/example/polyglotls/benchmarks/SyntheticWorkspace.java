@@ -0,0 +1,136 @@
+package com.example.polyglotls.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SyntheticWorkspace {
+
+    private static final String HOST_IMPORT_PREFIX = "polyglot.import_value('"; // Start of a python import, up to the variable name
+
+    private final Path root; // Root folder of the workspace
+    private final List<Path> hosts; // Host file of each program
+    private final List<String> hostCodes; // Content of each host file
+    private final int firstImportLine; // Line of the first import of the hosts
+    private final int lineCount; // Number of lines of the hosts
+
+    /**
+     * Generate a workspace in a new temporary folder : each program is a folder with a python host evaluating javascript guests,
+     * the guests export variables imported by the host & the host exports variables imported by the guests (same names in every program)
+     * @param programs number of programs (folders)
+     * @param guestsPerProgram number of javascript guests evaluated by each host
+     * @param exportsPerFile number of variables exported by each file
+     */
+    public SyntheticWorkspace(int programs, int guestsPerProgram, int exportsPerFile) throws IOException {
+        this.root = Files.createTempDirectory("polyglot-benchmark");
+        this.hosts = new ArrayList<>();
+        this.hostCodes = new ArrayList<>();
+        StringBuilder host = new StringBuilder("import polyglot\n");
+        for (int guest = 0; guest < guestsPerProgram; guest++) {
+            host.append("polyglot.eval(language='javascript', path='guest_").append(guest).append(".js')\n");
+        }
+        host.append('\n');
+        this.firstImportLine = guestsPerProgram + 2;
+        for (int guest = 0; guest < guestsPerProgram; guest++) {
+            for (int k = 0; k < exportsPerFile; k++) {
+                host.append("js_").append(guest).append('_').append(k).append(" = ").append(HOST_IMPORT_PREFIX).append("js_").append(guest).append('_').append(k).append("')\n");
+            }
+        }
+        for (int k = 0; k < exportsPerFile; k++) {
+            host.append("py_value_").append(k).append(" = ").append(k).append('\n');
+            host.append("polyglot.export_value(value=py_value_").append(k).append(", name='py_").append(k).append("')\n");
+        }
+        String hostCode = host.toString();
+        this.lineCount = (int) hostCode.chars().filter(c -> c == '\n').count();
+
+        for (int program = 0; program < programs; program++) {
+            Path folder = Files.createDirectories(this.root.resolve("program_" + program));
+            Path hostPath = folder.resolve("host.py");
+            Files.writeString(hostPath, hostCode);
+            this.hosts.add(hostPath.toAbsolutePath());
+            this.hostCodes.add(hostCode);
+            for (int guest = 0; guest < guestsPerProgram; guest++) {
+                StringBuilder code = new StringBuilder();
+                for (int k = 0; k < exportsPerFile; k++) {
+                    code.append("let py_").append(k).append(" = Polyglot.import('py_").append(k).append("')\n");
+                }
+                for (int k = 0; k < exportsPerFile; k++) {
+                    code.append("let value_").append(k).append(" = [").append(guest).append(", ").append(k).append("]\n");
+                    code.append("Polyglot.export('js_").append(guest).append('_').append(k).append("', value_").append(k).append(")\n");
+                }
+                Files.writeString(folder.resolve("guest_" + guest + ".js"), code.toString());
+            }
+        }
+    }
+
+    public Path getRoot(){
+        return this.root;
+    }
+
+    public List<Path> getHosts(){
+        return this.hosts;
+    }
+
+    public String getHostCode(int program){
+        return this.hostCodes.get(program);
+    }
+
+    /**
+     * Get the line of the first import of the hosts (the storage variable is at character 0)
+     * @return line of the first import
+     */
+    public int getFirstImportLine(){
+        return this.firstImportLine;
+    }
+
+    /**
+     * Get the character of the variable name of the first import of the hosts (inside the string)
+     * @return character inside the name of the first imported variable
+     */
+    public int getFirstImportNameCharacter(){
+        return "js_0_0 = ".length() + HOST_IMPORT_PREFIX.length() + 1;
+    }
+
+    /**
+     * Get the line following the last line of the hosts (where completion is requested)
+     * @return line after the end of the hosts
+     */
+    public int getEndLine(){
+        return this.lineCount;
+    }
+
+    /**
+     * Edit a host so its statements only move (an empty line is inserted before the imports)
+     * @param program number of the program
+     * @return the edited code
+     */
+    public String shiftedHostCode(int program){
+        String code = this.hostCodes.get(program);
+        int index = code.indexOf("\n\n");
+        return code.substring(0, index) + "\n" + code.substring(index);
+    }
+
+    /**
+     * Edit a host so its first import refers to a variable that is never exported
+     * @param program number of the program
+     * @return the edited code
+     */
+    public String renamedHostCode(int program){
+        return this.hostCodes.get(program).replaceFirst("'js_0_0'", "'js_0_0_missing'");
+    }
+
+    /**
+     * Delete the workspace folder
+     */
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
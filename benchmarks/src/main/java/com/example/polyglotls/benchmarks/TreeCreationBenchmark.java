@@ -0,0 +1,54 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeCreationBenchmark {
+
+    @Param({"3", "10"})
+    public int guestsPerProgram; // Number of javascript guests of the program
+
+    @Param({"10"})
+    public int exportsPerFile; // Number of variables exported by each file
+
+    private SyntheticWorkspace workspace; // Generated workspace (one program)
+    private BenchmarkTarget target; // Server measured, new for each invocation
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        this.workspace = new SyntheticWorkspace(1, this.guestsPerProgram, this.exportsPerFile);
+    }
+
+    @Setup(Level.Invocation)
+    public void start() throws Exception {
+        this.target = BenchmarkTarget.load();
+        this.target.start();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        this.target.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        this.workspace.delete();
+    }
+
+    /**
+     * Open a program on a new server : parse of the host & of its directory, file-not-found & import/export checks, diagnostics
+     */
+    @Benchmark
+    public void createTree() throws Exception {
+        Path host = this.workspace.getHosts().get(0);
+        this.target.createTree(host);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.polyglotls.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+
+@State(Scope.Benchmark)
+public class WorkspaceState {
+
+    @Param({"10", "100"})
+    public int programs; // Number of programs of the workspace
+
+    @Param({"3"})
+    public int guestsPerProgram; // Number of javascript guests of each program
+
+    @Param({"10"})
+    public int exportsPerFile; // Number of variables exported by each file
+
+    public SyntheticWorkspace workspace; // Generated workspace
+    public BenchmarkTarget target; // Server measured
+
+    /**
+     * Generate the workspace & open every program, so the requests run against a warm server
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workspace = new SyntheticWorkspace(this.programs, this.guestsPerProgram, this.exportsPerFile);
+        this.target = BenchmarkTarget.load();
+        this.target.start();
+        for (Path host : this.workspace.getHosts()) {
+            this.target.createTree(host);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.target.stop();
+        this.workspace.delete();
+    }
+
+    /**
+     * Get the host of the program in the middle of the workspace (requests are not made on the first file parsed)
+     * @return path of the host
+     */
+    public Path host(){
+        return this.workspace.getHosts().get(this.programs / 2);
+    }
+}
@@ -1,25 +1,70 @@
-import org.eclipse.lsp4j.LogTraceParams;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.MessageType;
 import org.eclipse.lsp4j.services.LanguageClient;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 public class LSClientLogger {
 
     private static LSClientLogger INSTANCE; // Static instance of LSClientLogger
     private LanguageClient client; // Reference to the language client connected to Polyglot Language Server
-    private boolean isInitialized;
+    private volatile boolean isInitialized;
+    private volatile MessageType level = MessageType.Info; // Most verbose type of the messages sent (Error < Warning < Info < Log)
+    private int sampleRate = 10; // Beyond half the queue capacity, only one info/log message out of sampleRate is kept
+    private int batchSize = 64; // Maximum number of messages joined in one logMessage notification
+    private MessageType[] types = new MessageType[1024]; // Ring buffer of the types of the messages waiting to be sent
+    private String[] messages = new String[1024]; // Ring buffer of the messages waiting to be sent
+    private int head = 0; // Index of the oldest message of the ring buffer
+    private int size = 0; // Number of messages in the ring buffer
+    private long sampleCounter = 0; // Number of info/log messages offered while the queue is under pressure
+    private long dropped = 0; // Number of messages dropped because the queue was full, since the last flush
+    private long sampled = 0; // Number of messages skipped by the sampling, since the last flush
+    private long droppedTotal = 0; // Number of messages dropped since the start
+    private long sampledTotal = 0; // Number of messages skipped by the sampling since the start
+    private final Object lock = new Object(); // Guards the ring buffer & the counters (never held while sending)
+    private ScheduledExecutorService flushExecutor; // Sends the queued messages periodically
 
     private LSClientLogger() {
     }
 
     /**
-     * Initialize the LSClient Logger
+     * Initialize the LSClient Logger with the default settings
      * @param languageClient language client connected to Polyglot Language Server
      */
     public void initialize(LanguageClient languageClient) {
-        if (!Boolean.TRUE.equals(isInitialized)) {
-            this.client = languageClient;
+        this.initialize(languageClient, null);
+    }
+
+    /**
+     * Initialize the LSClient Logger, the messages are sent by a background thread
+     * @param languageClient language client connected to Polyglot Language Server
+     * @param properties properties of the server (level, queue & flush settings of the logs), null for the default settings
+     */
+    public synchronized void initialize(LanguageClient languageClient, PolyglotLanguageServerProperties properties) {
+        if (Boolean.TRUE.equals(isInitialized)) return;
+        this.client = languageClient;
+        long flushInterval = 50;
+        if (properties != null) {
+            this.level = getMessageType(properties.logLevel);
+            this.sampleRate = Math.max(1, properties.logSampleRate);
+            this.batchSize = Math.max(1, properties.logBatchSize);
+            this.types = new MessageType[Math.max(2, properties.logQueueCapacity)];
+            this.messages = new String[this.types.length];
+            flushInterval = Math.max(1, properties.logFlushInterval);
         }
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "polyglot-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
         isInitialized = true;
     }
 
@@ -27,7 +72,7 @@ public class LSClientLogger {
      * Return instance of LSClientLogger
      * @return instance of LSClientLogger
      */
-    public static LSClientLogger getInstance() {
+    public static synchronized LSClientLogger getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new LSClientLogger();
         }
@@ -38,11 +83,149 @@ public class LSClientLogger {
      * Log Message to client in the Polyglot Output Channel
      * @param message message to send to the client
      */
-    public synchronized void logMessage(String message) {
-        if (!isInitialized) {
-            return;
+    public void logMessage(String message) {
+        if (!this.isEnabled(MessageType.Info)) return;
+        this.enqueue(MessageType.Info, message);
+    }
+
+    /**
+     * Log Message to client in the Polyglot Output Channel, the message is only built if its type is enabled
+     * @param type type of the message
+     * @param message supplier of the message to send to the client
+     */
+    public void log(MessageType type, Supplier<String> message) {
+        if (!this.isEnabled(type)) return;
+        this.enqueue(type, message.get());
+    }
+
+    /**
+     * Check if the messages of a type are sent to the client
+     * @param type type of the message
+     * @return the messages of this type are sent
+     */
+    public boolean isEnabled(MessageType type) {
+        return isInitialized && type.getValue() <= this.level.getValue();
+    }
+
+    /**
+     * Add a message to the ring buffer without blocking : under pressure info/log messages are sampled, and when the buffer is full new messages are dropped (errors & warnings replace the oldest message instead)
+     * @param type type of the message
+     * @param message message to send to the client
+     */
+    private void enqueue(MessageType type, String message) {
+        synchronized (this.lock) {
+            int capacity = this.types.length;
+            boolean important = type == MessageType.Error || type == MessageType.Warning;
+            if (this.size >= capacity) {
+                this.dropped++;
+                this.droppedTotal++;
+                if (!important) return;
+                this.head = (this.head + 1) % capacity;
+                this.size--;
+            } else if (!important && this.size >= capacity / 2 && (this.sampleCounter++ % this.sampleRate) != 0) {
+                this.sampled++;
+                this.sampledTotal++;
+                return;
+            }
+            int tail = (this.head + this.size) % capacity;
+            this.types[tail] = type;
+            this.messages[tail] = message;
+            this.size++;
+        }
+    }
+
+    /**
+     * Send the queued messages to the client, consecutive messages of the same type are joined in one notification
+     */
+    public void flush() {
+        MessageType[] drainedTypes;
+        String[] drainedMessages;
+        long lost;
+        long skipped;
+        synchronized (this.lock) {
+            if (this.size == 0 && this.dropped == 0 && this.sampled == 0) return;
+            drainedTypes = new MessageType[this.size];
+            drainedMessages = new String[this.size];
+            for (int i = 0; i < drainedTypes.length; i++) {
+                int index = (this.head + i) % this.types.length;
+                drainedTypes[i] = this.types[index];
+                drainedMessages[i] = this.messages[index];
+                this.messages[index] = null;
+            }
+            this.head = 0;
+            this.size = 0;
+            this.sampleCounter = 0;
+            lost = this.dropped;
+            skipped = this.sampled;
+            this.dropped = 0;
+            this.sampled = 0;
+        }
+        // The client is notified outside the lock : the request threads never wait for the socket
+        ArrayList<MessageParams> notifications = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= drainedTypes.length; i++) {
+            if (i == drainedTypes.length || drainedTypes[i] != drainedTypes[start] || i - start >= this.batchSize) {
+                notifications.add(new MessageParams(drainedTypes[start], String.join("\n", Arrays.asList(drainedMessages).subList(start, i))));
+                start = i;
+            }
+        }
+        if (lost > 0 || skipped > 0) {
+            notifications.add(new MessageParams(MessageType.Warning, "Logs under pressure : " + lost + " message(s) dropped, " + skipped + " message(s) skipped by sampling"));
+        }
+        try {
+            for (MessageParams notification : notifications) {
+                this.client.logMessage(notification);
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Send the queued messages & stop the background thread (the logger can be initialized again by a new server)
+     */
+    public synchronized void shutdown() {
+        if (this.flushExecutor == null) return;
+        this.flushExecutor.shutdownNow();
+        this.flushExecutor = null;
+        this.flush();
+        isInitialized = false;
+    }
+
+    /**
+     * Get the statistics of the logger
+     * @return map of statistics : level, queued, dropped & sampled messages
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        synchronized (this.lock) {
+            statistics.put("level", this.level.name());
+            statistics.put("queued", this.size);
+            statistics.put("capacity", this.types.length);
+            statistics.put("dropped", this.droppedTotal);
+            statistics.put("sampled", this.sampledTotal);
+        }
+        return statistics;
+    }
+
+    /**
+     * Return the message type of a log level name
+     * @param level name of the level (error, warning, info or log)
+     * @return message type of the level, Info if the name is unknown
+     */
+    private static MessageType getMessageType(String level) {
+        if (level == null) return MessageType.Info;
+        switch (level.toLowerCase()) {
+            case "error":
+                return MessageType.Error;
+            case "warning":
+                return MessageType.Warning;
+            case "log":
+            case "debug":
+                return MessageType.Log;
+            default:
+                return MessageType.Info;
         }
-        client.logMessage(new MessageParams(MessageType.Info, message));
     }
 
 }
@@ -4,21 +4,41 @@ import org.eclipse.lsp4j.*;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 public class LanguageClientManager {
     private final LSClientLogger clientLogger; // reference to the polyglot client logger
-    HashMap<String, LanguageServerClient> languageClients; // Map of programming language name linked to their language client
-    HashMap<LanguageServerClient, Process> languageServersProcess; // Map of language clients linked to their language server process
+    ConcurrentHashMap<String, AtomicReferenceArray<LanguageServerClient>> languageClients; // Map of programming language name linked to the language clients of its language server instances (null until an instance is started)
+    ConcurrentHashMap<LanguageServerClient, Process> languageServersProcess; // Map of language clients linked to their language server process
     PolyglotLanguageServer languageServer; // Polyglot language server reference
+    private final ConcurrentHashMap<String, Integer> restarts; // Number of restarts of each language server instance ("language#instance")
+    private final Set<String> disabledInstances; // Language server instances restarted too many times, not started anymore ("language#instance")
+    private final ConcurrentHashMap<String, Long> nextStarts; // Time (System.nanoTime) before which a failed language server instance is not started again ("language#instance")
+    private static final ScheduledExecutorService RESTART_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "polyglot-ls-restart");
+        thread.setDaemon(true);
+        return thread;
+    }); // Restarts the failed language servers
     CompletableFuture<Object> shutdownFuture; // Future of shutdown request
 
     public LanguageClientManager(PolyglotLanguageServer languageServer){
-        this.languageClients = new HashMap<>();
-        this.languageServersProcess = new HashMap<>();
+        this.languageClients = new ConcurrentHashMap<>();
+        this.languageServersProcess = new ConcurrentHashMap<>();
+        this.restarts = new ConcurrentHashMap<>();
+        this.disabledInstances = ConcurrentHashMap.newKeySet();
+        this.nextStarts = new ConcurrentHashMap<>();
         this.languageServer = languageServer;
         this.clientLogger = LSClientLogger.getInstance();
     }
@@ -28,35 +48,20 @@ public class LanguageClientManager {
      * @param params DidOpenTextDocumentParams
      */
     public void didOpenRequest(DidOpenTextDocumentParams params){
-        String language = params.getTextDocument().getLanguageId();
-        if(languageClients.containsKey(language)){
-            languageClients.get(language).didOpenRequest(params);
-            return;
-        }
-        LanguageServerClient newclient = createNewClient(language);
-        if(newclient == null) return;
-        newclient.didOpenRequest(params);
+        LanguageServerClient client = this.getClient(params.getTextDocument().getLanguageId(), params.getTextDocument().getUri());
+        if(client == null) return;
+        client.didOpenRequest(params);
     }
 
     /**
      * Send LSP didChange notification to the proper language server (depending on file extension in params)
-     * @param params DidOpenTextDocumentParams
+     * @param params DidChangeTextDocumentParams
+     * @param fullText supplier of the content of the document after the changes (only called for language servers without incremental synchronization)
      */
-    public void didChangeRequest(DidChangeTextDocumentParams params){
-        String language = "";
-        try {
-            language = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri()))).getLang();
-        } catch (URISyntaxException e) {
-            System.err.println(e);
-            return;
-        }
-        if(languageClients.containsKey(language)){
-            languageClients.get(language).didChangeRequest(params);
-            return;
-        }
-        LanguageServerClient newclient = createNewClient(language);
-        if(newclient == null) return;
-        newclient.didChangeRequest(params);
+    public void didChangeRequest(DidChangeTextDocumentParams params, Supplier<String> fullText){
+        LanguageServerClient client = this.getClient(params.getTextDocument().getUri());
+        if(client == null) return;
+        client.didChangeRequest(params, fullText);
     }
 
     /**
@@ -64,43 +69,40 @@ public class LanguageClientManager {
      * @param params DidSaveTextDocumentParams
      */
     public void didSaveRequest(DidSaveTextDocumentParams params){
-        String language = "";
-        try {
-            language = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri()))).getLang();
-        } catch (URISyntaxException e) {
-            System.err.println(e);
-            return;
-        }
-        if(languageClients.containsKey(language)){
-            languageClients.get(language).didSaveRequest(params);
-            return;
-        }
-        LanguageServerClient newclient = createNewClient(language);
-        if(newclient == null) return;
-        newclient.didSaveRequest(params);
+        LanguageServerClient client = this.getClient(params.getTextDocument().getUri());
+        if(client == null) return;
+        client.didSaveRequest(params);
+    }
+
+    /**
+     * Send LSP didClose notification to the proper language server (depending on file extension in params)
+     * @param params DidCloseTextDocumentParams
+     */
+    public void didCloseRequest(DidCloseTextDocumentParams params){
+        LanguageServerClient client = this.getClient(params.getTextDocument().getUri());
+        if(client == null) return;
+        client.didCloseRequest(params);
     }
 
     /**
      * Send LSP didRename notification to the proper language server (depending on file extension in params)
+     * The renames whose new uri is handled by another instance of the language server are not sent : the document must be closed in the old instance & opened in the new one
      * @param params RenameFilesParams
+     * @return renames moving the document to another language server instance
      */
-    public void didRenameFiles(RenameFilesParams params){
+    public List<FileRename> didRenameFiles(RenameFilesParams params){
+        ArrayList<FileRename> moved = new ArrayList<>();
         for (FileRename file : params.getFiles()) {
-            String language = "";
-            try {
-                language = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(file.getOldUri()))).getLang();
-                RenameFilesParams param = new RenameFilesParams();
-                param.setFiles(Arrays.asList(file));
-                if(languageClients.containsKey(language)){
-                    languageClients.get(language).didRenameFiles(param);
-                } else {
-                    LanguageServerClient newclient = createNewClient(language);
-                    if(newclient != null) newclient.didRenameFiles(param);
-                }
-            } catch (URISyntaxException e) {
-                System.err.println(e);
-            }
+            RenameFilesParams param = new RenameFilesParams();
+            param.setFiles(Arrays.asList(file));
+            // The language server instance which knows the old document is notified, if it's also in charge of the new document
+            LanguageServerClient client = this.getClient(file.getOldUri());
+            if(client == null) continue;
+            LanguageServerClient newClient = this.getClient(file.getNewUri());
+            if(newClient != null && newClient != client) moved.add(file);
+            else client.didRenameFiles(param);
         }
+        return moved;
     }
 
     /**
@@ -110,36 +112,15 @@ public class LanguageClientManager {
      */
     public CompletableFuture<Hover> hoverRequest(HoverParams params){
         CompletableFuture<Hover> future = new CompletableFuture<>();
-        String language = "";
-        try {
-            language = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri()))).getLang();
-        } catch (URISyntaxException e) {
-            System.err.println(e);
-            return null;
-        }
-        if(languageClients.containsKey(language)){
-            languageClients.get(language).hoverRequest(params).thenApply((v) -> {
-                try{
-                    Hover hov = (Hover) v;
-                    future.complete(hov);
-                } catch (Exception e){
-                    future.complete(null);
-                }
-               return v;
-            });
-            return future;
-        }
-        LanguageServerClient newclient = createNewClient(language);
-        if(newclient == null) return null;
-        newclient.hoverRequest(params).thenApply((v) -> {
-            try{
-                Hover hov = (Hover) v;
-                future.complete(hov);
-            } catch (Exception e){
-                future.complete(null);
-            }
-            return v;
+        LanguageServerClient client = this.getClient(params.getTextDocument().getUri());
+        if(client == null) return null;
+        // A failed request (timeout, crash of the language server) completes the future exceptionally
+        CompletableFuture<Object> request = client.hoverRequest(params);
+        request.whenComplete((v, e) -> {
+            if(e != null) future.completeExceptionally(e);
+            else future.complete(v instanceof Hover ? (Hover) v : null);
         });
+        cancelWith(future, request);
         return future;
     }
 
@@ -149,37 +130,185 @@ public class LanguageClientManager {
      */
     public CompletableFuture<WorkspaceEdit> renameRequest(RenameParams params){
         CompletableFuture<WorkspaceEdit> future = new CompletableFuture<>();
-        String language = "";
+        LanguageServerClient client = this.getClient(params.getTextDocument().getUri());
+        if(client == null) return null;
+        CompletableFuture<Object> request = client.renameRequest(params);
+        request.whenComplete((v, e) -> {
+            if(e != null) future.completeExceptionally(e);
+            else future.complete(v instanceof WorkspaceEdit ? (WorkspaceEdit) v : null);
+        });
+        cancelWith(future, request);
+        return future;
+    }
+
+    /**
+     * Cancel a request to a language server when the future returned for it is cancelled ($/cancelRequest is then sent to the language server)
+     * @param future future returned for the request
+     * @param request future of the request to the language server
+     */
+    private static void cancelWith(CompletableFuture<?> future, CompletableFuture<Object> request){
+        future.whenComplete((v, e) -> {
+            if(future.isCancelled()) request.cancel(true);
+        });
+    }
+
+    /**
+     * Get the language client in charge of a document, from the language of its AST
+     * @param uri uri of the document
+     * @return language client of the document, null if the language server couldn't be started
+     */
+    private LanguageServerClient getClient(String uri){
         try {
-            language = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri()))).getLang();
+            return this.getClient(getLanguage(uri), uri);
         } catch (URISyntaxException e) {
             System.err.println(e);
             return null;
         }
-        if(languageClients.containsKey(language)){
-            languageClients.get(language).renameRequest(params).thenApply((v) -> {
-                try{
-                    WorkspaceEdit wedit = (WorkspaceEdit) v;
-                    future.complete(wedit);
-                } catch (Exception e){
-                    future.complete(null);
+    }
+
+    /**
+     * Get the language client of the language server instance in charge of a document, and start the language server if needed
+     * A document is always sent to the same instance, so the instance receives all its didOpen/didChange notifications
+     * @param language programming language of the document
+     * @param uri uri of the document
+     * @return language client of the document, null if the language server couldn't be started
+     */
+    LanguageServerClient getClient(String language, String uri){
+        if(language == null) return null;
+        return this.getClient(language, this.getInstance(language, uri));
+    }
+
+    /**
+     * Get the language client of a language server instance, and start the language server if needed
+     * @param language programming language
+     * @param instance index of the language server instance
+     * @return language client of the instance, null if the language server couldn't be started (or restarted too many times)
+     */
+    private LanguageServerClient getClient(String language, int instance){
+        AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.computeIfAbsent(language, l -> new AtomicReferenceArray<>(this.getInstances(l)));
+        LanguageServerClient client = clients.get(instance);
+        if(client != null) return client;
+        if(this.disabledInstances.contains(language + "#" + instance)) return null;
+        // Failed recently : the requests fail until the restart delay is over, instead of launching a new process for each of them
+        Long nextStart = this.nextStarts.get(language + "#" + instance);
+        if(nextStart != null && System.nanoTime() - nextStart < 0) return null;
+        // Only the start of a language server is locked (per language), the requests to running servers never wait
+        synchronized (clients){
+            client = clients.get(instance);
+            if(client == null) client = this.createNewClient(language, instance);
+            return client;
+        }
+    }
+
+    /**
+     * Get the index of the language server instance in charge of a document
+     * @param language programming language of the document
+     * @param uri uri of the document
+     * @return index of the language server instance
+     */
+    private int getInstance(String language, String uri){
+        AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.computeIfAbsent(language, l -> new AtomicReferenceArray<>(this.getInstances(l)));
+        return Math.floorMod(uri.hashCode(), clients.length());
+    }
+
+    /**
+     * Replace a crashed or unresponsive language server by a new one : its requests fail, its process is destroyed, and the documents it knew are opened again in the new instance
+     * @param client language client of the failed language server
+     * @param reason reason of the failure
+     */
+    void restartClient(LanguageServerClient client, String reason){
+        String language = client.getLanguage();
+        AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.get(language);
+        if(clients == null) return;
+        int instance = -1;
+        for (int i = 0; i < clients.length(); i++) {
+            if(clients.get(i) == client) instance = i;
+        }
+        // Already replaced (or shut down)
+        if(instance < 0 || !clients.compareAndSet(instance, client, null)) return;
+        this.clientLogger.log(MessageType.Warning, () -> "Language server " + language + " failed (" + reason + ")");
+        client.close(reason);
+        client.interrupt();
+        Process process = this.languageServersProcess.remove(client);
+        if(process != null && process.isAlive()) process.destroy();
+        this.scheduleRestart(language, instance);
+    }
+
+    /**
+     * Count a failure of a language server instance (crash, unresponsive, or failed launch) and restart it after the restart delay, doubled at each restart
+     * The instance is disabled once it has been restarted too many times, and it isn't started by the requests before the restart
+     * @param language programming language of the language server
+     * @param instance index of the failed instance
+     */
+    private void scheduleRestart(String language, int instance){
+        PolyglotLanguageServerProperties properties = this.languageServer.properties;
+        int maxRestarts = properties != null ? properties.downstreamMaxRestarts : 5;
+        String key = language + "#" + instance;
+        int restarts = this.restarts.merge(key, 1, Integer::sum);
+        if(restarts > maxRestarts){
+            this.disabledInstances.add(key);
+            this.clientLogger.log(MessageType.Error, () -> "Language server " + language + " restarted " + maxRestarts + " times, it is not restarted anymore");
+            return;
+        }
+        int failedInstance = instance;
+        long restartDelay = (properties != null ? properties.downstreamRestartDelay : 500) << Math.min(restarts - 1, 6);
+        this.nextStarts.put(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(restartDelay));
+        RESTART_EXECUTOR.schedule(() -> {
+            this.nextStarts.remove(key);
+            if(this.getClient(language, failedInstance) == null) return;
+            // The new instance starts from the current content of the documents known by the failed one
+            PolyglotTextDocumentService textDocumentService = (PolyglotTextDocumentService) this.languageServer.getTextDocumentService();
+            textDocumentService.reopenExternDocuments(path -> {
+                try {
+                    String uri = path.toUri().toString();
+                    return language.equals(getLanguage(uri)) && this.getInstance(language, uri) == failedInstance;
+                } catch (URISyntaxException e) {
+                    return false;
                 }
-                return v;
             });
-            return future;
-        }
-        LanguageServerClient newclient = createNewClient(language);
-        if(newclient == null) return null;
-        newclient.renameRequest(params).thenApply((v) -> {
-            try{
-                WorkspaceEdit wedit = (WorkspaceEdit) v;
-                future.complete(wedit);
-            } catch (Exception e){
-                future.complete(null);
-            }
-            return v;
-        });
-        return future;
+        }, restartDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forget the restarts of a restarted language server instance once it has stayed up for the stable delay, so that only failures close together disable it
+     * @param language programming language of the language server
+     * @param instance index of the language server instance
+     * @param client language client of the instance, connected
+     */
+    private void scheduleRestartsReset(String language, int instance, LanguageServerClient client){
+        String key = language + "#" + instance;
+        if(!this.restarts.containsKey(key)) return;
+        PolyglotLanguageServerProperties properties = this.languageServer.properties;
+        long stableDelay = properties != null ? properties.downstreamStableDelay : 60000;
+        RESTART_EXECUTOR.schedule(() -> {
+            // Still the client of the instance : it hasn't failed since it connected
+            AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.get(language);
+            if(clients != null && clients.get(instance) == client) this.restarts.remove(key);
+        }, stableDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the number of language servers to start for a language
+     * @param language programming language
+     * @return number of language server instances (at least 1)
+     */
+    private int getInstances(String language){
+        PolyglotLanguageServerProperties.LanguageServerInfo lsInfo = this.languageServer.getLanguageInfo(language);
+        return lsInfo == null ? 1 : Math.max(1, lsInfo.instances);
+    }
+
+    /**
+     * Get the programming language of a file from its AST in the workspaces (safe to call from any thread)
+     * @param uri uri of the file
+     * @return programming language of the file, null if the file has not been parsed
+     */
+    private String getLanguage(String uri) throws URISyntaxException {
+        Path path = Paths.get(new URI(uri));
+        PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(path);
+        if(tree != null) return tree.getLang();
+        // Not parsed (yet) : renamed or created document
+        String language = PolyglotTextDocumentService.getLanguageFromExtension(path);
+        return language.equals("none") ? null : language;
     }
 
     /**
@@ -188,7 +317,7 @@ public class LanguageClientManager {
      */
     public CompletableFuture<Object> shutdown(){
         this.shutdownFuture = new CompletableFuture<Object>();
-        for (LanguageServerClient client : this.languageClients.values()) {
+        for (LanguageServerClient client : this.getClients()) {
             try{
                 client.shutdown().thenApply((v) -> {
                     Process p = this.languageServersProcess.get(client);
@@ -207,73 +336,131 @@ public class LanguageClientManager {
         return this.shutdownFuture;
     }
 
+    /**
+     * Get the language clients of all the languages
+     * @return list of the started language clients
+     */
+    public ArrayList<LanguageServerClient> getClients(){
+        ArrayList<LanguageServerClient> clients = new ArrayList<>();
+        for (AtomicReferenceArray<LanguageServerClient> languageClients : this.languageClients.values()) {
+            for (int i = 0; i < languageClients.length(); i++) {
+                if(languageClients.get(i) != null) clients.add(languageClients.get(i));
+            }
+        }
+        return clients;
+    }
+
     /**
      * Create a new language client, by launching a new language server and connects to it
      * @param language programming language of the language server to connects to
-     * @return A language server client if the client is connected to the language server, null otherwise
+     * @param instance index of the language server instance (the instance i listens on the configured port + i)
+     * @return A language server client (connecting in the background) if the language server has been launched, null otherwise
      */
-    public LanguageServerClient createNewClient(String language){
+    public LanguageServerClient createNewClient(String language, int instance){
         PolyglotLanguageServerProperties.LanguageServerInfo lsInfo = this.languageServer.getLanguageInfo(language);
         if(lsInfo == null){
             this.clientLogger.logMessage("No language Server configured for the language : "+language);
             System.err.println("No language Server configured for the language : "+language);
             return null;
         }
-        LanguageServerClient client = new LanguageServerClient(lsInfo.language, lsInfo.ip, lsInfo.port, this.languageServer);
-        if(this.initializeConnection(lsInfo, client)){
-            this.languageClients.put(language, client);
-            client.start();
-            if(client.connect()){
+        LanguageServerClient client = new LanguageServerClient(lsInfo.language, lsInfo.ip, lsInfo.port + instance, this.languageServer);
+        if(!this.initializeConnection(lsInfo, instance, client)){
+            this.scheduleRestart(language, instance);
+            return null;
+        }
+        AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.computeIfAbsent(language, l -> new AtomicReferenceArray<>(this.getInstances(l)));
+        clients.set(instance, client);
+        client.setFailureListener(reason -> this.restartClient(client, reason));
+        client.start();
+        // The caller never waits for the language server : the requests wait in the client until it is initialized
+        Process process = this.languageServersProcess.get(client);
+        if(process != null) process.onExit().thenAccept(p -> client.connectionLost("process exited with code " + p.exitValue()));
+        CompletableFuture<Void> ready = isStdio(lsInfo) && process != null ? client.connectProcess(process) : client.connectAsync();
+        ready.whenComplete((v, e) -> {
+            if(e == null){
                 this.clientLogger.logMessage("Successfully connected to language Server configured for the language : "+language);
-                return client;
-            } else {
-                this.clientLogger.logMessage("Couldn't connect to language Server configured for the language : "+language);
+                this.scheduleRestartsReset(language, instance, client);
+                return;
             }
-        }
-        return null;
+            this.clientLogger.logMessage("Couldn't connect to language Server configured for the language : "+language);
+            // Same backoff & restart limit as a crash (not counted twice if the crash has already replaced the client)
+            if(clients.compareAndSet(instance, client, null)){
+                Process failedProcess = this.languageServersProcess.remove(client);
+                if(failedProcess != null) failedProcess.destroy();
+                this.scheduleRestart(language, instance);
+            }
+        });
+        return client;
     }
 
     /**
      * Launch a language server by creating a new process
      * @param lsInfo Language Server Information properties
+     * @param instance index of the language server instance
      * @param client Language client of the server
      * @return the language server has been created successfully
      */
-    public boolean initializeConnection(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo, LanguageServerClient client){
-        if(this.languageClients.containsKey(lsInfo.language)){
-            if(this.languageClients.get(lsInfo.language) != null){
-                this.languageClients.get(lsInfo.language).shutdown();
-                this.languageClients.get(lsInfo.language).interrupt();
-            }
-            this.languageClients.remove(lsInfo.language);
-        }
-        if(this.languageServersProcess.containsKey(lsInfo.language)){
-            this.languageServersProcess.get(lsInfo.language).destroy();
-            this.languageServersProcess.remove(lsInfo.language);
+    public boolean initializeConnection(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo, int instance, LanguageServerClient client){
+        AtomicReferenceArray<LanguageServerClient> clients = this.languageClients.get(lsInfo.language);
+        LanguageServerClient previousClient = clients == null ? null : clients.getAndSet(instance, null);
+        if(previousClient != null){
+            previousClient.shutdown();
+            previousClient.interrupt();
+            Process previousProcess = this.languageServersProcess.remove(previousClient);
+            if(previousProcess != null) previousProcess.destroy();
         }
+        // Stub language server : it runs in this process, there is nothing to launch
+        if(lsInfo.stub != null) return PolyglotStubLanguageServer.listen(lsInfo, lsInfo.port + instance);
 
         try {
             File file = new File(PolyglotLanguageServer.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath());
             ProcessBuilder builder;
             if(isJUnitTest()){
-                builder = new ProcessBuilder(lsInfo.command).directory(new File(new File(file.getParent()).getParent()));
+                builder = new ProcessBuilder(getCommand(lsInfo, instance)).directory(new File(new File(file.getParent()).getParent()));
             } else {
-                builder = new ProcessBuilder(lsInfo.command).directory(new File(file.getParent()));
+                builder = new ProcessBuilder(getCommand(lsInfo, instance)).directory(new File(file.getParent()));
             }
-            Process process = builder.inheritIO().start();
+            // With the stdio transport, stdin/stdout carry the LSP messages : only stderr is inherited
+            Process process = (isStdio(lsInfo) ? builder.redirectError(ProcessBuilder.Redirect.INHERIT) : builder.inheritIO()).start();
             this.languageServersProcess.put(client, process);
             return true;
         } catch (IOException e) {
             System.err.println(e);
-            this.clientLogger.logMessage(e.getMessage());
+            this.clientLogger.log(MessageType.Error, e::getMessage);
             return false;
         } catch (URISyntaxException e) {
             System.err.println(e);
-            this.clientLogger.logMessage(e.getMessage());
+            this.clientLogger.log(MessageType.Error, e::getMessage);
             return false;
         }
     }
 
+    /**
+     * Get the command launching a language server instance : "${port}" and the configured port are replaced by the port of the instance (unless it uses the stdio transport)
+     * @param lsInfo Language Server Information properties
+     * @param instance index of the language server instance
+     * @return list of command/args
+     */
+    static ArrayList<String> getCommand(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo, int instance){
+        if(isStdio(lsInfo)) return lsInfo.command;
+        String configuredPort = String.valueOf(lsInfo.port);
+        String port = String.valueOf(lsInfo.port + instance);
+        ArrayList<String> command = new ArrayList<>();
+        for (String arg : lsInfo.command) {
+            command.add(arg.equals(configuredPort) ? port : arg.replace("${port}", port));
+        }
+        return command;
+    }
+
+    /**
+     * Check if the messages to a language server are sent through the stdin/stdout of its process
+     * @param lsInfo Language Server Information properties
+     * @return the language server uses the stdio transport
+     */
+    static boolean isStdio(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo){
+        return "stdio".equals(lsInfo.transport);
+    }
+
     /**
      * is this process running a JunitTest
      * @return this process is running a JunitTest
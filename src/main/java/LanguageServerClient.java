@@ -6,22 +6,52 @@ import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageServer;
 
 import java.io.*;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.CompletionHandler;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class LanguageServerClient extends Thread implements LanguageClient {
 
     private final String language; // Programming language of language server which the client connects to
     private final String ip; // IP of language server which the client connects to
     private final int port; // port of language server which the client connects to
-    private Socket clientSocket; // Socket to handle connection with the language server
-    private boolean isInitialized = false; // Store if the client is initialized (exchange initialization request with server)
-    private RemoteEndpoint remoteEndpoint; // Endpoint used to make request & notification to the server
+    private static final ScheduledExecutorService CONNECT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "polyglot-ls-connect");
+        thread.setDaemon(true);
+        return thread;
+    }); // Schedules the connection retries of all the clients
+    private volatile AsynchronousSocketChannel channel; // Channel to handle connection with the language server (tcp transport)
+    private volatile Process process; // Process of the language server, whose stdin/stdout carry the messages (stdio transport)
+    private final CompletableFuture<Void> readyFuture = new CompletableFuture<>(); // Completed when the client is initialized, failed if the language server can't be reached
+    private Throwable failedCause; // Cause of the failure of the connection, the requests fail right away once set (null while the client is usable)
+    private final Set<CompletableFuture<Object>> outstandingRequests = ConcurrentHashMap.newKeySet(); // Requests sent to the language server and not answered yet
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger(); // Number of requests which timed out since the last answer
+    private final AtomicBoolean lost = new AtomicBoolean(); // The failure of the language server has been reported
+    private volatile boolean closed = false; // The client is shut down or closed, its failures are not reported
+    private volatile Consumer<String> failureListener; // Notified when the language server crashes or stops answering (restarts it)
+    private volatile boolean isInitialized = false; // Store if the client is initialized (exchange initialization request with server)
+    private volatile RemoteEndpoint remoteEndpoint; // Endpoint used to make request & notification to the server
     private PolyglotLanguageServer polyglotLSref; // Reference to the polyglot language server
     private ArrayList<LSRequest> pendingInitializationRequests; // List of requests waiting the initialization, before to be sent
     private LSClientLogger clientLogger; // Reference to the Polyglot client logger
+    private TextDocumentSyncKind textDocumentSync = TextDocumentSyncKind.Full; // Document synchronization kind supported by the language server
+    private final String metricsPrefix; // Prefix of the metrics of the requests & notifications sent to the language server
     CompletableFuture<Object> shutdownFuture; // CompletableFuture used to store Shutdown Future
 
     public LanguageServerClient(String language, String ip, int port, PolyglotLanguageServer polyglotLSref){
@@ -31,32 +61,190 @@ public class LanguageServerClient extends Thread implements LanguageClient {
         this.pendingInitializationRequests = new ArrayList<>();
         this.polyglotLSref = polyglotLSref;
         this.clientLogger = LSClientLogger.getInstance();
+        this.metricsPrefix = "downstream/" + language + "/";
     }
 
     /**
-     * Connects to the language server
-     * @return the client is connected to the language server
+     * Connects to the language server without blocking : the attempts are retried with an exponential backoff, and the requests sent meanwhile wait in the client
+     * @return future completed when the client is initialized, failed if the language server couldn't be reached before the connection timeout
      */
-    public boolean connect(){
-        int connectionTry = 10;
-        while(connectionTry > 0){
-            connectionTry--;
-            try {
-                this.clientSocket = new Socket(this.ip, this.port);
-                Launcher<LanguageServer> launcher = LSPLauncher.createClientLauncher(this, clientSocket.getInputStream(), clientSocket.getOutputStream());
-                this.initializeConnection(launcher.getRemoteProxy());
-                this.remoteEndpoint = launcher.getRemoteEndpoint();
-                launcher.startListening();
-                return true;
-            } catch (IOException e) {
+    public CompletableFuture<Void> connectAsync(){
+        PolyglotLanguageServerProperties properties = this.polyglotLSref.properties;
+        long retryDelay = properties != null ? Math.max(1, properties.connectRetryDelay) : 50;
+        long retryMaxDelay = properties != null ? Math.max(retryDelay, properties.connectRetryMaxDelay) : 2000;
+        long timeout = properties != null ? properties.connectTimeout : 10000;
+        this.tryConnect(System.currentTimeMillis() + timeout, retryDelay, retryMaxDelay);
+        return this.readyFuture;
+    }
+
+    /**
+     * Make one asynchronous connection attempt, and schedule the next one (with a doubled delay) if it fails before the deadline
+     * @param deadline time (ms since epoch) after which the language server is considered unreachable
+     * @param delay delay before the next attempt (ms)
+     * @param maxDelay maximum delay between two attempts (ms)
+     */
+    private void tryConnect(long deadline, long delay, long maxDelay){
+        AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open();
+            // Headers & contents are written separately : without TCP_NODELAY each request waits for a delayed ACK
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            this.connectionFailed(e);
+            return;
+        }
+        channel.connect(new InetSocketAddress(this.ip, this.port), null, new CompletionHandler<Void, Void>() {
+            @Override
+            public void completed(Void result, Void attachment) {
+                LanguageServerClient.this.connected(channel);
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
                 try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ex) {
-                    return false;
+                    channel.close();
+                } catch (IOException ignored) {
                 }
+                // The language server process may still be starting
+                if(System.currentTimeMillis() + delay > deadline){
+                    LanguageServerClient.this.connectionFailed(e);
+                    return;
+                }
+                CONNECT_EXECUTOR.schedule(() -> LanguageServerClient.this.tryConnect(deadline, Math.min(maxDelay, delay * 2), maxDelay), delay, TimeUnit.MILLISECONDS);
             }
+        });
+    }
+
+    /**
+     * Start the LSP connection once the socket is connected, the initialization is sent right away
+     * @param channel channel connected to the language server
+     */
+    private void connected(AsynchronousSocketChannel channel){
+        this.channel = channel;
+        this.startLauncher(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Connects to a language server through the stdin/stdout pipes of its process (no port is used)
+     * @param process process of the language server
+     * @return future completed when the client is initialized, failed if the initialization fails
+     */
+    public CompletableFuture<Void> connectProcess(Process process){
+        this.process = process;
+        // Each message is written in two parts (headers & content) then flushed : buffered, it reaches the pipe in one write
+        this.startLauncher(new BufferedInputStream(process.getInputStream()), new BufferedOutputStream(process.getOutputStream()));
+        return this.readyFuture;
+    }
+
+    /**
+     * Start the LSP connection on the streams of the language server, the initialization is sent right away
+     * @param input stream of the messages from the language server
+     * @param output stream of the messages to the language server
+     */
+    private void startLauncher(InputStream input, OutputStream output){
+        Launcher<LanguageServer> launcher = LSPLauncher.createClientLauncher(this, new MonitoredInputStream(input), output);
+        this.remoteEndpoint = launcher.getRemoteEndpoint();
+        this.initializeConnection(launcher.getRemoteProxy());
+        launcher.startListening();
+    }
+
+    /**
+     * The language server can't be reached : the pending requests complete exceptionally, and the next ones fail without being queued
+     * @param e cause of the failure
+     */
+    private synchronized void connectionFailed(Throwable e){
+        this.readyFuture.completeExceptionally(e);
+        this.failedCause = e;
+        for (LSRequest pendingInitializationRequest : this.pendingInitializationRequests) {
+            pendingInitializationRequest.response.completeExceptionally(e);
         }
-        return false;
+        this.pendingInitializationRequests.clear();
+    }
+
+    /**
+     * Set the listener notified when the language server crashes or stops answering
+     * @param failureListener listener receiving the reason of the failure (called once)
+     */
+    public void setFailureListener(Consumer<String> failureListener){
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * Report that the language server is dead or unresponsive, the failure listener is notified once (unless the client is shut down)
+     * @param reason reason of the failure
+     */
+    void connectionLost(String reason){
+        if(this.closed || !this.lost.compareAndSet(false, true)) return;
+        Consumer<String> listener = this.failureListener;
+        if(listener != null) listener.accept(reason);
+    }
+
+    /**
+     * Close the client : the pending & outstanding requests complete exceptionally, and the next ones fail right away
+     * @param reason reason of the closing
+     */
+    public void close(String reason){
+        this.closed = true;
+        IllegalStateException e = new IllegalStateException("Language server " + this.language + " closed : " + reason);
+        this.connectionFailed(e);
+        for (CompletableFuture<Object> request : this.outstandingRequests) {
+            request.completeExceptionally(e);
+        }
+        this.outstandingRequests.clear();
+        try {
+            if(this.channel != null) this.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Track a request sent to the language server : it fails after the request timeout, and several timeouts in a row mark the language server as unresponsive
+     * @param request future of the request
+     * @return the same future
+     */
+    private CompletableFuture<Object> track(CompletableFuture<Object> request){
+        PolyglotLanguageServerProperties properties = this.polyglotLSref.properties;
+        long timeout = this.getRequestTimeout();
+        int maxTimeouts = properties != null ? properties.downstreamMaxTimeouts : 3;
+        this.outstandingRequests.add(request);
+        if(timeout > 0) request.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        request.whenComplete((v, e) -> {
+            this.outstandingRequests.remove(request);
+            if(e instanceof TimeoutException){
+                if(maxTimeouts > 0 && this.consecutiveTimeouts.incrementAndGet() >= maxTimeouts) this.connectionLost(maxTimeouts + " requests timed out in a row");
+            } else {
+                this.consecutiveTimeouts.set(0);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Fail a request waiting for the initialization if the language server doesn't initialize in time (a timed out request is never sent)
+     * @param pending future of the request waiting for the initialization
+     * @return the same future
+     */
+    private CompletableFuture<Object> withInitializationTimeout(CompletableFuture<Object> pending){
+        long timeout = this.getRequestTimeout();
+        if(timeout > 0) pending.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        return pending;
+    }
+
+    /**
+     * Get the time after which a request to the language server fails
+     * @return timeout in ms (0 : no timeout)
+     */
+    private long getRequestTimeout(){
+        PolyglotLanguageServerProperties properties = this.polyglotLSref.properties;
+        return properties != null ? properties.downstreamRequestTimeout : 10000;
+    }
+
+    /**
+     * Get the readiness future of the client
+     * @return future completed when the client is initialized, failed if the language server couldn't be reached
+     */
+    public CompletableFuture<Void> getReadyFuture(){
+        return this.readyFuture;
     }
 
     /**
@@ -64,7 +252,16 @@ public class LanguageServerClient extends Thread implements LanguageClient {
      * @return the client is connected to the language server
      */
     public boolean isConnected(){
-        return this.clientSocket != null && this.clientSocket.isConnected();
+        if(this.process != null) return this.process.isAlive();
+        return this.channel != null && this.channel.isOpen();
+    }
+
+    /**
+     * Get the programming language of the language server
+     * @return programming language name
+     */
+    public String getLanguage(){
+        return this.language;
     }
 
     /**
@@ -80,7 +277,13 @@ public class LanguageServerClient extends Thread implements LanguageClient {
      * @return response from language server
      */
     public CompletableFuture<Object> shutdown(){
+        // The language server is expected to stop, it must not be restarted
+        this.closed = true;
         this.shutdownFuture = new CompletableFuture<>();
+        if(this.remoteEndpoint == null){
+            this.shutdownFuture.complete(new Object());
+            return this.shutdownFuture;
+        }
         this.remoteEndpoint.request("shutdown", null).thenApply((v) -> {
             this.remoteEndpoint.notify("exit", null);
             this.shutdownFuture.complete(new Object());
@@ -98,27 +301,52 @@ public class LanguageServerClient extends Thread implements LanguageClient {
         // Params can be use to constrain rename workspace edit types
         //params.getCapabilities().getWorkspace().getWorkspaceEdit().setDocumentChanges(false);
         //params.getCapabilities().getWorkspace().getWorkspaceEdit().setResourceOperations(new ArrayList<>());
-        remoteProxy.initialize(params).thenApply(k -> {
+        CompletableFuture<InitializeResult> initialize = remoteProxy.initialize(params);
+        // A language server accepting the connection but never answering the initialization must not hold the requests forever
+        long timeout = this.getRequestTimeout();
+        if(timeout > 0) initialize.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        initialize.thenApply(k -> {
+            this.textDocumentSync = getTextDocumentSyncKind(k.getCapabilities());
             remoteProxy.initialized(new InitializedParams());
             this.initialized();
             return k;
+        }).exceptionally(e -> {
+            this.connectionFailed(e);
+            return null;
         });
     }
 
+    /**
+     * Get the document synchronization kind from the capabilities of a language server
+     * @param capabilities ServerCapabilities sent by the language server
+     * @return the document synchronization kind (Full if not specified)
+     */
+    private static TextDocumentSyncKind getTextDocumentSyncKind(ServerCapabilities capabilities){
+        if(capabilities == null || capabilities.getTextDocumentSync() == null) return TextDocumentSyncKind.Full;
+        if(capabilities.getTextDocumentSync().isLeft()) return capabilities.getTextDocumentSync().getLeft();
+        TextDocumentSyncKind change = capabilities.getTextDocumentSync().getRight().getChange();
+        return change == null ? TextDocumentSyncKind.Full : change;
+    }
+
     /**
      * Final step to initialize the client, send all requests which were waiting the initialization
      */
-    private void initialized(){
+    private synchronized void initialized(){
         this.isInitialized = true;
         for (LSRequest pendingInitializationRequest : this.pendingInitializationRequests) {
+            // Cancelled or timed out while waiting for the initialization : never sent
+            if(pendingInitializationRequest.response.isDone()) continue;
             try {
                 Object result_f = pendingInitializationRequest.function.apply(pendingInitializationRequest.params);
                 if(result_f != null){
                     CompletableFuture<Object> result = (CompletableFuture<Object>) result_f;
                     if(result != null){
-                        result.thenApply((v) -> {
-                            pendingInitializationRequest.response.complete(v);
-                            return v;
+                        result.whenComplete((v, e) -> {
+                            if(e != null) pendingInitializationRequest.response.completeExceptionally(e);
+                            else pendingInitializationRequest.response.complete(v);
+                        });
+                        pendingInitializationRequest.response.whenComplete((v, e) -> {
+                            if(pendingInitializationRequest.response.isCancelled()) result.cancel(true);
                         });
                     }
                 }
@@ -126,6 +354,8 @@ public class LanguageServerClient extends Thread implements LanguageClient {
                 System.err.println(e);
             }
         }
+        this.pendingInitializationRequests.clear();
+        this.readyFuture.complete(null);
     }
 
     /**
@@ -135,20 +365,30 @@ public class LanguageServerClient extends Thread implements LanguageClient {
     public synchronized void didOpenRequest(DidOpenTextDocumentParams params){
         CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didOpenRequest((DidOpenTextDocumentParams) param);return null;});
         if(future == null) {
-            this.clientLogger.logMessage("didOpenRequest to "+this.language+" language server at URI : "+params.getTextDocument().getUri());
+            this.clientLogger.log(MessageType.Log, () -> "didOpenRequest to "+this.language+" language server at URI : "+params.getTextDocument().getUri());
             this.remoteEndpoint.notify("textDocument/didOpen", params);
+            this.polyglotLSref.metrics.increment(this.metricsPrefix + "textDocument/didOpen");
         }
     }
 
     /**
      * Send didChangeRequest LSP notification to the language Server
+     * The changes are forwarded as they are if the language server supports incremental synchronization, otherwise the full text is sent
      * @param params DidChangeTextDocumentParams
+     * @param fullText supplier of the content of the document after the changes, only called if the full text is sent (null if unknown)
      */
-    public synchronized void didChangeRequest(DidChangeTextDocumentParams params){
-        CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didChangeRequest((DidChangeTextDocumentParams) param);return null;});
+    public synchronized void didChangeRequest(DidChangeTextDocumentParams params, Supplier<String> fullText){
+        // Queued until the initialization (the synchronization kind is unknown) : the content of this version is taken now
+        String queuedText = !this.isInitialized && fullText != null ? fullText.get() : null;
+        CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didChangeRequest((DidChangeTextDocumentParams) param, queuedText == null ? null : () -> queuedText);return null;});
         if(future == null){
-            this.clientLogger.logMessage("change request to LS "+this.language);
-            this.remoteEndpoint.notify("textDocument/didChange", params);
+            this.clientLogger.log(MessageType.Log, () -> "change request to LS "+this.language);
+            if(this.textDocumentSync == TextDocumentSyncKind.Incremental || fullText == null){
+                this.remoteEndpoint.notify("textDocument/didChange", params);
+            } else {
+                this.remoteEndpoint.notify("textDocument/didChange", new DidChangeTextDocumentParams(params.getTextDocument(), List.of(new TextDocumentContentChangeEvent(fullText.get()))));
+            }
+            this.polyglotLSref.metrics.increment(this.metricsPrefix + "textDocument/didChange");
         }
     }
 
@@ -158,7 +398,22 @@ public class LanguageServerClient extends Thread implements LanguageClient {
      */
     public synchronized void didSaveRequest(DidSaveTextDocumentParams params){
         CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didSaveRequest((DidSaveTextDocumentParams) param);return null;});
-        if(future == null) this.remoteEndpoint.notify("textDocument/didSave", params);
+        if(future == null) {
+            this.remoteEndpoint.notify("textDocument/didSave", params);
+            this.polyglotLSref.metrics.increment(this.metricsPrefix + "textDocument/didSave");
+        }
+    }
+
+    /**
+     * Send didClose LSP notification to the language Server
+     * @param params DidCloseTextDocumentParams
+     */
+    public synchronized void didCloseRequest(DidCloseTextDocumentParams params){
+        CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didCloseRequest((DidCloseTextDocumentParams) param);return null;});
+        if(future == null) {
+            this.remoteEndpoint.notify("textDocument/didClose", params);
+            this.polyglotLSref.metrics.increment(this.metricsPrefix + "textDocument/didClose");
+        }
     }
 
     /**
@@ -167,33 +422,39 @@ public class LanguageServerClient extends Thread implements LanguageClient {
      */
     public synchronized void didRenameFiles(RenameFilesParams params){
         CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {this.didRenameFiles((RenameFilesParams) param);return null;});
-        if(future == null) this.remoteEndpoint.notify("workspace/didRenameFiles", params);
+        if(future == null) {
+            this.remoteEndpoint.notify("workspace/didRenameFiles", params);
+            this.polyglotLSref.metrics.increment(this.metricsPrefix + "workspace/didRenameFiles");
+        }
     }
 
     /**
      * Send hover LSP Request to the language Server
      * @param params HoverParams
      */
-    public synchronized CompletableFuture<Object> hoverRequest(HoverParams params){
+    public CompletableFuture<Object> hoverRequest(HoverParams params){
+        // Not synchronized : the requests are dispatched concurrently, only the initialization check is locked
         CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {return this.hoverRequest((HoverParams) param);});
         if(future == null) {
-            this.clientLogger.logMessage("Request from LS "+this.language);
-            return this.remoteEndpoint.request("textDocument/hover", params);
+            this.clientLogger.log(MessageType.Log, () -> "Request from LS "+this.language);
+            long start = this.polyglotLSref.metrics.start();
+            return this.polyglotLSref.metrics.stopWhenComplete(this.metricsPrefix + "textDocument/hover", start, this.track(this.remoteEndpoint.request("textDocument/hover", params)));
         }
-        return future;
+        return this.withInitializationTimeout(future);
     }
 
     /**
      * Send rename LSP Request to the language Server
      * @param params RenameParams
      */
-    public synchronized CompletableFuture<Object> renameRequest(RenameParams params){
+    public CompletableFuture<Object> renameRequest(RenameParams params){
         CompletableFuture<Object> future = this.checkRequestPreInitialization(params, (param) -> {return this.renameRequest((RenameParams) param);});
         if(future == null) {
-            this.clientLogger.logMessage("Request to LS "+this.language);
-            return this.remoteEndpoint.request("textDocument/rename", params);
+            this.clientLogger.log(MessageType.Log, () -> "Request to LS "+this.language);
+            long start = this.polyglotLSref.metrics.start();
+            return this.polyglotLSref.metrics.stopWhenComplete(this.metricsPrefix + "textDocument/rename", start, this.track(this.remoteEndpoint.request("textDocument/rename", params)));
         }
-        return future;
+        return this.withInitializationTimeout(future);
     }
 
     /**
@@ -203,6 +464,8 @@ public class LanguageServerClient extends Thread implements LanguageClient {
      * @return null if the client is initialized, the future of the pending request
      */
     private synchronized CompletableFuture<Object> checkRequestPreInitialization(Object params, Function function){
+        // The language server couldn't be reached or is closed, the requests fail (and the notifications are dropped)
+        if(this.failedCause != null) return CompletableFuture.failedFuture(this.failedCause);
         if(!this.isInitialized){
             CompletableFuture<Object> future = new CompletableFuture<>();
             this.pendingInitializationRequests.add(new LSRequest(params, future, function));
@@ -211,6 +474,44 @@ public class LanguageServerClient extends Thread implements LanguageClient {
         return null;
     }
 
+    /**
+     * Input stream from the language server, reporting the end of the stream (crash or closed connection) as a lost connection
+     */
+    private class MonitoredInputStream extends FilterInputStream {
+
+        MonitoredInputStream(InputStream input){
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if(b < 0) LanguageServerClient.this.connectionLost("connection closed");
+                return b;
+            } catch (IOException e) {
+                // Closed on purpose : the end of the stream stops the listener quietly
+                if(LanguageServerClient.this.closed) return -1;
+                LanguageServerClient.this.connectionLost("connection error : " + e.getMessage());
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                int n = super.read(buffer, offset, length);
+                if(n < 0) LanguageServerClient.this.connectionLost("connection closed");
+                return n;
+            } catch (IOException e) {
+                // Closed on purpose : the end of the stream stops the listener quietly
+                if(LanguageServerClient.this.closed) return -1;
+                LanguageServerClient.this.connectionLost("connection error : " + e.getMessage());
+                throw e;
+            }
+        }
+    }
+
     /**
      * LANGUAGE CLIENT METHOD SECTION, METHODS NOT USED
      */
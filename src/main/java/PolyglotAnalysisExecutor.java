@@ -0,0 +1,172 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+public class PolyglotAnalysisExecutor {
+
+    private final ThreadPoolExecutor analysisPool; // Bounded pool running the analyses (parsing, directory scanning, DU building, diagnostics)
+    private final ThreadPoolExecutor requestPool; // Pool serving the read requests (hover, completion, rename) with low latency
+    private final ReentrantReadWriteLock treesLock; // Write-locked while ASTs are created or reparsed, read-locked while a request walks them
+    private final QueueStatistics analysisStatistics; // Queue depth & wait time of the analysis pool
+    private final QueueStatistics requestStatistics; // Queue depth & wait time of the request pool
+
+    /**
+     * Create the executors.
+     * The analysis pool has a single thread: ASTs and the diagnostics handler are not thread-safe, analyses must be serialized.
+     * @param analysisQueueCapacity maximum number of analyses waiting in the queue (submissions are rejected beyond it, the submitter never waits)
+     * @param requestThreads number of threads serving read requests
+     */
+    public PolyglotAnalysisExecutor(int analysisQueueCapacity, int requestThreads){
+        this.analysisStatistics = new QueueStatistics();
+        this.requestStatistics = new QueueStatistics();
+        this.analysisPool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, analysisQueueCapacity)),
+                daemonThreadFactory("polyglot-analysis"), (runnable, executor) -> {
+                    // Backpressure : the submitter may be the LSP dispatch thread, it must never wait for a free slot (the change scheduler keeps the rejected analyses)
+                    this.analysisStatistics.rejected.increment();
+                    throw new RejectedExecutionException("Analysis queue full");
+                });
+        this.requestPool = new ThreadPoolExecutor(Math.max(1, requestThreads), Math.max(1, requestThreads), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                daemonThreadFactory("polyglot-request"));
+        this.treesLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Get the executor of the analyses
+     * @return executor recording the queue statistics of the analysis pool
+     */
+    public Executor getAnalysisExecutor(){
+        return (runnable) -> this.analysisPool.execute(this.analysisStatistics.wrap(runnable, this.analysisPool));
+    }
+
+    /**
+     * Get the executor of the read requests
+     * @return executor recording the queue statistics of the request pool
+     */
+    public Executor getRequestExecutor(){
+        return (runnable) -> this.requestPool.execute(this.requestStatistics.wrap(runnable, this.requestPool));
+    }
+
+    /**
+     * Run a mutation of the ASTs (creation, reparse) exclusively
+     * @param mutation mutation of the ASTs
+     * @return result of the mutation
+     */
+    public <T> T writeTrees(Supplier<T> mutation){
+        this.treesLock.writeLock().lock();
+        try {
+            return mutation.get();
+        } finally {
+            this.treesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Walk the ASTs without any concurrent mutation (readers only wait for a single parse, never for a whole analysis)
+     * @param reader code reading the ASTs
+     * @return result of the reader
+     */
+    public <T> T readTrees(Supplier<T> reader){
+        this.treesLock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            this.treesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the statistics of both pools
+     * @return map of statistics (queue depth, wait times, tasks count) of each pool
+     */
+    public Map<String, Object> getStatistics(){
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("analysis", this.analysisStatistics.toMap(this.analysisPool));
+        statistics.put("request", this.requestStatistics.toMap(this.requestPool));
+        return statistics;
+    }
+
+    /**
+     * Verify if the pools have been stopped
+     * @return the analyses are not accepted anymore
+     */
+    public boolean isShutdown(){
+        return this.analysisPool.isShutdown();
+    }
+
+    /**
+     * Stop both pools
+     */
+    public void shutdown(){
+        this.analysisPool.shutdownNow();
+        this.requestPool.shutdownNow();
+    }
+
+    /**
+     * Create a thread factory of daemon threads, so the pools never keep the server alive
+     * @param prefix prefix of the threads name
+     * @return the thread factory
+     */
+    private static ThreadFactory daemonThreadFactory(String prefix){
+        AtomicInteger counter = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class QueueStatistics {
+        private final LongAdder tasks = new LongAdder(); // Number of tasks started
+        private final LongAdder totalWaitNanos = new LongAdder(); // Sum of the time spent by tasks in the queue
+        private final AtomicLong maxWaitNanos = new AtomicLong(); // Longest time spent by a task in the queue
+        private final AtomicInteger maxQueueDepth = new AtomicInteger(); // Deepest queue observed at submission
+        private final LongAdder rejected = new LongAdder(); // Number of tasks rejected because the queue was full
+
+        /**
+         * Wrap a task to record its wait time in the queue
+         * @param runnable task submitted
+         * @param pool pool the task is submitted to
+         * @return the wrapped task
+         */
+        Runnable wrap(Runnable runnable, ThreadPoolExecutor pool){
+            long submitted = System.nanoTime();
+            this.maxQueueDepth.accumulateAndGet(pool.getQueue().size() + 1, Math::max);
+            return () -> {
+                long wait = System.nanoTime() - submitted;
+                this.tasks.increment();
+                this.totalWaitNanos.add(wait);
+                this.maxWaitNanos.accumulateAndGet(wait, Math::max);
+                runnable.run();
+            };
+        }
+
+        /**
+         * Export the statistics
+         * @param pool pool of the statistics
+         * @return map of statistics
+         */
+        Map<String, Object> toMap(ThreadPoolExecutor pool){
+            long count = this.tasks.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("queueDepth", pool.getQueue().size());
+            map.put("maxQueueDepth", this.maxQueueDepth.get());
+            map.put("activeThreads", pool.getActiveCount());
+            map.put("tasks", count);
+            map.put("rejected", this.rejected.sum());
+            map.put("meanWaitMs", count == 0 ? 0.0 : this.totalWaitNanos.sum() / (double) count / 1_000_000.0);
+            map.put("maxWaitMs", this.maxWaitNanos.get() / 1_000_000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+public class PolyglotChangeScheduler {
+
+    private static final long OVERFLOW_RETRY_DELAY = 50; // Delay (ms) before resubmitting the analyses of the overflow, while the queue is full
+
+    private final ScheduledExecutorService timer; // Thread waiting the quiet window of each document before submitting its analysis
+    private final Executor analysisExecutor; // Executor running the analyses (ASTs & diagnostics handler are not thread-safe, it must run one analysis at a time)
+    private final IntSupplier quietWindow; // Supplier of the quiet window (in ms) to wait after the last change of a document
+    private final HashMap<String, Integer> latestVersions; // Latest version received for each document uri
+    private final HashMap<String, AnalysisRun> activeRuns; // Analysis waiting or running for each document uri
+    private final LinkedHashMap<String, Runnable> overflow; // Analyses rejected by the full analysis queue, resubmitted when an analysis ends or by the timer (only the latest one of each document uri is kept)
+    private boolean overflowRetryScheduled; // The timer will resubmit the overflow
+
+    public PolyglotChangeScheduler(Executor analysisExecutor, IntSupplier quietWindow){
+        this.quietWindow = quietWindow;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> createDaemonThread(r, "polyglot-change-timer"));
+        this.analysisExecutor = analysisExecutor;
+        this.latestVersions = new HashMap<>();
+        this.activeRuns = new HashMap<>();
+        this.overflow = new LinkedHashMap<>();
+    }
+
+    /**
+     * Schedule the analysis of a changed document once the quiet window is over.
+     * A new change of the same document cancels the previous analysis (waiting or running), only the latest version is analysed.
+     * @param uri uri of the document changed
+     * @param version version of the document after the change
+     * @param analysis analysis to run, must check the run cancellation between its steps
+     */
+    public synchronized void scheduleChange(String uri, int version, Consumer<AnalysisRun> analysis){
+        this.latestVersions.put(uri, version);
+        AnalysisRun run = this.replaceRun(uri, version);
+        run.timerFuture = this.timer.schedule(() -> this.submit(run, analysis), Math.max(0, this.quietWindow.getAsInt()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submit the analysis of a document without waiting (didOpen, didSave). It still supersedes the waiting & running analyses of the document.
+     * @param uri uri of the document
+     * @param version version of the document, null to keep the latest version known
+     * @param analysis analysis to run
+     */
+    public void submitNow(String uri, Integer version, Consumer<AnalysisRun> analysis){
+        AnalysisRun run;
+        synchronized (this) {
+            if(version != null) this.latestVersions.put(uri, version);
+            run = this.replaceRun(uri, this.latestVersions.getOrDefault(uri, 0));
+        }
+        // Never waits : if the analysis queue is full, the analysis is kept in the overflow of the document
+        this.submit(run, analysis);
+    }
+
+    /**
+     * Stop the quiet window timer (the analyses waiting for their quiet window are dropped)
+     */
+    public void shutdown(){
+        this.timer.shutdownNow();
+    }
+
+    /**
+     * Forget the versions of a closed document
+     * @param uri uri of the document closed
+     */
+    public synchronized void forget(String uri){
+        this.latestVersions.remove(uri);
+    }
+
+    /**
+     * Verify if a version is the latest version received for a document
+     * @param uri uri of the document
+     * @param version version to check
+     * @return the version is the latest one (or the document is not versioned)
+     */
+    public synchronized boolean isLatestVersion(String uri, int version){
+        Integer latest = this.latestVersions.get(uri);
+        return latest == null || latest == version;
+    }
+
+    /**
+     * Cancel the active run of a document and register a new one
+     * @param uri uri of the document
+     * @param version version analysed by the new run
+     * @return the new run
+     */
+    private AnalysisRun replaceRun(String uri, int version){
+        AnalysisRun previous = this.activeRuns.get(uri);
+        if(previous != null) previous.cancel();
+        AnalysisRun run = new AnalysisRun(uri, version);
+        this.activeRuns.put(uri, run);
+        return run;
+    }
+
+    /**
+     * Submit an analysis run to the analysis executor
+     * @param run run to submit
+     * @param analysis analysis to execute
+     */
+    private void submit(AnalysisRun run, Consumer<AnalysisRun> analysis){
+        if(run.isCancelled()) return;
+        Runnable task = () -> {
+            try {
+                if(!run.isCancelled()) analysis.accept(run);
+            } catch (CancellationException e) {
+                // The run has been superseded by a newer change, its results are dropped
+            } catch (Exception e) {
+                System.err.println(e);
+            } finally {
+                this.finished(run);
+            }
+        };
+        try {
+            this.analysisExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Queue full : coalesced with the analysis of the document already waiting in the overflow (if any)
+            synchronized (this) {
+                this.overflow.put(run.uri, task);
+                this.scheduleOverflowRetry();
+            }
+        }
+    }
+
+    /**
+     * Unregister a run when it's over, and resubmit the analyses waiting in the overflow
+     * @param run run finished
+     */
+    private synchronized void finished(AnalysisRun run){
+        this.activeRuns.remove(run.uri, run);
+        this.drainOverflow();
+    }
+
+    /**
+     * Resubmit the analyses waiting in the overflow while the queue accepts them, the timer retries later if it is still full
+     */
+    private synchronized void drainOverflow(){
+        Iterator<Map.Entry<String, Runnable>> pending = this.overflow.entrySet().iterator();
+        while(pending.hasNext()){
+            Map.Entry<String, Runnable> entry = pending.next();
+            try {
+                this.analysisExecutor.execute(entry.getValue());
+            } catch (RejectedExecutionException e) {
+                this.scheduleOverflowRetry();
+                return;
+            }
+            pending.remove();
+        }
+    }
+
+    /**
+     * Schedule a resubmission of the overflow : the queue may be full of other tasks (workspace bootstrap), no analysis of the scheduler would end to resubmit it
+     */
+    private synchronized void scheduleOverflowRetry(){
+        if(this.overflowRetryScheduled || this.overflow.isEmpty()) return;
+        try {
+            this.timer.schedule(() -> {
+                synchronized (this) {
+                    this.overflowRetryScheduled = false;
+                    this.drainOverflow();
+                }
+            }, OVERFLOW_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            this.overflowRetryScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // The timer has been stopped with the server
+        }
+    }
+
+    /**
+     * Create a daemon thread, so analysis threads never keep the server alive
+     * @param runnable runnable of the thread
+     * @param name name of the thread
+     * @return the daemon thread
+     */
+    private static Thread createDaemonThread(Runnable runnable, String name){
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public class AnalysisRun {
+        private final String uri; // Uri of the document analysed
+        private final int version; // Version of the document analysed
+        private volatile boolean cancelled; // The run has been superseded by a newer one
+        private ScheduledFuture<?> timerFuture; // Future of the quiet window timer (null if the run was submitted directly)
+
+        AnalysisRun(String uri, int version){
+            this.uri = uri;
+            this.version = version;
+        }
+
+        /**
+         * Get the version of the document analysed by this run
+         * @return version of the document
+         */
+        public int getVersion(){
+            return this.version;
+        }
+
+        /**
+         * Verify if the run has been cancelled or if its version is outdated
+         * @return the results of this run must not be published
+         */
+        public boolean isCancelled(){
+            return this.cancelled || !isLatestVersion(this.uri, this.version);
+        }
+
+        /**
+         * Throw a CancellationException if the run has been cancelled, used between analysis steps
+         */
+        public void checkCancelled(){
+            if(this.isCancelled()) throw new CancellationException("Analysis of " + this.uri + " (version " + this.version + ") superseded");
+        }
+
+        /**
+         * Cancel the run
+         */
+        void cancel(){
+            this.cancelled = true;
+            if(this.timerFuture != null) this.timerFuture.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PolyglotContentStore {
+
+    private static final long MAPPING_THRESHOLD = 64 * 1024; // Files at least this big are memory-mapped instead of read on the heap
+
+    private final long maxBytes; // Maximum size of the contents kept (least recently used contents are dropped beyond it)
+    private final LinkedHashMap<Path, Content> contents; // Content of each file read, in least recently used order
+    private long totalBytes; // Size of all the contents kept (bytes + decoded texts)
+    private long reads; // Number of files read from the disk
+    private long hits; // Number of accesses served without reading the disk
+
+    /**
+     * Create the store
+     * @param maxBytes maximum size of the contents kept (0 : no limit)
+     */
+    public PolyglotContentStore(long maxBytes){
+        this.maxBytes = maxBytes;
+        this.contents = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the content of a file on disk, read once per version of the file (its modification time & size)
+     * @param path path of the file
+     * @return read-only view of the content (the view position & limit can be moved freely)
+     */
+    public ByteBuffer getBytes(Path path) throws IOException {
+        return this.getContent(path).bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the text of a file on disk, decoded once per version of the file and shared by all the callers
+     * @param path path of the file
+     * @return text of the file (UTF-8)
+     */
+    public String getText(Path path) throws IOException {
+        Content content = this.getContent(path);
+        synchronized (this) {
+            if(content.text == null){
+                content.text = StandardCharsets.UTF_8.decode(content.bytes.duplicate()).toString();
+                if(this.contents.get(path) == content) this.totalBytes += 2L * content.text.length();
+                this.trim();
+            }
+            return content.text;
+        }
+    }
+
+    /**
+     * Drop the content of a file (changed by the client, saved, or modified on disk)
+     * @param path path of the file
+     */
+    public synchronized void invalidate(Path path){
+        Content content = this.contents.remove(path);
+        if(content != null) this.totalBytes -= content.size();
+    }
+
+    /**
+     * Get the statistics of the store
+     * @return map of statistics
+     */
+    public synchronized Map<String, Object> getStatistics(){
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("files", this.contents.size());
+        statistics.put("bytes", this.totalBytes);
+        statistics.put("reads", this.reads);
+        statistics.put("hits", this.hits);
+        return statistics;
+    }
+
+    /**
+     * Get the content of a file, read it again if it has been modified since the last read
+     * @param path path of the file
+     * @return content of the file
+     */
+    private Content getContent(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        synchronized (this) {
+            Content content = this.contents.get(path);
+            if(content != null && content.isVersion(attributes)){
+                this.hits++;
+                return content;
+            }
+        }
+        // Read outside the lock, several files can be read at the same time
+        Content content = new Content(read(path, attributes.size()), attributes.lastModifiedTime(), attributes.size());
+        synchronized (this) {
+            this.reads++;
+            Content previous = this.contents.put(path, content);
+            if(previous != null) this.totalBytes -= previous.size();
+            this.totalBytes += content.size();
+            this.trim();
+        }
+        return content;
+    }
+
+    /**
+     * Drop the least recently used contents while the store is over its maximum size
+     */
+    private void trim(){
+        Iterator<Content> iterator = this.contents.values().iterator();
+        while(this.maxBytes > 0 && this.totalBytes > this.maxBytes && iterator.hasNext()){
+            this.totalBytes -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Read a file : big files are memory-mapped, small ones are read on the heap
+     * @param path path of the file
+     * @param size size of the file
+     * @return content of the file
+     */
+    private static ByteBuffer read(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(size >= MAPPING_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    private static class Content {
+        final ByteBuffer bytes; // Content of the file (mapped or on the heap)
+        final FileTime lastModified; // Modification time of the file when it was read
+        final long fileSize; // Size of the file when it was read
+        String text; // Decoded text of the file (null until requested)
+
+        Content(ByteBuffer bytes, FileTime lastModified, long fileSize){
+            this.bytes = bytes;
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+        }
+
+        /**
+         * Verify if the content is the current version of the file
+         * @param attributes current attributes of the file
+         * @return the file hasn't been modified since it was read
+         */
+        boolean isVersion(BasicFileAttributes attributes){
+            return attributes.lastModifiedTime().equals(this.lastModified) && attributes.size() == this.fileSize;
+        }
+
+        /**
+         * Get the memory used by the content
+         * @return size of the bytes & decoded text
+         */
+        long size(){
+            return this.bytes.capacity() + (this.text != null ? 2L * this.text.length() : 0);
+        }
+    }
+}
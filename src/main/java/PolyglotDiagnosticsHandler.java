@@ -1,24 +1,50 @@
-import com.example.polyglotast.PolyglotTreeHandler;
-import com.google.common.collect.ImmutableList;
 import kotlin.Pair;
 import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.DiagnosticSeverity;
+import org.eclipse.lsp4j.DocumentDiagnosticReport;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.PreviousResultId;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.RelatedFullDocumentDiagnosticReport;
+import org.eclipse.lsp4j.RelatedUnchangedDocumentDiagnosticReport;
+import org.eclipse.lsp4j.WorkspaceDiagnosticReport;
+import org.eclipse.lsp4j.WorkspaceDocumentDiagnosticReport;
+import org.eclipse.lsp4j.WorkspaceFullDocumentDiagnosticReport;
+import org.eclipse.lsp4j.WorkspaceUnchangedDocumentDiagnosticReport;
 import org.eclipse.lsp4j.services.LanguageClient;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public class PolyglotDiagnosticsHandler {
 
-    private PolyglotLanguageServer languageServer; // Reference to the Language Server
+    private final Supplier<LanguageClient> languageClient; // Client the diagnostics are sent to (null until the client is connected)
+    private final BooleanSupplier pullDiagnostics; // The client pulls its diagnostics (it then supports the refresh request) instead of receiving them
+    private final PolyglotMetrics metrics; // Latency & counters of the publications
 
-    private HashMap<String, HashMap<Pair<DiagnosticCategory, Path>, HashSet<Diagnostic>>> diagnostics; // Map which stored all the diagnostics
+    private HashMap<String, HashMap<Pair<DiagnosticCategory, Path>, HashSet<StoredDiagnostic>>> diagnostics; // Map which stored all the diagnostics (compact form, converted to LSP diagnostics when published)
+    private HashMap<String, Long> publishedFingerprints; // Fingerprint of the last diagnostics published to the client for each file (pull mode : of the last diagnostics the client was told to refresh)
+    private LinkedHashMap<String, Boolean> pendingPublishes; // Files to publish at the next flush -> publish even if their diagnostics didn't change
+    private HashMap<String, HashSet<StoredDiagnostic>> flushedDiagnostics; // Diagnostics of each file at the last flush (end of an analysis), the pulled reports never see a partially rebuilt set
 
-    public PolyglotDiagnosticsHandler(PolyglotLanguageServer languageServer){
-        this.languageServer = languageServer;
+    public PolyglotDiagnosticsHandler(Supplier<LanguageClient> languageClient, BooleanSupplier pullDiagnostics, PolyglotMetrics metrics){
+        this.languageClient = languageClient;
+        this.pullDiagnostics = pullDiagnostics;
+        this.metrics = metrics;
         this.diagnostics = new HashMap<>();
+        this.publishedFingerprints = new HashMap<>();
+        this.pendingPublishes = new LinkedHashMap<>();
+        this.flushedDiagnostics = new HashMap<>();
     }
 
     /**
@@ -28,49 +54,218 @@ public class PolyglotDiagnosticsHandler {
      * @param category Category of the diagnostic
      * @param hostPath Path of Host File which triggered this diagnostic (useful for multihost polyglot program)
      */
-    public void addDiagnostic(String uri, Diagnostic diagnostic, DiagnosticCategory category, Path hostPath){
+    public synchronized void addDiagnostic(String uri, Diagnostic diagnostic, DiagnosticCategory category, Path hostPath){
         if (diagnostics!=null && !category.equals(DiagnosticCategory.ALL)) {
-            if(this.diagnostics.containsKey(uri)){
-                if(this.diagnostics.get(uri).containsKey(new Pair(category, hostPath))) {
-                    this.diagnostics.get(uri).get(new Pair(category, hostPath)).add(diagnostic);
-                } else {
-                    HashSet<Diagnostic> set = new HashSet<Diagnostic>();
-                    set.add(diagnostic);
-                    this.diagnostics.get(uri).put(new Pair(category, hostPath), set);
+            this.diagnostics.computeIfAbsent(uri, k -> new HashMap<>()).computeIfAbsent(new Pair<>(category, hostPath), k -> new HashSet<>()).add(new StoredDiagnostic(diagnostic));
+        }
+    }
+
+    /**
+     * Publish all diagnostics stored for a specific file at the next flush, even if they didn't change
+     * @param uri file's uri
+     */
+    public synchronized void publishDiagnostics(String uri){
+        this.pendingPublishes.put(uri, true);
+    }
+
+    /**
+     * Publish all diagnostics stored for a specific file at the next flush, only if they are different from the last diagnostics published for it
+     * @param uri file's uri
+     */
+    public synchronized void publishDiagnosticsIfChanged(String uri){
+        this.pendingPublishes.putIfAbsent(uri, false);
+    }
+
+    /**
+     * Send the diagnostics of the files waiting to be published (called once at the end of each analysis).
+     * The files whose diagnostics have the same fingerprint as the last ones published are skipped.
+     * In pull mode nothing is pushed : the client is asked once to pull its diagnostics again if any of them changed.
+     * The pulled reports are built from the diagnostics flushed, the sets being rebuilt by an analysis are never reported.
+     */
+    public void flush(){
+        LanguageClient client = this.languageClient.get();
+        if (client == null) return;
+        boolean pull = this.pullDiagnostics.getAsBoolean();
+        ArrayList<PublishDiagnosticsParams> publishes = new ArrayList<>();
+        boolean changed = false;
+        synchronized (this) {
+            if (this.pendingPublishes.isEmpty()) return;
+            long start = this.metrics.start();
+            for (Map.Entry<String, Boolean> pending : this.pendingPublishes.entrySet()) {
+                String uri = pending.getKey();
+                if (this.diagnostics == null || !this.diagnostics.containsKey(uri)) continue;
+                long fingerprint = this.getFingerprint(uri);
+                Long published = this.publishedFingerprints.get(uri);
+                if (!pending.getValue() && published != null && published == fingerprint) {
+                    this.metrics.increment("diagnostics/suppressed");
+                    continue;
                 }
+                HashSet<StoredDiagnostic> merged = this.mergeDiagnostics(uri);
+                if (!pull) publishes.add(new PublishDiagnosticsParams(uri, toDiagnostics(merged)));
+                changed = true;
+                this.publishedFingerprints.put(uri, fingerprint);
+                this.flushedDiagnostics.put(uri, merged);
+            }
+            this.pendingPublishes.clear();
+            this.metrics.stop("diagnostics/flush", start);
+        }
+        // The client is notified outside the lock
+        if (pull) {
+            if (changed) {
+                this.metrics.increment("diagnostics/refresh");
+                client.refreshDiagnostics();
+            }
+            return;
+        }
+        for (PublishDiagnosticsParams params : publishes) {
+            long start = this.metrics.start();
+            client.publishDiagnostics(params);
+            this.metrics.stop("diagnostics/publish", start);
+        }
+    }
+
+    /**
+     * Get the diagnostic report of a file (textDocument/diagnostic) from its diagnostics at the last flush, the result id is their fingerprint
+     * @param uri file's uri
+     * @param previousResultId result id of the last report received by the client (null if none)
+     * @return unchanged report if the diagnostics have the same result id, full report otherwise
+     */
+    public synchronized DocumentDiagnosticReport getDocumentReport(String uri, String previousResultId){
+        String resultId = this.getFlushedResultId(uri);
+        if (resultId.equals(previousResultId)) return new DocumentDiagnosticReport(new RelatedUnchangedDocumentDiagnosticReport(resultId));
+        RelatedFullDocumentDiagnosticReport report = new RelatedFullDocumentDiagnosticReport(toDiagnostics(this.flushedDiagnostics.get(uri)));
+        report.setResultId(resultId);
+        return new DocumentDiagnosticReport(report);
+    }
+
+    /**
+     * Get the diagnostic reports of all the files having diagnostics at the last flush (workspace/diagnostic)
+     * @param previousResultIds result ids of the last reports received by the client
+     * @return report of each file, unchanged for the files whose result id is the same
+     */
+    public synchronized WorkspaceDiagnosticReport getWorkspaceReport(List<PreviousResultId> previousResultIds){
+        HashMap<String, String> previous = new HashMap<>();
+        if (previousResultIds != null) {
+            for (PreviousResultId previousResultId : previousResultIds) {
+                previous.put(previousResultId.getUri(), previousResultId.getValue());
+            }
+        }
+        ArrayList<WorkspaceDocumentDiagnosticReport> reports = new ArrayList<>();
+        for (Map.Entry<String, HashSet<StoredDiagnostic>> entry : this.flushedDiagnostics.entrySet()) {
+            String uri = entry.getKey();
+            String resultId = this.getFlushedResultId(uri);
+            if (resultId.equals(previous.get(uri))) {
+                reports.add(new WorkspaceDocumentDiagnosticReport(new WorkspaceUnchangedDocumentDiagnosticReport(resultId, uri, null)));
             } else {
-                HashMap<Pair<DiagnosticCategory, Path>, HashSet<Diagnostic>> map = new HashMap<>();
-                HashSet<Diagnostic> set = new HashSet<Diagnostic>();
-                set.add(diagnostic);
-                map.put(new Pair(category, hostPath), set);
-                this.diagnostics.put(uri, map);
+                WorkspaceFullDocumentDiagnosticReport report = new WorkspaceFullDocumentDiagnosticReport(toDiagnostics(entry.getValue()), uri, null);
+                report.setResultId(resultId);
+                reports.add(new WorkspaceDocumentDiagnosticReport(report));
             }
         }
+        return new WorkspaceDiagnosticReport(reports);
+    }
+
+    /**
+     * Get the diagnostics stored for a file, all categories & hosts merged
+     * @param uri file's uri
+     * @return list of LSP diagnostics (empty if there is none)
+     */
+    public synchronized ArrayList<Diagnostic> getDiagnostics(String uri){
+        return toDiagnostics(this.mergeDiagnostics(uri));
     }
 
     /**
-     * Publish all diagnostics stored for a specific file, to the client
+     * Merge the diagnostics stored for a file, all categories & hosts
      * @param uri file's uri
+     * @return set of stored diagnostics (empty if there is none)
      */
-    public void publishDiagnostics(String uri){
-        LanguageClient client = this.languageServer.languageClient;
-        if (client!=null && this.diagnostics!=null && this.diagnostics.containsKey(uri)) {
-            HashSet<Diagnostic> list = new HashSet<>();
-            for (HashSet<Diagnostic> value : this.diagnostics.get(uri).values()) {
-                list.addAll(value);
+    private HashSet<StoredDiagnostic> mergeDiagnostics(String uri){
+        HashSet<StoredDiagnostic> merged = new HashSet<>();
+        HashMap<Pair<DiagnosticCategory, Path>, HashSet<StoredDiagnostic>> fileDiagnostics = this.diagnostics == null ? null : this.diagnostics.get(uri);
+        if (fileDiagnostics != null) {
+            for (HashSet<StoredDiagnostic> value : fileDiagnostics.values()) {
+                merged.addAll(value);
             }
-            PublishDiagnosticsParams params = new PublishDiagnosticsParams();
-            params.setUri(uri);
-            params.setDiagnostics(ImmutableList.copyOf(list));
-            client.publishDiagnostics(params);
         }
+        return merged;
+    }
+
+    /**
+     * Convert stored diagnostics to LSP diagnostics
+     * @param stored stored diagnostics (null allowed)
+     * @return list of LSP diagnostics
+     */
+    private static ArrayList<Diagnostic> toDiagnostics(Collection<StoredDiagnostic> stored){
+        ArrayList<Diagnostic> list = new ArrayList<>(stored == null ? 0 : stored.size());
+        if (stored != null) {
+            for (StoredDiagnostic diagnostic : stored) {
+                list.add(diagnostic.toDiagnostic());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the fingerprint of the diagnostics stored for a file : it only changes when a diagnostic is added, removed or moved
+     * @param uri file's uri
+     * @return fingerprint of the diagnostics (independent of their order)
+     */
+    public synchronized long getFingerprint(String uri){
+        long sum = 0;
+        long count = 0;
+        HashMap<Pair<DiagnosticCategory, Path>, HashSet<StoredDiagnostic>> fileDiagnostics = this.diagnostics == null ? null : this.diagnostics.get(uri);
+        if (fileDiagnostics != null) {
+            for (HashSet<StoredDiagnostic> value : fileDiagnostics.values()) {
+                for (StoredDiagnostic diagnostic : value) {
+                    sum += diagnostic.hash;
+                    count++;
+                }
+            }
+        }
+        return mix(sum + count * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Get the result id of the diagnostics of a file at the last flush, sent with the pulled reports
+     * @param uri file's uri
+     * @return hexadecimal fingerprint of the diagnostics
+     */
+    private String getFlushedResultId(String uri){
+        Long fingerprint = this.flushedDiagnostics.containsKey(uri) ? this.publishedFingerprints.get(uri) : null;
+        return Long.toHexString(fingerprint != null ? fingerprint : mix(0));
+    }
+
+    /**
+     * Move the diagnostics of a file & category to new ranges (used when an edition only shifted the statements they are attached to)
+     * Nothing is changed if a diagnostic has no new range.
+     * @param uri file's uri
+     * @param category diagnostic category to move
+     * @param mapping map of previous range -> new range
+     * @return all the diagnostics have been moved
+     */
+    public synchronized boolean remapDiagnostics(String uri, DiagnosticCategory category, Map<Range, Range> mapping){
+        if (mapping == null) return false;
+        if (this.diagnostics==null || !this.diagnostics.containsKey(uri)) return true;
+        HashMap<Pair<DiagnosticCategory, Path>, HashSet<StoredDiagnostic>> remapped = new HashMap<>();
+        for (Map.Entry<Pair<DiagnosticCategory, Path>, HashSet<StoredDiagnostic>> entry : this.diagnostics.get(uri).entrySet()) {
+            if(!entry.getKey().component1().equals(category)) continue;
+            HashSet<StoredDiagnostic> set = new HashSet<>();
+            for (StoredDiagnostic diagnostic : entry.getValue()) {
+                Range range = mapping.get(diagnostic.getRange());
+                if(range == null) return false;
+                set.add(diagnostic.moveTo(range));
+            }
+            remapped.put(entry.getKey(), set);
+        }
+        this.diagnostics.get(uri).putAll(remapped);
+        return true;
     }
 
     /**
-     * Publish all diagnostics stored for a set of files, to the client
+     * Publish all diagnostics stored for a set of files at the next flush
      * @param uris set of file's URI
      */
-    public void publishDiagnostics(HashSet<String> uris){
+    public synchronized void publishDiagnostics(HashSet<String> uris){
         for (String s : uris) {
             this.publishDiagnostics(s);
         }
@@ -82,32 +277,146 @@ public class PolyglotDiagnosticsHandler {
      * @param category diagnostic category to remove
      * @param hostPath file host who owns the diagnostics
      */
-    public void clearDiagnostics(String uri, DiagnosticCategory category, Path hostPath){
-        LanguageClient client = this.languageServer.languageClient;
-        if (client!=null && this.diagnostics!=null && this.diagnostics.containsKey(uri)) {
+    public synchronized void clearDiagnostics(String uri, DiagnosticCategory category, Path hostPath){
+        if (this.diagnostics!=null && this.diagnostics.containsKey(uri)) {
             if(category.equals(DiagnosticCategory.ALL)){
                 this.clearDiagnostics(uri, DiagnosticCategory.FILENOTFOUND, hostPath);
                 this.clearDiagnostics(uri, DiagnosticCategory.IMPORTEXPORT, hostPath);
             } else {
-                this.diagnostics.get(uri).remove(new Pair(category, hostPath));
+                this.diagnostics.get(uri).remove(new Pair<>(category, hostPath));
             }
         }
     }
 
     /**
-     * Clear all diagnostics stored from many files
+     * Clear all diagnostics stored from many files, and remove them from the client
      * @param URIs set of file's URI
      */
     public void clearDiagnostics(HashSet<String> URIs){
-        LanguageClient client = this.languageServer.languageClient;
-        if (client!=null && this.diagnostics!=null) {
+        ArrayList<String> cleared = new ArrayList<>();
+        synchronized (this) {
+            if (this.diagnostics == null) return;
             for(String uri : URIs){
-                if(this.diagnostics.containsKey(uri)){
-                    client.publishDiagnostics(new PublishDiagnosticsParams(uri, new ArrayList<>(0)));
-                }
+                if(this.diagnostics.remove(uri) == null) continue;
+                this.publishedFingerprints.remove(uri);
+                this.flushedDiagnostics.remove(uri);
+                this.pendingPublishes.remove(uri);
+                cleared.add(uri);
             }
         }
+        LanguageClient client = this.languageClient.get();
+        if (client == null || cleared.isEmpty()) return;
+        // Pulled diagnostics are never pushed, the client pulls again
+        if (this.pullDiagnostics.getAsBoolean()) {
+            client.refreshDiagnostics();
+            return;
+        }
+        for(String uri : cleared){
+            client.publishDiagnostics(new PublishDiagnosticsParams(uri, new ArrayList<>(0)));
+        }
     }
 
-}
+    /**
+     * Mix the bits of a 64 bits value (finalizer of SplitMix64)
+     * @param value value to mix
+     * @return mixed value
+     */
+    private static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Get a 64 bits hash of a string (FNV-1a)
+     * @param text string to hash (null allowed)
+     * @return hash of the string
+     */
+    private static long hash(String text){
+        if (text == null) return 0;
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static class StoredDiagnostic {
+        final long start; // Line (high 32 bits) & character (low 32 bits) of the start of the range
+        final long end; // Line (high 32 bits) & character (low 32 bits) of the end of the range
+        final int severity; // Value of the DiagnosticSeverity (0 if none)
+        final String message; // Message of the diagnostic
+        final String source; // Source of the diagnostic
+        final long hash; // 64 bits hash of the fields, used by the fingerprints
+
+        StoredDiagnostic(Diagnostic diagnostic){
+            this(pack(diagnostic.getRange().getStart()), pack(diagnostic.getRange().getEnd()), diagnostic.getSeverity() == null ? 0 : diagnostic.getSeverity().getValue(), diagnostic.getMessage(), diagnostic.getSource());
+        }
+
+        StoredDiagnostic(long start, long end, int severity, String message, String source){
+            this.start = start;
+            this.end = end;
+            this.severity = severity;
+            this.message = message;
+            this.source = source;
+            this.hash = mix(mix(mix(mix(start) ^ end) ^ severity ^ hash(message)) ^ hash(source));
+        }
+
+        /**
+         * Pack a position in a long
+         * @param position LSP position
+         * @return line (high 32 bits) & character (low 32 bits)
+         */
+        static long pack(Position position){
+            return ((long) position.getLine() << 32) | (position.getCharacter() & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Unpack a position
+         * @param packed line (high 32 bits) & character (low 32 bits)
+         * @return LSP position
+         */
+        static Position unpack(long packed){
+            return new Position((int) (packed >>> 32), (int) packed);
+        }
+
+        /**
+         * Get the range of the diagnostic
+         * @return LSP range
+         */
+        Range getRange(){
+            return new Range(unpack(this.start), unpack(this.end));
+        }
+
+        /**
+         * Copy the diagnostic at another range
+         * @param range new range
+         * @return moved diagnostic
+         */
+        StoredDiagnostic moveTo(Range range){
+            return new StoredDiagnostic(pack(range.getStart()), pack(range.getEnd()), this.severity, this.message, this.source);
+        }
+
+        /**
+         * Convert the diagnostic to a LSP diagnostic (when it is serialized)
+         * @return LSP diagnostic
+         */
+        Diagnostic toDiagnostic(){
+            return new Diagnostic(this.getRange(), this.message, this.severity == 0 ? null : DiagnosticSeverity.forValue(this.severity), this.source);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (this == o) return true;
+            if (!(o instanceof StoredDiagnostic)) return false;
+            StoredDiagnostic other = (StoredDiagnostic) o;
+            return this.hash == other.hash && this.start == other.start && this.end == other.end && this.severity == other.severity
+                    && Objects.equals(this.message, other.message) && Objects.equals(this.source, other.source);
+        }
 
+        @Override
+        public int hashCode(){
+            return (int) (this.hash ^ (this.hash >>> 32));
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PolyglotDocumentBuffer {
+
+    private static final int MAX_PIECES = 512; // Number of pieces above which the piece table is compacted
+
+    private String original; // Read-only buffer holding the content the piece table started from
+    private final StringBuilder added; // Append-only buffer holding every text inserted since the last compaction
+    private final ArrayList<Piece> pieces; // Ordered pieces (spans of original or added buffer) making the current content
+    private int length; // Length of the current content
+    private int[] lineStarts; // Offset of the first character of each line (primitive array, grown on demand)
+    private int lineCount; // Number of lines of the current content
+    private int version; // Version of the document, as sent by the client
+    private String cachedText; // Content cache, invalidated by each edition
+
+    public PolyglotDocumentBuffer(String text, int version){
+        this.added = new StringBuilder();
+        this.pieces = new ArrayList<>();
+        this.reset(text);
+        this.version = version;
+    }
+
+    /**
+     * Get the version of the document
+     * @return version of the last change applied to the buffer
+     */
+    public synchronized int getVersion(){
+        return this.version;
+    }
+
+    /**
+     * Get the length of the document
+     * @return number of UTF-16 chars of the document
+     */
+    public synchronized int getLength(){
+        return this.length;
+    }
+
+    /**
+     * Get the number of lines of the document
+     * @return number of lines of the document
+     */
+    public synchronized int getLineCount(){
+        return this.lineCount;
+    }
+
+    /**
+     * Apply all the content changes of a LSP didChange notification, in order
+     * @param changes content changes sent by the client
+     * @param version version of the document after the changes
+     */
+    public synchronized void applyChanges(List<TextDocumentContentChangeEvent> changes, int version){
+        for (TextDocumentContentChangeEvent change : changes) {
+            this.applyChange(change);
+        }
+        this.version = version;
+    }
+
+    /**
+     * Apply a single content change (incremental if it has a range, full replacement otherwise)
+     * @param change content change sent by the client
+     */
+    public synchronized void applyChange(TextDocumentContentChangeEvent change){
+        String text = change.getText() == null ? "" : change.getText();
+        Range range = change.getRange();
+        if(range == null){
+            this.reset(text);
+            return;
+        }
+        int start = this.offsetAt(range.getStart());
+        int end = Math.max(start, this.offsetAt(range.getEnd()));
+        this.replace(start, end, text);
+    }
+
+    /**
+     * Get the whole content of the document
+     * @return content of the document
+     */
+    public synchronized String getText(){
+        if(this.cachedText == null){
+            StringBuilder builder = new StringBuilder(this.length);
+            for (Piece piece : this.pieces) {
+                if(piece.added) builder.append(this.added, piece.start, piece.start + piece.length);
+                else builder.append(this.original, piece.start, piece.start + piece.length);
+            }
+            this.cachedText = builder.toString();
+        }
+        return this.cachedText;
+    }
+
+    /**
+     * Get the content of a line before a position
+     * @param position LSP position (line & UTF-16 character)
+     * @return text between the beginning of the line & the position
+     */
+    public synchronized String getLineTextBefore(Position position){
+        return this.getText().substring(this.offsetAt(new Position(position.getLine(), 0)), this.offsetAt(position));
+    }
+
+    /**
+     * Convert a LSP position into an offset of the document (lines are split on '\n', "\r\n" is handled as '\n')
+     * @param position LSP position (line & UTF-16 character)
+     * @return offset in the document, clamped to the line & document bounds
+     */
+    public synchronized int offsetAt(Position position){
+        int line = position.getLine();
+        if(line < 0) return 0;
+        if(line >= this.lineCount) return this.length;
+        int lineStart = this.lineStarts[line];
+        int lineEnd = line + 1 < this.lineCount ? this.lineStarts[line + 1] - 1 : this.length;
+        return Math.min(lineStart + Math.max(0, position.getCharacter()), lineEnd);
+    }
+
+    /**
+     * Convert an offset of the document into a LSP position
+     * @param offset offset in the document
+     * @return LSP position of the offset
+     */
+    public synchronized Position positionAt(int offset){
+        int clamped = Math.max(0, Math.min(offset, this.length));
+        int line = this.lineIndexAt(clamped);
+        return new Position(line, clamped - this.lineStarts[line]);
+    }
+
+    /**
+     * Replace the content of the buffer by a new text (used for full synchronization)
+     * @param text new content
+     */
+    private void reset(String text){
+        this.original = text;
+        this.added.setLength(0);
+        this.pieces.clear();
+        if(!text.isEmpty()) this.pieces.add(new Piece(false, 0, text.length()));
+        this.length = text.length();
+        this.cachedText = text;
+        this.lineStarts = new int[16];
+        this.lineCount = 1;
+        this.lineStarts[0] = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if(text.charAt(i) == '\n') this.addLineStart(i + 1);
+        }
+    }
+
+    /**
+     * Replace the range [start, end[ of the document by a text, and update the line index
+     * @param start offset of the first char replaced
+     * @param end offset after the last char replaced
+     * @param text text to insert
+     */
+    private void replace(int start, int end, String text){
+        this.delete(start, end);
+        this.insert(start, text);
+        this.length += text.length() - (end - start);
+        this.cachedText = null;
+        this.updateLineStarts(start, end, text);
+        if(this.pieces.size() > MAX_PIECES) this.reset(this.getText());
+    }
+
+    /**
+     * Remove the range [start, end[ from the pieces
+     * @param start offset of the first char removed
+     * @param end offset after the last char removed
+     */
+    private void delete(int start, int end){
+        if(start >= end) return;
+        int pos = 0;
+        int i = 0;
+        while(i < this.pieces.size() && pos < end){
+            Piece piece = this.pieces.get(i);
+            int pieceEnd = pos + piece.length;
+            if(pieceEnd <= start){
+                pos = pieceEnd;
+                i++;
+                continue;
+            }
+            int cutStart = Math.max(start, pos) - pos;
+            int cutEnd = Math.min(end, pieceEnd) - pos;
+            this.pieces.remove(i);
+            if(cutEnd < piece.length){
+                this.pieces.add(i, new Piece(piece.added, piece.start + cutEnd, piece.length - cutEnd));
+                i++;
+            }
+            if(cutStart > 0){
+                this.pieces.add(i - (cutEnd < piece.length ? 1 : 0), new Piece(piece.added, piece.start, cutStart));
+                i++;
+            }
+            pos = pieceEnd;
+        }
+    }
+
+    /**
+     * Insert a text at a specific offset of the pieces
+     * @param offset offset of insertion
+     * @param text text to insert
+     */
+    private void insert(int offset, String text){
+        if(text.isEmpty()) return;
+        int addStart = this.added.length();
+        this.added.append(text);
+        int pos = 0;
+        int i = 0;
+        while(i < this.pieces.size() && offset > pos + this.pieces.get(i).length){
+            pos += this.pieces.get(i).length;
+            i++;
+        }
+        if(i == this.pieces.size()){
+            this.pieces.add(new Piece(true, addStart, text.length()));
+            return;
+        }
+        Piece piece = this.pieces.get(i);
+        int inner = offset - pos;
+        if(inner == piece.length){
+            // Typing at the end of the last insertion only grows the piece
+            if(piece.added && piece.start + piece.length == addStart) piece.length += text.length();
+            else this.pieces.add(i + 1, new Piece(true, addStart, text.length()));
+        } else if(inner == 0){
+            this.pieces.add(i, new Piece(true, addStart, text.length()));
+        } else {
+            this.pieces.set(i, new Piece(piece.added, piece.start, inner));
+            this.pieces.add(i + 1, new Piece(true, addStart, text.length()));
+            this.pieces.add(i + 2, new Piece(piece.added, piece.start + inner, piece.length - inner));
+        }
+    }
+
+    /**
+     * Update the line index after the replacement of [start, end[ by text
+     * @param start offset of the first char replaced
+     * @param end offset after the last char replaced
+     * @param text text inserted
+     */
+    private void updateLineStarts(int start, int end, String text){
+        // Lines starting inside the removed range are dropped, lines after it are shifted
+        int lo = this.firstLineStartAfter(start);
+        int hi = this.firstLineStartAfter(end);
+        int inserted = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if(text.charAt(i) == '\n') inserted++;
+        }
+        int delta = text.length() - (end - start);
+        int newCount = lo + inserted + (this.lineCount - hi);
+        int[] newStarts = this.lineStarts.length >= newCount && inserted <= hi - lo ? this.lineStarts : new int[Math.max(16, newCount + newCount / 2)];
+        if(newStarts != this.lineStarts) System.arraycopy(this.lineStarts, 0, newStarts, 0, lo);
+        System.arraycopy(this.lineStarts, hi, newStarts, lo + inserted, this.lineCount - hi);
+        for (int i = lo + inserted; i < newCount; i++) {
+            newStarts[i] += delta;
+        }
+        int index = lo;
+        for (int i = 0; i < text.length(); i++) {
+            if(text.charAt(i) == '\n') newStarts[index++] = start + i + 1;
+        }
+        this.lineStarts = newStarts;
+        this.lineCount = newCount;
+    }
+
+    /**
+     * Binary search the index of the first line starting strictly after an offset
+     * @param offset offset of the document
+     * @return index of the first line starting after the offset (lineCount if none)
+     */
+    private int firstLineStartAfter(int offset){
+        int lo = 0;
+        int hi = this.lineCount;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(this.lineStarts[mid] <= offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Get the line containing an offset
+     * @param offset offset of the document
+     * @return index of the line
+     */
+    private int lineIndexAt(int offset){
+        return this.firstLineStartAfter(offset) - 1;
+    }
+
+    /**
+     * Append a line start to the line index
+     * @param offset offset of the first char of the new line
+     */
+    private void addLineStart(int offset){
+        if(this.lineCount == this.lineStarts.length){
+            int[] grown = new int[this.lineStarts.length * 2];
+            System.arraycopy(this.lineStarts, 0, grown, 0, this.lineCount);
+            this.lineStarts = grown;
+        }
+        this.lineStarts[this.lineCount++] = offset;
+    }
+
+    private static class Piece {
+        final boolean added; // The piece refers to the added buffer (original buffer otherwise)
+        final int start; // Offset of the piece in its buffer
+        int length; // Length of the piece
+
+        Piece(boolean added, int start, int length){
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
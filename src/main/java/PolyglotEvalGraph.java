@@ -0,0 +1,245 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PolyglotEvalGraph {
+
+    private static final int[] NONE = new int[0]; // Adjacency of a file without edge
+
+    private final HashMap<Path, Integer> ids; // Path of each file -> id of its node
+    private final ArrayList<Path> paths; // Id of each node -> path of the file
+    private int[][] evaluated; // Id of each node -> sorted ids of the files it evaluates
+    private int[][] evaluators; // Id of each node -> sorted ids of the files evaluating it
+    private int edges; // Number of evaluations
+
+    public PolyglotEvalGraph(){
+        this.ids = new HashMap<>();
+        this.paths = new ArrayList<>();
+        this.evaluated = new int[16][];
+        this.evaluators = new int[16][];
+    }
+
+    /**
+     * Replace the files evaluated by a file, the reverse edges are only updated if the evaluations changed
+     * @param path path of the file
+     * @param evaluatedFiles files evaluated by the file
+     * @return the evaluations of the file changed
+     */
+    public boolean setEvaluatedFiles(Path path, Collection<Path> evaluatedFiles){
+        int id = this.getOrCreateId(path);
+        int[] targets = new int[evaluatedFiles.size()];
+        int count = 0;
+        for (Path evaluatedFile : evaluatedFiles) {
+            targets[count++] = this.getOrCreateId(evaluatedFile);
+        }
+        Arrays.sort(targets);
+        targets = distinct(targets);
+        int[] previous = this.evaluated[id];
+        if(Arrays.equals(previous, targets)) return false;
+        for (int target : previous) {
+            if(Arrays.binarySearch(targets, target) < 0) this.evaluators[target] = remove(this.evaluators[target], id);
+        }
+        for (int target : targets) {
+            if(Arrays.binarySearch(previous, target) < 0) this.evaluators[target] = insert(this.evaluators[target], id);
+        }
+        this.edges += targets.length - previous.length;
+        this.evaluated[id] = targets;
+        return true;
+    }
+
+    /**
+     * Get the files a file evaluates directly
+     * @param path path of the file
+     * @return files evaluated by the file
+     */
+    public Set<Path> getEvaluatedFiles(Path path){
+        Integer id = this.ids.get(path);
+        return id == null ? new HashSet<>() : this.toPaths(this.evaluated[id]);
+    }
+
+    /**
+     * Get the files evaluating a file directly
+     * @param path path of the file
+     * @return files evaluating the file
+     */
+    public Set<Path> getEvaluators(Path path){
+        Integer id = this.ids.get(path);
+        return id == null ? new HashSet<>() : this.toPaths(this.evaluators[id]);
+    }
+
+    /**
+     * Get the host files of a file (files evaluating it, directly or not, that are not evaluated by any file)
+     * @param path path of the file
+     * @return host files (the file itself if nobody evaluates it)
+     */
+    public Set<Path> getHosts(Path path){
+        HashSet<Path> hosts = new HashSet<>();
+        Integer id = this.ids.get(path);
+        if(id != null){
+            BitSet visited = this.walk(new int[]{id}, this.evaluators);
+            for (int node = visited.nextSetBit(0); node >= 0; node = visited.nextSetBit(node + 1)) {
+                if(this.evaluators[node].length == 0) hosts.add(this.paths.get(node));
+            }
+        }
+        // Evaluation cycle without any root : the file is its own host
+        if(hosts.isEmpty()) hosts.add(path);
+        return hosts;
+    }
+
+    /**
+     * Get all the files of the polyglot programs a file is part of (its host files & everything they evaluate)
+     * @param path path of the file
+     * @return files of the host closure (the file itself included)
+     */
+    public Set<Path> getHostClosure(Path path){
+        Set<Path> hosts = this.getHosts(path);
+        int[] roots = new int[hosts.size()];
+        int count = 0;
+        for (Path host : hosts) {
+            Integer id = this.ids.get(host);
+            if(id != null) roots[count++] = id;
+        }
+        Set<Path> closure = this.toPaths(this.walk(Arrays.copyOf(roots, count), this.evaluated));
+        closure.add(path);
+        return closure;
+    }
+
+    /**
+     * Get the number of files of the graph
+     * @return number of nodes
+     */
+    public int size(){
+        return this.paths.size();
+    }
+
+    /**
+     * Get the number of evaluations of the graph
+     * @return number of edges
+     */
+    public int getEdgeCount(){
+        return this.edges;
+    }
+
+    /**
+     * Find the nodes reachable from start nodes (start nodes included)
+     * @param start ids of the start nodes
+     * @param adjacency edges to follow (evaluated or evaluators)
+     * @return ids of the nodes reached
+     */
+    private BitSet walk(int[] start, int[][] adjacency){
+        BitSet visited = new BitSet(this.paths.size());
+        int[] stack = new int[Math.max(16, start.length)];
+        int size = 0;
+        for (int node : start) {
+            stack[size++] = node;
+        }
+        while(size > 0){
+            int node = stack[--size];
+            if(visited.get(node)) continue;
+            visited.set(node);
+            for (int next : adjacency[node]) {
+                if(visited.get(next)) continue;
+                if(size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+                stack[size++] = next;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Get the id of the node of a file, the node is created if the file is not in the graph
+     * @param path path of the file
+     * @return id of the node
+     */
+    private int getOrCreateId(Path path){
+        Integer id = this.ids.get(path);
+        if(id != null) return id;
+        int newId = this.paths.size();
+        if(newId == this.evaluated.length){
+            this.evaluated = Arrays.copyOf(this.evaluated, newId * 2);
+            this.evaluators = Arrays.copyOf(this.evaluators, newId * 2);
+        }
+        this.ids.put(path, newId);
+        this.paths.add(path);
+        this.evaluated[newId] = NONE;
+        this.evaluators[newId] = NONE;
+        return newId;
+    }
+
+    /**
+     * Get the paths of nodes
+     * @param nodes ids of the nodes
+     * @return paths of the files
+     */
+    private Set<Path> toPaths(int[] nodes){
+        HashSet<Path> result = new HashSet<>();
+        for (int node : nodes) {
+            result.add(this.paths.get(node));
+        }
+        return result;
+    }
+
+    /**
+     * Get the paths of nodes
+     * @param nodes set of ids of the nodes
+     * @return paths of the files
+     */
+    private Set<Path> toPaths(BitSet nodes){
+        HashSet<Path> result = new HashSet<>();
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            result.add(this.paths.get(node));
+        }
+        return result;
+    }
+
+    /**
+     * Remove the duplicates of a sorted array
+     * @param sorted sorted array (modified)
+     * @return sorted array without duplicates
+     */
+    private static int[] distinct(int[] sorted){
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if(i == 0 || sorted[i] != sorted[i - 1]) sorted[count++] = sorted[i];
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Insert a value in a sorted array (copy on write : the arrays are never modified)
+     * @param sorted sorted array
+     * @param value value to insert
+     * @return sorted array with the value
+     */
+    private static int[] insert(int[] sorted, int value){
+        int index = Arrays.binarySearch(sorted, value);
+        if(index >= 0) return sorted;
+        index = -index - 1;
+        int[] result = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(sorted, index, result, index + 1, sorted.length - index);
+        return result;
+    }
+
+    /**
+     * Remove a value from a sorted array (copy on write : the arrays are never modified)
+     * @param sorted sorted array
+     * @param value value to remove
+     * @return sorted array without the value
+     */
+    private static int[] remove(int[] sorted, int value){
+        int index = Arrays.binarySearch(sorted, value);
+        if(index < 0) return sorted;
+        if(sorted.length == 1) return NONE;
+        int[] result = new int[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, index);
+        System.arraycopy(sorted, index + 1, result, index, sorted.length - index - 1);
+        return result;
+    }
+}
@@ -0,0 +1,294 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class PolyglotFactsCache {
+
+    public static final int FORMAT_VERSION = 2; // Version of the cache entries format (entries of another version are discarded)
+    private static final String ENTRY_EXTENSION = ".facts.json"; // Extension of the cache entries
+    private static final String TEMPORARY_EXTENSION = ".tmp"; // Extension of the entries being written
+
+    private final Path directory; // Directory of the cache entries
+    private final long maxBytes; // Maximum size of the cache on disk (least recently used entries are evicted beyond it)
+    private final LinkedHashMap<String, Long> entries; // Key -> size of each entry, in least recently used order
+    private final Gson gson; // Serializer of the entries
+    private long totalBytes; // Size of all the entries
+    private long hits; // Number of lookups answered by the cache
+    private long misses; // Number of lookups without entry
+    private long corrupted; // Number of entries discarded (unreadable, wrong version or checksum)
+    private long stale; // Number of entries found but discarded because an evaluated file was created or deleted since
+    private long evictions; // Number of entries evicted to stay under the maximum size
+
+    /**
+     * Open the cache, the existing entries are loaded in last modification order (temporary files left by an interrupted write are deleted)
+     * @param directory directory of the cache entries (created if needed)
+     * @param maxBytes maximum size of the cache on disk
+     */
+    public PolyglotFactsCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.gson = new Gson();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMPORARY_EXTENSION)) {
+            for (Path temporary : stream) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        // Entries are touched at each hit, the modification time is the last access
+        HashMap<Path, BasicFileAttributes> attributes = new HashMap<>();
+        for (Path file : files) {
+            attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+        }
+        files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+        for (Path file : files) {
+            long size = attributes.get(file).size();
+            this.entries.put(keyOf(file), size);
+            this.totalBytes += size;
+        }
+        this.evict();
+    }
+
+    /**
+     * Get the cached facts of a file content
+     * @param path path of the file
+     * @param content content of the file
+     * @return the facts of this content, null if not cached (or if the entry is corrupted, or if its evaluated files changed on disk)
+     */
+    public PolyglotFileFacts get(Path path, ByteBuffer content){
+        // The hash is computed outside the lock, lookups of several threads only serialize on the entry reading
+        String key = key(path, content);
+        synchronized (this) {
+            return this.read(key, path);
+        }
+    }
+
+    /**
+     * Verify that the evaluated files of cached facts still exist, and that the files not found still don't exist
+     * @param path path of the file
+     * @param facts cached facts of the file
+     * @return the evaluations of the facts match the file system
+     */
+    static boolean evaluationsExist(Path path, PolyglotFileFacts facts){
+        for (String evaluatedFile : facts.evaluatedFiles) {
+            if(!Files.exists(Path.of(evaluatedFile))) return false;
+        }
+        for (String fileNotFound : facts.filesNotFound) {
+            // Names of the files not found are relative to the directory of the file (or absolute)
+            if(Files.exists(path.resolveSibling(fileNotFound))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the entry of a key
+     * @param key key of the entry
+     * @param path path of the file (must match the path stored in the entry)
+     * @return the facts of the entry, null if there is no entry, if the entry is corrupted or if its evaluations are outdated
+     */
+    private PolyglotFileFacts read(String key, Path path){
+        if(!this.entries.containsKey(key)){
+            this.misses++;
+            return null;
+        }
+        Path file = this.fileOf(key);
+        try {
+            Entry entry = this.gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), Entry.class);
+            if(entry == null || entry.version != FORMAT_VERSION || entry.facts == null || !path.toString().equals(entry.path) || entry.crc != crc(entry.facts)){
+                throw new JsonParseException("Invalid cache entry " + file);
+            }
+            PolyglotFileFacts facts = this.gson.fromJson(entry.facts, PolyglotFileFacts.class);
+            // The evaluations of the facts depend on the existence of the evaluated files when the file was parsed, not only on its content
+            if(!evaluationsExist(path, facts)){
+                this.stale++;
+                this.misses++;
+                return null;
+            }
+            // Most recently used, in memory & on disk
+            this.entries.get(key);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            this.hits++;
+            return facts;
+        } catch (IOException | JsonParseException e) {
+            this.corrupted++;
+            this.misses++;
+            this.delete(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store the facts of a file content (entries are written to a temporary file, then moved)
+     * @param path path of the file
+     * @param content content of the file the facts were extracted from
+     * @param facts facts of the file
+     */
+    public void put(Path path, ByteBuffer content, PolyglotFileFacts facts){
+        String key = key(path, content);
+        synchronized (this) {
+            this.write(key, path, facts);
+        }
+    }
+
+    /**
+     * Write the entry of a key
+     * @param key key of the entry
+     * @param path path of the file
+     * @param facts facts of the file
+     */
+    private void write(String key, Path path, PolyglotFileFacts facts){
+        Entry entry = new Entry();
+        entry.version = FORMAT_VERSION;
+        entry.path = path.toString();
+        entry.facts = this.gson.toJson(facts);
+        entry.crc = crc(entry.facts);
+        byte[] data = this.gson.toJson(entry).getBytes(StandardCharsets.UTF_8);
+        Path file = this.fileOf(key);
+        try {
+            Path temporary = Files.createTempFile(this.directory, key, TEMPORARY_EXTENSION);
+            Files.write(temporary, data);
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+            return;
+        }
+        Long previous = this.entries.put(key, (long) data.length);
+        this.totalBytes += data.length - (previous != null ? previous : 0);
+        this.evict();
+    }
+
+    /**
+     * Get the statistics of the cache
+     * @return map of statistics
+     */
+    public synchronized Map<String, Object> getStatistics(){
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", this.entries.size());
+        statistics.put("bytes", this.totalBytes);
+        statistics.put("maxBytes", this.maxBytes);
+        statistics.put("hits", this.hits);
+        statistics.put("misses", this.misses);
+        statistics.put("corrupted", this.corrupted);
+        statistics.put("stale", this.stale);
+        statistics.put("evictions", this.evictions);
+        return statistics;
+    }
+
+    /**
+     * Evict the least recently used entries while the cache is over its maximum size
+     */
+    private void evict(){
+        Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+        while(this.maxBytes > 0 && this.totalBytes > this.maxBytes && iterator.hasNext()){
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            this.totalBytes -= eldest.getValue();
+            this.evictions++;
+            try {
+                Files.deleteIfExists(this.fileOf(eldest.getKey()));
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    /**
+     * Delete an entry
+     * @param key key of the entry
+     */
+    private void delete(String key){
+        Long size = this.entries.remove(key);
+        if(size != null) this.totalBytes -= size;
+        try {
+            Files.deleteIfExists(this.fileOf(key));
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Get the file of an entry
+     * @param key key of the entry
+     * @return path of the entry file
+     */
+    private Path fileOf(String key){
+        return this.directory.resolve(key + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Get the key of an entry file
+     * @param file path of the entry file
+     * @return key of the entry
+     */
+    private static String keyOf(Path file){
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - ENTRY_EXTENSION.length());
+    }
+
+    /**
+     * Compute the key of a file content : SHA-256 of the content salted with the path (the facts hold absolute paths)
+     * @param path path of the file
+     * @param content content of the file
+     * @return hexadecimal key
+     */
+    static String key(Path path, ByteBuffer content){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content.duplicate());
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compute the checksum of serialized facts
+     * @param facts serialized facts
+     * @return CRC32 of the facts
+     */
+    private static long crc(String facts){
+        CRC32 crc = new CRC32();
+        crc.update(facts.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static class Entry {
+        int version; // Format version of the entry
+        String path; // Path of the file (checked against the path of the lookup)
+        long crc; // CRC32 of the serialized facts
+        String facts; // Serialized facts
+    }
+}
@@ -0,0 +1,88 @@
+import com.example.polyglotast.PolyglotTreeHandler;
+import com.example.polyglotast.PolyglotVariableSpotter;
+import com.example.polyglotast.utils.ExportData;
+import com.example.polyglotast.utils.FileNotFoundInfo;
+import com.example.polyglotast.utils.ImportData;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+public class PolyglotFileFacts {
+
+    public String language; // Programming language of the file
+    public ArrayList<PolyglotSymbol> symbols; // Polyglot exports & imports of the file, sorted by position
+    public ArrayList<String> evaluatedFiles; // Sorted paths of the files evaluated by the file
+    public ArrayList<String> filesNotFound; // Names of the files evaluated by the file which don't exist
+
+    public PolyglotFileFacts() {
+        this.symbols = new ArrayList<>();
+        this.evaluatedFiles = new ArrayList<>();
+        this.filesNotFound = new ArrayList<>();
+    }
+
+    /**
+     * Extract the polyglot facts of a file from its AST (must be called from the analysis thread)
+     * @param tree AST of the file
+     * @param workspaceManager workspaces of the ASTs (to get the paths of the evaluated files)
+     * @return the facts of the file
+     */
+    public static PolyglotFileFacts extract(PolyglotTreeHandler tree, PolyglotWorkspaceManager workspaceManager){
+        PolyglotFileFacts facts = new PolyglotFileFacts();
+        facts.language = tree.getLang();
+        PolyglotVariableSpotter spotter = new PolyglotVariableSpotter();
+        tree.apply(spotter);
+        // The spotter also walks the evaluated files, only the symbols of this tree are kept
+        for (HashMap<PolyglotTreeHandler, ArrayList<ExportData>> exports : spotter.getExports().values()) {
+            if(exports.containsKey(tree)) for (ExportData exportData : exports.get(tree)) facts.symbols.add(PolyglotSymbol.fromExport(exportData));
+        }
+        for (HashMap<PolyglotTreeHandler, ArrayList<ImportData>> imports : spotter.getImports().values()) {
+            if(imports.containsKey(tree)) for (ImportData importData : imports.get(tree)) facts.symbols.add(PolyglotSymbol.fromImport(importData));
+        }
+        facts.symbols.sort(Comparator.comparingInt((PolyglotSymbol s) -> s.line).thenComparingInt(s -> s.character));
+        for (PolyglotTreeHandler subTree : tree.getSubTrees()) {
+            Path subPath = workspaceManager.getPath(subTree);
+            if(subPath != null) facts.evaluatedFiles.add(subPath.toString());
+        }
+        facts.evaluatedFiles.sort(null);
+        for (FileNotFoundInfo fileNotFound : tree.getFilesNotFound()) {
+            facts.filesNotFound.add(fileNotFound.getFileName());
+        }
+        facts.filesNotFound.sort(null);
+        return facts;
+    }
+
+    /**
+     * Verify if the file doesn't evaluate any file (existing or not)
+     * @return the file has no polyglot evaluation
+     */
+    public boolean evaluatesNothing(){
+        return this.evaluatedFiles.isEmpty() && this.filesNotFound.isEmpty();
+    }
+
+    /**
+     * Verify if an identifier is a polyglot variable name or a storage variable of the file
+     * @param identifier code of the identifier
+     * @return the identifier may refer to a polyglot export/import
+     */
+    public boolean usesIdentifier(String identifier){
+        for (PolyglotSymbol symbol : this.symbols) {
+            if(symbol.name.equals(identifier) || identifier.equals(symbol.storageVariable)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the signature of the symbols, in order (positions excluded)
+     * @return signatures of the symbols
+     */
+    public List<String> getSignature(){
+        ArrayList<String> signature = new ArrayList<>(this.symbols.size());
+        for (PolyglotSymbol symbol : this.symbols) {
+            signature.add(symbol.getSignature());
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,162 @@
+import org.eclipse.lsp4j.Hover;
+import org.eclipse.lsp4j.Position;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PolyglotHoverCache {
+
+    private final int maxEntries; // Maximum number of hovers kept in each cache (least recently used hovers are dropped beyond it, 0 : no cache)
+    private final ConcurrentHashMap<Path, Long> generations; // Generation of each file, incremented each time its AST changes
+    private final LinkedHashMap<String, Entry> hovers; // Hover results of positions, with the generations of the files they were computed from
+    private final LinkedHashMap<String, Hover> downstreamHovers; // Hover responses of the language servers, for a generation of the file & a position
+    private long hits; // Number of hovers served from the cache
+    private long misses; // Number of hovers computed
+    private long downstreamHits; // Number of language server hovers served from the cache
+    private long downstreamMisses; // Number of hover requests sent to the language servers
+
+    /**
+     * Create the cache
+     * @param maxEntries maximum number of hovers kept in each cache (0 : no cache)
+     */
+    public PolyglotHoverCache(int maxEntries){
+        this.maxEntries = maxEntries;
+        this.generations = new ConcurrentHashMap<>();
+        this.hovers = new LinkedHashMap<>(16, 0.75f, true);
+        this.downstreamHovers = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Invalidate the hovers depending on a file (its AST has been parsed or reparsed)
+     * @param path path of the file
+     */
+    public void invalidate(Path path){
+        if(this.maxEntries <= 0) return;
+        this.generations.merge(path, 1L, Long::sum);
+    }
+
+    /**
+     * Get the generation of a file
+     * @param path path of the file
+     * @return generation of the file, incremented each time its AST changes
+     */
+    public long getGeneration(Path path){
+        return this.generations.getOrDefault(path, 0L);
+    }
+
+    /**
+     * Get the generations of files, to store with a hover computed from them (taken before the computation)
+     * @param closure files the hover depends on
+     * @return map of file -> generation
+     */
+    public Map<Path, Long> snapshot(Set<Path> closure){
+        HashMap<Path, Long> snapshot = new HashMap<>();
+        for (Path path : closure) {
+            snapshot.put(path, this.getGeneration(path));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the hover result of a position, if none of the files it depends on changed since it was computed
+     * @param key uri & position of the hover
+     * @param closure files the hover depends on (host tree closure of the file)
+     * @return hover result, null if there is none or if it is outdated
+     */
+    public synchronized Hover get(String key, Set<Path> closure){
+        Entry entry = this.maxEntries > 0 ? this.hovers.get(key) : null;
+        if(entry != null && entry.generations.keySet().equals(closure) && this.isCurrent(entry.generations)){
+            this.hits++;
+            return entry.hover;
+        }
+        if(entry != null) this.hovers.remove(key);
+        this.misses++;
+        return null;
+    }
+
+    /**
+     * Store the hover result of a position
+     * @param key uri & position of the hover
+     * @param hover hover result
+     * @param generations generations of the files the hover was computed from
+     */
+    public synchronized void put(String key, Hover hover, Map<Path, Long> generations){
+        if(this.maxEntries <= 0 || hover == null || !this.isCurrent(generations)) return;
+        this.hovers.put(key, new Entry(hover, generations));
+        if(this.hovers.size() > this.maxEntries) this.hovers.remove(this.hovers.keySet().iterator().next());
+    }
+
+    /**
+     * Get the key of a hover request to a language server : the response is valid as long as the file doesn't change
+     * @param path path of the file
+     * @param position position of the hover
+     * @return key of the request
+     */
+    public String getDownstreamKey(Path path, Position position){
+        return path + "#" + this.getGeneration(path) + "@" + position.getLine() + ":" + position.getCharacter();
+    }
+
+    /**
+     * Get the hover response of a language server
+     * @param key key of the request
+     * @return hover response, null if the request has not been made for this generation of the file
+     */
+    public synchronized Hover getDownstream(String key){
+        Hover hover = this.maxEntries > 0 ? this.downstreamHovers.get(key) : null;
+        if(hover != null) this.downstreamHits++;
+        else this.downstreamMisses++;
+        return hover;
+    }
+
+    /**
+     * Store the hover response of a language server
+     * @param key key of the request
+     * @param hover hover response
+     */
+    public synchronized void putDownstream(String key, Hover hover){
+        if(this.maxEntries <= 0 || hover == null) return;
+        this.downstreamHovers.put(key, hover);
+        if(this.downstreamHovers.size() > this.maxEntries) this.downstreamHovers.remove(this.downstreamHovers.keySet().iterator().next());
+    }
+
+    /**
+     * Get the statistics of the cache
+     * @return map of statistics
+     */
+    public synchronized Map<String, Object> getStatistics(){
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hovers", this.hovers.size());
+        statistics.put("hits", this.hits);
+        statistics.put("misses", this.misses);
+        statistics.put("downstreamHovers", this.downstreamHovers.size());
+        statistics.put("downstreamHits", this.downstreamHits);
+        statistics.put("downstreamMisses", this.downstreamMisses);
+        return statistics;
+    }
+
+    /**
+     * Check if files didn't change since their generations were taken
+     * @param generations map of file -> generation
+     * @return all the files are at the same generation
+     */
+    private boolean isCurrent(Map<Path, Long> generations){
+        for (Map.Entry<Path, Long> generation : generations.entrySet()) {
+            if(this.getGeneration(generation.getKey()) != generation.getValue()) return false;
+        }
+        return true;
+    }
+
+    private static class Entry {
+        final Hover hover; // Hover result
+        final Map<Path, Long> generations; // Generations of the files the hover was computed from
+
+        Entry(Hover hover, Map<Path, Long> generations){
+            this.hover = hover;
+            this.generations = generations;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+import org.eclipse.lsp4j.Range;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PolyglotImportExportIndex {
+
+    private final HashMap<Path, PolyglotFileFacts> facts; // Polyglot facts (exports, imports, evaluations) of each file indexed
+    private final HashMap<String, HashSet<Path>> filesByName; // Polyglot variable name -> files exporting or importing it
+    private final PolyglotEvalGraph evalGraph; // Evaluations between the files (host -> evaluated files & file -> evaluating files), only updated when they change
+    private final HashMap<Path, String[]> importableNames; // File -> sorted names exported in its programs & not used by the file (computed on demand, dropped when a file of its programs changes)
+    private final LongAdder hits; // Number of queries answered by the index
+    private final LongAdder misses; // Number of queries on files not indexed (answered with an AST walk)
+
+    public PolyglotImportExportIndex(){
+        this.facts = new HashMap<>();
+        this.filesByName = new HashMap<>();
+        this.evalGraph = new PolyglotEvalGraph();
+        this.importableNames = new HashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Replace the facts of a file, and return the difference with its previous facts
+     * @param path path of the file
+     * @param newFacts new facts of the file
+     * @return difference between the previous & new facts
+     */
+    public synchronized Delta update(Path path, PolyglotFileFacts newFacts){
+        // The importable names of the programs of the file only change if its exports, imports or evaluations changed
+        PolyglotFileFacts current = this.facts.get(path);
+        boolean namesChanged = current == null || !current.getSignature().equals(newFacts.getSignature()) || !current.evaluatedFiles.equals(newFacts.evaluatedFiles);
+        Set<Path> previousClosure = namesChanged ? this.getHostClosure(path) : Collections.emptySet();
+        PolyglotFileFacts previous = this.facts.put(path, newFacts);
+        if(previous != null) this.unindexNames(path, previous);
+        for (PolyglotSymbol symbol : newFacts.symbols) {
+            this.filesByName.computeIfAbsent(symbol.name, k -> new HashSet<>()).add(path);
+        }
+        ArrayList<Path> evaluatedFiles = new ArrayList<>(newFacts.evaluatedFiles.size());
+        for (String evaluatedFile : newFacts.evaluatedFiles) {
+            evaluatedFiles.add(Paths.get(evaluatedFile));
+        }
+        this.evalGraph.setEvaluatedFiles(path, evaluatedFiles);
+        if(namesChanged){
+            previousClosure.forEach(this.importableNames::remove);
+            this.getHostClosure(path).forEach(this.importableNames::remove);
+        }
+        return new Delta(previous, newFacts);
+    }
+
+    /**
+     * Remove a file from the index
+     * @param path path of the file
+     */
+    public synchronized void remove(Path path){
+        this.getHostClosure(path).forEach(this.importableNames::remove);
+        PolyglotFileFacts previous = this.facts.remove(path);
+        if(previous != null) this.unindexNames(path, previous);
+        this.evalGraph.setEvaluatedFiles(path, Collections.emptyList());
+    }
+
+    /**
+     * Get the facts of a file
+     * @param path path of the file
+     * @return facts of the file, null if the file is not indexed
+     */
+    public synchronized PolyglotFileFacts getFacts(Path path){
+        return this.facts.get(path);
+    }
+
+    /**
+     * Get all the files of the polyglot programs a file is part of (its host files & everything they evaluate)
+     * @param path path of the file
+     * @return files of the host closure (the file itself included)
+     */
+    public synchronized Set<Path> getHostClosure(Path path){
+        return this.evalGraph.getHostClosure(path);
+    }
+
+    /**
+     * Get the host files of a file (files evaluating it, directly or not, that are not evaluated by any file)
+     * @param path path of the file
+     * @return host files (the file itself if nobody evaluates it)
+     */
+    public synchronized Set<Path> getHosts(Path path){
+        return this.evalGraph.getHosts(path);
+    }
+
+    /**
+     * Get the files a file evaluates directly
+     * @param path path of the file
+     * @return files evaluated by the file
+     */
+    public synchronized Set<Path> getEvaluatedFiles(Path path){
+        return this.evalGraph.getEvaluatedFiles(path);
+    }
+
+    /**
+     * Get the symbols of a polyglot variable, in a set of files
+     * @param name name of the polyglot variable
+     * @param files files to look in
+     * @return map of file -> symbols of the variable in the file
+     */
+    public synchronized Map<Path, List<PolyglotSymbol>> getSymbols(String name, Set<Path> files){
+        HashMap<Path, List<PolyglotSymbol>> symbols = new HashMap<>();
+        HashSet<Path> paths = this.filesByName.get(name);
+        if(paths == null) return symbols;
+        for (Path path : paths) {
+            if(!files.contains(path)) continue;
+            ArrayList<PolyglotSymbol> fileSymbols = new ArrayList<>();
+            for (PolyglotSymbol symbol : this.facts.get(path).symbols) {
+                if(symbol.name.equals(name)) fileSymbols.add(symbol);
+            }
+            symbols.put(path, fileSymbols);
+        }
+        return symbols;
+    }
+
+    /**
+     * Get the names of the polyglot variables exported in a set of files
+     * @param files files to look in
+     * @return names exported
+     */
+    public synchronized Set<String> getExportedNames(Set<Path> files){
+        HashSet<String> names = new HashSet<>();
+        for (Path path : files) {
+            PolyglotFileFacts fileFacts = this.facts.get(path);
+            if(fileFacts == null) continue;
+            for (PolyglotSymbol symbol : fileFacts.symbols) {
+                if(symbol.kind == PolyglotSymbol.Kind.EXPORT) names.add(symbol.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the names of the polyglot variables a file can import : exported in its programs, and not exported or imported by the file yet
+     * @param path path of the file
+     * @return sorted names (shared, must not be modified), null if the file is not indexed
+     */
+    public synchronized String[] getImportableNames(Path path){
+        PolyglotFileFacts fileFacts = this.facts.get(path);
+        if(fileFacts == null) return null;
+        String[] names = this.importableNames.get(path);
+        if(names == null){
+            Set<String> exported = this.getExportedNames(this.getHostClosure(path));
+            for (PolyglotSymbol symbol : fileFacts.symbols) {
+                exported.remove(symbol.name);
+            }
+            names = exported.toArray(new String[0]);
+            Arrays.sort(names);
+            this.importableNames.put(path, names);
+        }
+        return names;
+    }
+
+    /**
+     * Get the names starting with a prefix, from sorted names
+     * @param sortedNames sorted names
+     * @param prefix prefix of the names
+     * @return names starting with the prefix (view of the array)
+     */
+    public static List<String> withPrefix(String[] sortedNames, String prefix){
+        List<String> names = Arrays.asList(sortedNames);
+        if(prefix.isEmpty()) return names;
+        // Names starting with the prefix are between the prefix & the prefix followed by the highest char
+        return names.subList(lowerBound(sortedNames, prefix), lowerBound(sortedNames, prefix + Character.MAX_VALUE));
+    }
+
+    /**
+     * Get the index of the first name greater than or equal to a key, in sorted names
+     * @param sortedNames sorted names
+     * @param key searched key
+     * @return index of the first name >= key (length of the array if there is none)
+     */
+    private static int lowerBound(String[] sortedNames, String key){
+        int low = 0;
+        int high = sortedNames.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(sortedNames[middle].compareTo(key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Record a query answered by the index
+     */
+    public void recordHit(){
+        this.hits.increment();
+    }
+
+    /**
+     * Record a query the index couldn't answer (file not indexed)
+     */
+    public void recordMiss(){
+        this.misses.increment();
+    }
+
+    /**
+     * Get the statistics of the index (size, estimated memory usage, hit rate)
+     * @return map of statistics
+     */
+    public synchronized Map<String, Object> getStatistics(){
+        long symbols = 0;
+        long bytes = 0;
+        for (Map.Entry<Path, PolyglotFileFacts> entry : this.facts.entrySet()) {
+            // Rough estimation : object headers & fields of the facts/symbols, plus the UTF-16 content of their strings
+            bytes += 96 + 2L * entry.getKey().toString().length();
+            for (PolyglotSymbol symbol : entry.getValue().symbols) {
+                symbols++;
+                bytes += 96 + 2L * symbol.name.length() + (symbol.storageVariable == null ? 0 : 40 + 2L * symbol.storageVariable.length());
+            }
+            for (String evaluatedFile : entry.getValue().evaluatedFiles) {
+                bytes += 40 + 2L * evaluatedFile.length();
+            }
+        }
+        bytes += 48L * this.filesByName.size() + 64L * this.evalGraph.size() + 8L * this.evalGraph.getEdgeCount();
+        long hitCount = this.hits.sum();
+        long missCount = this.misses.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("files", this.facts.size());
+        statistics.put("names", this.filesByName.size());
+        statistics.put("symbols", symbols);
+        statistics.put("importableSets", this.importableNames.size());
+        statistics.put("evaluations", this.evalGraph.getEdgeCount());
+        statistics.put("estimatedBytes", bytes);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", missCount);
+        statistics.put("hitRate", hitCount + missCount == 0 ? 0.0 : hitCount / (double) (hitCount + missCount));
+        return statistics;
+    }
+
+    /**
+     * Remove the names of a file from the index
+     * @param path path of the file
+     * @param previous previous facts of the file
+     */
+    private void unindexNames(Path path, PolyglotFileFacts previous){
+        for (PolyglotSymbol symbol : previous.symbols) {
+            HashSet<Path> paths = this.filesByName.get(symbol.name);
+            if(paths != null){
+                paths.remove(path);
+                if(paths.isEmpty()) this.filesByName.remove(symbol.name);
+            }
+        }
+    }
+
+    public static class Delta {
+        private final PolyglotFileFacts previous; // Facts of the file before the update (null if the file was not indexed)
+        private final PolyglotFileFacts current; // Facts of the file after the update
+
+        Delta(PolyglotFileFacts previous, PolyglotFileFacts current){
+            this.previous = previous;
+            this.current = current;
+        }
+
+        /**
+         * Verify if only the positions of the polyglot statements changed: same exports & imports in the same order, and no evaluation.
+         * The import/export checks can't change in this case (files evaluating others are excluded because the order between
+         * evaluations & statements is not part of the facts).
+         * @return the edition only shifted the polyglot statements
+         */
+        public boolean isPositionShiftOnly(){
+            return this.previous != null && this.previous.evaluatesNothing() && this.current.evaluatesNothing()
+                    && this.previous.getSignature().equals(this.current.getSignature());
+        }
+
+        /**
+         * Get the mapping between the previous & new ranges of the export/import statements (only relevant if isPositionShiftOnly)
+         * @return map of previous statement range -> new statement range, null if two statements shared the same range
+         */
+        public Map<Range, Range> getRangeMapping(){
+            HashMap<Range, Range> mapping = new HashMap<>();
+            if(this.previous == null) return mapping;
+            for (int i = 0; i < Math.min(this.previous.symbols.size(), this.current.symbols.size()); i++) {
+                if(mapping.put(this.previous.symbols.get(i).getRange(), this.current.symbols.get(i).getRange()) != null) return null;
+            }
+            return mapping;
+        }
+    }
+}
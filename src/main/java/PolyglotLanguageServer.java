@@ -2,6 +2,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageClientAware;
 import org.eclipse.lsp4j.services.LanguageServer;
@@ -9,8 +10,15 @@ import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.services.WorkspaceService;
 
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -19,18 +27,46 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
     private TextDocumentService textDocumentService; // Text Document Service ref -> handle LSP textDocument requests
     private WorkspaceService workspaceService; // Workspace Service ref -> handle LSP Workspace requests
     private ClientCapabilities clientCapabilities; // Clients capabilities sent by the client during initialization
+    private volatile boolean pullDiagnostics; // The client pulls the diagnostics (textDocument/diagnostic), they are not pushed
     LanguageClient languageClient; // Reference to the language Client
     private int shutdown = 1; // Shutdown Code
     protected InitializeParams initializationParams; // Initialize Parameters used for all Language Servers initializations
     protected LanguageClientManager languageClientManager; // Language Clients Manager for all Language Servers of specific language
     protected PolyglotLanguageServerProperties properties; // Properties of the Polyglot Language Server
+    protected PolyglotAnalysisExecutor analysisExecutor; // Executors of the analyses & of the read requests
+    protected PolyglotImportExportIndex importExportIndex; // Persistent index of the polyglot exports/imports of each file, updated at each AST change
+    protected PolyglotFactsCache factsCache; // On-disk cache of the polyglot facts of each file content (null if disabled)
+    protected PolyglotContentStore contentStore; // Content of the files on disk, read once per version & shared by all the operations
+    protected PolyglotWorkspaceManager workspaceManager; // Workspaces of the ASTs (file path <-> AST), safe to read from any thread
+    protected PolyglotMetrics metrics; // Latency & counters of the requests, notifications & analysis steps
+    protected PolyglotHoverCache hoverCache; // Hover results of the positions & of the language servers, until a file they depend on is reparsed
     CompletableFuture<Object> shutdownFuture; // Completable Future for the shutdown of the server
+    private Thread closeChildLSThread; // Shutdown hook destroying the language server processes
 
     public PolyglotLanguageServer() {
+        // Get server properties (needed to size the executors before the initialization)
+        this.properties = getProperties();
+        int requestThreads = this.properties != null && this.properties.requestThreads > 0 ? this.properties.requestThreads : Runtime.getRuntime().availableProcessors();
+        this.analysisExecutor = new PolyglotAnalysisExecutor(this.properties != null ? this.properties.analysisQueueCapacity : 64, requestThreads);
+        this.metrics = new PolyglotMetrics(this.properties != null && this.properties.metricsEnabled);
+        if(this.properties != null && this.properties.metricsDumpFile != null && !this.properties.metricsDumpFile.isEmpty()){
+            this.metrics.startDump(Paths.get(this.properties.metricsDumpFile), this.properties.metricsDumpInterval, this::executorMetrics);
+        }
+        this.importExportIndex = new PolyglotImportExportIndex();
+        this.workspaceManager = new PolyglotWorkspaceManager();
+        this.contentStore = new PolyglotContentStore(this.properties != null ? this.properties.contentStoreMaxBytes : 67108864);
+        this.hoverCache = new PolyglotHoverCache(this.properties != null ? this.properties.hoverCacheSize : 1024);
+        if(this.properties != null && this.properties.factsCacheDirectory != null && !this.properties.factsCacheDirectory.isEmpty()){
+            try {
+                this.factsCache = new PolyglotFactsCache(Paths.get(this.properties.factsCacheDirectory), this.properties.factsCacheMaxBytes);
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
         this.textDocumentService = new PolyglotTextDocumentService(this);
         this.workspaceService = new PolyglotWorkspaceService(this);
 
-        Thread closeChildLSThread = new Thread() {
+        this.closeChildLSThread = new Thread() {
             public void run() {
                 if(languageClientManager == null || languageClientManager.languageServersProcess == null) return;
                 for (Process p : languageClientManager.languageServersProcess.values()) {
@@ -40,7 +76,7 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
             }
         };
 
-        Runtime.getRuntime().addShutdownHook(closeChildLSThread);
+        Runtime.getRuntime().addShutdownHook(this.closeChildLSThread);
     }
 
     /**
@@ -51,7 +87,7 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
     public void connect(LanguageClient languageClient) {
         this.languageClient = languageClient;
         // Initialize Client Logger
-        LSClientLogger.getInstance().initialize(this.languageClient);
+        LSClientLogger.getInstance().initialize(this.languageClient, this.properties);
     }
 
     /**
@@ -63,13 +99,18 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
     public CompletableFuture<InitializeResult> initialize(InitializeParams initializeParams) {
         final InitializeResult response = new InitializeResult(new ServerCapabilities());
 
-        //Set the document synchronization capabilities to full (each change request will send all the code of the file, not only the edition)
-        response.getCapabilities().setTextDocumentSync(TextDocumentSyncKind.Full);
+        //Set the document synchronization capabilities to incremental (each change request only sends the edited ranges of the file)
+        response.getCapabilities().setTextDocumentSync(TextDocumentSyncKind.Incremental);
 
         this.initializationParams = initializeParams;
 
         this.clientCapabilities = initializeParams.getCapabilities();
 
+        // One workspace for each folder opened by the client
+        for (Path root : this.getWorkspaceRoots()) {
+            this.workspaceManager.addWorkspace(root);
+        }
+
         // Set Hover Provider to true
         response.getCapabilities().setHoverProvider(true);
 
@@ -92,10 +133,9 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
         WorkspaceFoldersOptions workspaceFoldersOptions = new WorkspaceFoldersOptions();
         workspaceFoldersOptions.setSupported(true);
         workspaceFoldersOptions.setChangeNotifications(true);
-        //response.getCapabilities().getWorkspace().setWorkspaceFolders(workspaceFoldersOptions);
+        response.getCapabilities().setWorkspace(new WorkspaceServerCapabilities(workspaceFoldersOptions));
 
-        // Get server properties
-        this.properties = getProperties();
+        // Check server properties
         if(this.properties == null){
             throw new RuntimeException("Properties of Polyglot Language Server has not been loaded correctly");
         }
@@ -105,25 +145,33 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
 
         // Register completion capability if the client can handle it
         if (!isDynamicCompletionRegistration()) {
-            response.getCapabilities().setCompletionProvider(new CompletionOptions());
+            response.getCapabilities().setCompletionProvider(new CompletionOptions(true, null));
+        }
+
+        // Let the client pull the diagnostics if it can (interFileDependencies : the diagnostics of a file depend on the files of its polyglot programs)
+        // Without workspace/diagnostic/refresh the client would never pull the diagnostics changed by an analysis : they stay pushed
+        this.pullDiagnostics = this.properties.pullDiagnostics && isPullDiagnosticsSupported() && isDiagnosticsRefreshSupported();
+        if (this.pullDiagnostics) {
+            response.getCapabilities().setDiagnosticProvider(new DiagnosticRegistrationOptions(true, true));
         }
         return CompletableFuture.supplyAsync(() -> response);
     }
 
     /**
-     * Get Polyglot Language Server properties from the propertise.json in resources folder
+     * Get Polyglot Language Server properties from the propertise.json in resources folder, or from the file of the "polyglot.properties" system property
      * @return the Language Server properties, or null if error occured
      */
     private PolyglotLanguageServerProperties getProperties(){
         try {
             ClassLoader classLoader = getClass().getClassLoader();
-            InputStream is = classLoader.getResourceAsStream("properties/properties.json");
+            String propertiesFile = System.getProperty("polyglot.properties");
+            InputStream is = propertiesFile != null ? new FileInputStream(propertiesFile) : classLoader.getResourceAsStream("properties/properties.json");
             InputStreamReader streamReader = new InputStreamReader(is, StandardCharsets.UTF_8);
             BufferedReader reader = new BufferedReader(streamReader);
 
             PolyglotLanguageServerProperties prop = new Gson().fromJson(reader, PolyglotLanguageServerProperties.class);
             return prop;
-        } catch (JsonSyntaxException | JsonIOException e) {
+        } catch (JsonSyntaxException | JsonIOException | FileNotFoundException e) {
             System.err.println(e);
         }
         return null;
@@ -150,10 +198,36 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
         //Check if dynamic completion support is allowed, if so register.
         if (isDynamicCompletionRegistration()) {
             CompletionRegistrationOptions completionRegistrationOptions = new CompletionRegistrationOptions();
+            completionRegistrationOptions.setResolveProvider(true);
             Registration completionRegistration = new Registration(UUID.randomUUID().toString(),
                     "textDocument/completion", completionRegistrationOptions);
             languageClient.registerCapability(new RegistrationParams(List.of(completionRegistration)));
         }
+        // Opt-in : index the whole workspace in background
+        if(this.properties.workspaceBootstrap){
+            List<Path> roots = this.getWorkspaceRoots();
+            if(!roots.isEmpty()) new PolyglotWorkspaceBootstrap(this, (PolyglotTextDocumentService) this.textDocumentService).start(roots);
+        }
+    }
+
+    /**
+     * Get the root folders of the workspace from the initialize parameters (workspace folders, or rootUri)
+     * @return paths of the root folders
+     */
+    private List<Path> getWorkspaceRoots() {
+        ArrayList<Path> roots = new ArrayList<>();
+        try {
+            if(this.initializationParams.getWorkspaceFolders() != null && !this.initializationParams.getWorkspaceFolders().isEmpty()){
+                for (WorkspaceFolder folder : this.initializationParams.getWorkspaceFolders()) {
+                    roots.add(Paths.get(new URI(folder.getUri())));
+                }
+            } else if(this.initializationParams.getRootUri() != null){
+                roots.add(Paths.get(new URI(this.initializationParams.getRootUri())));
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            System.err.println(e);
+        }
+        return roots;
     }
 
     /**
@@ -165,6 +239,67 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
         return textDocumentCapabilities != null && textDocumentCapabilities.getCompletion() != null && Boolean.FALSE.equals(textDocumentCapabilities.getCompletion().getDynamicRegistration());
     }
 
+    /**
+     * Check if the client supports the pull diagnostics (textDocument/diagnostic)
+     * @return the client has the diagnostic capability
+     */
+    private boolean isPullDiagnosticsSupported() {
+        TextDocumentClientCapabilities textDocumentCapabilities = clientCapabilities.getTextDocument();
+        return textDocumentCapabilities != null && textDocumentCapabilities.getDiagnostic() != null;
+    }
+
+    /**
+     * Check if the diagnostics are pulled by the client instead of being pushed
+     * @return the diagnostic provider has been sent to the client
+     */
+    public boolean isPullDiagnostics() {
+        return this.pullDiagnostics;
+    }
+
+    /**
+     * Check if the client can be asked to pull all its diagnostics again (workspace/diagnostic/refresh)
+     * @return the client supports the refresh request
+     */
+    public boolean isDiagnosticsRefreshSupported() {
+        WorkspaceClientCapabilities workspaceCapabilities = clientCapabilities == null ? null : clientCapabilities.getWorkspace();
+        return workspaceCapabilities != null && workspaceCapabilities.getDiagnostics() != null && Boolean.TRUE.equals(workspaceCapabilities.getDiagnostics().getRefreshSupport());
+    }
+
+    /**
+     * Custom request returning the metrics of the server : latency of each request, notification & analysis step, and the statistics of the executors, of the logger & of the hover cache
+     * @return metrics of the server
+     */
+    @JsonRequest("$/polyglot/metrics")
+    public CompletableFuture<Map<String, Object>> metrics() {
+        Map<String, Object> metrics = this.metrics.getStatistics();
+        metrics.putAll(this.executorMetrics());
+        return CompletableFuture.completedFuture(metrics);
+    }
+
+    /**
+     * Get the statistics of the executors, of the client logger & of the hover cache, added to the metrics
+     * @return map of the executors, logger & hover cache statistics
+     */
+    private Map<String, Object> executorMetrics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("executors", this.analysisExecutor.getStatistics());
+        statistics.put("logger", LSClientLogger.getInstance().getStatistics());
+        statistics.put("hoverCache", this.hoverCache.getStatistics());
+        return statistics;
+    }
+
+    /**
+     * Custom request returning the statistics of the import/export index (size, estimated memory usage, hit rate), of its on-disk cache and of the content store
+     * @return statistics of the index
+     */
+    @JsonRequest("$/polyglot/index")
+    public CompletableFuture<Map<String, Object>> indexStatistics() {
+        Map<String, Object> statistics = this.importExportIndex.getStatistics();
+        if(this.factsCache != null) statistics.put("cache", this.factsCache.getStatistics());
+        statistics.put("contentStore", this.contentStore.getStatistics());
+        return CompletableFuture.completedFuture(statistics);
+    }
+
     /**
      * LSP Shutdown Request Handler
      * @return future object (return value doesn't matter for this request except for error code)
@@ -185,10 +320,27 @@ public class PolyglotLanguageServer implements LanguageServer, LanguageClientAwa
      */
     @Override
     public void exit() {
-        this.languageClientManager.shutdown();
+        this.close();
         System.exit(shutdown);
     }
 
+    /**
+     * Stop everything the server started (language servers, executors, change timer, logger & metrics threads) without stopping the JVM
+     */
+    public void close() {
+        if(this.languageClientManager != null) this.languageClientManager.shutdown();
+        this.analysisExecutor.shutdown();
+        ((PolyglotTextDocumentService) this.textDocumentService).shutdown();
+        this.metrics.shutdown();
+        LSClientLogger.getInstance().shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.closeChildLSThread);
+            this.closeChildLSThread.run();
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down : the hook destroys the processes
+        }
+    }
+
     /**
      * Get Polyglot Language Server Text Document Service Reference
      * @return Polyglot Language Server Text Document Service Reference
@@ -1,8 +1,39 @@
 import java.util.ArrayList;
+import java.util.List;
 
 public class PolyglotLanguageServerProperties {
 
     public ArrayList<LanguageServerInfo> ls; // List of language servers properties
+    public int changeDebounceDelay = 200; // Quiet window (ms) to wait after the last change of a document before analysing it
+    public int analysisQueueCapacity = 64; // Maximum number of analyses waiting to run (beyond it the analyses are kept aside, one per document, until a slot is free)
+    public int requestThreads = 0; // Number of threads serving hover/completion/rename requests (0 : number of processors)
+    public boolean workspaceBootstrap = false; // Parse every file of the workspace after the initialization (otherwise ASTs are created when files are opened)
+    public ArrayList<String> bootstrapIgnoreGlobs = new ArrayList<>(List.of(".git", "node_modules", "__pycache__", "venv", ".venv")); // Globs of the files & directories skipped by the workspace bootstrap
+    public int bootstrapParallelism = 0; // Number of threads reading the workspace files during the bootstrap (0 : number of processors)
+    public long bootstrapMaxFileSize = 1048576; // Files bigger than this size (in bytes) are not parsed by the bootstrap (0 : no limit)
+    public String factsCacheDirectory = ""; // Directory of the on-disk cache of the polyglot facts of each file ("" : no cache)
+    public long factsCacheMaxBytes = 67108864; // Maximum size of the facts cache on disk (least recently used entries are evicted beyond it)
+    public long contentStoreMaxBytes = 67108864; // Maximum size of the file contents kept in memory (least recently used contents are dropped beyond it)
+    public int completionMaxItems = 100; // Maximum number of items of a completion list, the list is marked incomplete beyond it (0 : no limit)
+    public long renameDeadline = 2000; // Time (ms) after which a rename returns without the edits of the language servers that didn't answer yet
+    public int hoverCacheSize = 1024; // Maximum number of hover results kept in memory, invalidated when a file of their programs is reparsed (0 : no cache)
+    public boolean pullDiagnostics = true; // Answer the textDocument/diagnostic & workspace/diagnostic requests instead of pushing the diagnostics, when the client supports them (and the refresh request)
+    public boolean metricsEnabled = false; // Record the latency of the requests, notifications & analysis steps (returned by the "$/polyglot/metrics" request)
+    public String metricsDumpFile = ""; // File the metrics are written to periodically ("" : no dump)
+    public long metricsDumpInterval = 60000; // Time (ms) between two dumps of the metrics
+    public long connectRetryDelay = 50; // Delay (ms) before the second connection attempt to a language server, doubled after each failed attempt
+    public long connectRetryMaxDelay = 2000; // Maximum delay (ms) between two connection attempts to a language server
+    public long connectTimeout = 10000; // Time (ms) after which a language server that refuses the connections is considered unreachable
+    public long downstreamRequestTimeout = 10000; // Time (ms) after which a request to a language server fails, also applied to its initialization & to the requests waiting for it (0 : no timeout)
+    public int downstreamMaxTimeouts = 3; // Number of requests timing out in a row after which a language server is restarted (0 : never)
+    public long downstreamRestartDelay = 500; // Delay (ms) before a crashed, unresponsive or failed to launch language server is restarted, doubled at each restart
+    public int downstreamMaxRestarts = 5; // Number of restarts (crashes and failed launches) of a language server instance after which it is not started anymore
+    public long downstreamStableDelay = 60000; // Time (ms) a restarted language server must stay up before its restarts are forgotten
+    public String logLevel = "info"; // Most verbose level of the messages sent to the client output channel (error, warning, info or log)
+    public int logQueueCapacity = 1024; // Maximum number of messages waiting to be sent to the client (new messages are dropped beyond it)
+    public int logSampleRate = 10; // Beyond half the log queue capacity, only one info/log message out of logSampleRate is kept
+    public int logBatchSize = 64; // Maximum number of messages joined in one logMessage notification
+    public long logFlushInterval = 50; // Time (ms) between two sends of the queued messages
 
     public PolyglotLanguageServerProperties() { ls = new ArrayList<>(); }
 
@@ -27,7 +58,19 @@ public class PolyglotLanguageServerProperties {
         ArrayList<String> command; // list of command/args to launch the language server
         String hoverRegex; // Regex to apply to Language Server hover text to isolate the type of variable
         int hoverRegexGroup; // Group to catch from Language Server hover text to isolate the type of variable
+        int instances; // Number of language servers started for the language, each document is always sent to the same one (0 or 1 : a single server). The instance i listens on port + i
+        String transport; // Transport of the LSP messages : "tcp" (null, connects to ip & port) or "stdio" (stdin/stdout of the launched command, ip & port are unused)
+        StubServerInfo stub; // In-process stub language server started instead of the command (null : the command is launched)
 
     }
 
+    protected static class StubServerInfo{
+        String hover = ""; // Canned content of the hover responses (markdown)
+        int renameEdits = 1; // Number of edits of the rename responses (one per line from the renamed position, with the new name)
+        String latencyDistribution = "none"; // Distribution of the latency injected before each response : none, constant, uniform, normal, lognormal or exponential
+        double latencyMs = 0; // Mean latency of the responses (ms)
+        double latencyJitterMs = 0; // Spread of the latency (standard deviation for normal & lognormal, half-width for uniform)
+        long seed = 42; // Seed of the latency generator
+    }
+
 }
@@ -0,0 +1,245 @@
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class PolyglotMetrics {
+
+    private final boolean enabled; // Metrics are recorded (when disabled, every operation returns immediately)
+    private final long startTime; // Creation time of the metrics (ms since epoch)
+    private final ConcurrentHashMap<String, Timer> timers; // Latency histogram of each operation
+    private final ConcurrentHashMap<String, LongAdder> counters; // Count of each event
+    private ScheduledExecutorService dumpExecutor; // Writes the metrics to the dump file periodically (null if there is no dump)
+
+    /**
+     * Create the metrics
+     * @param enabled metrics are recorded
+     */
+    public PolyglotMetrics(boolean enabled){
+        this.enabled = enabled;
+        this.startTime = System.currentTimeMillis();
+        this.timers = new ConcurrentHashMap<>();
+        this.counters = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled(){
+        return this.enabled;
+    }
+
+    /**
+     * Start timing an operation
+     * @return start time to pass to stop, 0 if the metrics are disabled
+     */
+    public long start(){
+        return this.enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the latency of an operation
+     * @param name name of the operation
+     * @param start start time returned by start
+     */
+    public void stop(String name, long start){
+        if(start == 0) return;
+        this.timers.computeIfAbsent(name, n -> new Timer()).record(System.nanoTime() - start, false);
+    }
+
+    /**
+     * Record the latency of an asynchronous operation when its future completes (failures are counted as errors)
+     * @param name name of the operation
+     * @param start start time returned by start
+     * @param future future of the operation
+     * @return the same future
+     */
+    public <T> CompletableFuture<T> stopWhenComplete(String name, long start, CompletableFuture<T> future){
+        if(start == 0 || future == null) return future;
+        Timer timer = this.timers.computeIfAbsent(name, n -> new Timer());
+        future.whenComplete((result, error) -> timer.record(System.nanoTime() - start, error != null));
+        return future;
+    }
+
+    /**
+     * Time an operation
+     * @param name name of the operation
+     * @param operation operation to time
+     * @return result of the operation
+     */
+    public <T> T time(String name, Supplier<T> operation){
+        long start = this.start();
+        try {
+            return operation.get();
+        } finally {
+            this.stop(name, start);
+        }
+    }
+
+    /**
+     * Count an event
+     * @param name name of the event
+     */
+    public void increment(String name){
+        if(!this.enabled) return;
+        this.counters.computeIfAbsent(name, n -> new LongAdder()).increment();
+    }
+
+    /**
+     * Get the metrics recorded
+     * @return map of metrics : counters, and count/errors/mean/percentiles/max (ms) of each timer
+     */
+    public Map<String, Object> getStatistics(){
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", this.enabled);
+        statistics.put("uptimeMs", System.currentTimeMillis() - this.startTime);
+        Map<String, Object> timers = new TreeMap<>();
+        this.timers.forEach((name, timer) -> timers.put(name, timer.toMap()));
+        statistics.put("timers", timers);
+        Map<String, Object> counters = new TreeMap<>();
+        this.counters.forEach((name, counter) -> counters.put(name, counter.sum()));
+        statistics.put("counters", counters);
+        return statistics;
+    }
+
+    /**
+     * Write the metrics to a file periodically (written to a temporary file, then moved)
+     * @param file file of the dump
+     * @param intervalMs time between two dumps
+     * @param extraStatistics other statistics added to the dump (executors...)
+     */
+    public synchronized void startDump(Path file, long intervalMs, Supplier<Map<String, Object>> extraStatistics){
+        if(!this.enabled || this.dumpExecutor != null || intervalMs <= 0) return;
+        this.dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "polyglot-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dumpExecutor.scheduleWithFixedDelay(() -> this.dump(file, extraStatistics), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the periodic dump
+     */
+    public synchronized void shutdown(){
+        if(this.dumpExecutor != null) this.dumpExecutor.shutdownNow();
+    }
+
+    /**
+     * Write the metrics to a file
+     * @param file file of the dump
+     * @param extraStatistics other statistics added to the dump
+     */
+    private void dump(Path file, Supplier<Map<String, Object>> extraStatistics){
+        Map<String, Object> statistics = this.getStatistics();
+        statistics.putAll(extraStatistics.get());
+        statistics.put("timestamp", System.currentTimeMillis());
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temporary, new GsonBuilder().setPrettyPrinting().create().toJson(statistics), StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    private static class Timer {
+        private static final int SUB_BUCKETS_BITS = 3; // Each power of two is split in 2^3 buckets (latencies are known within 12.5%)
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS; // Number of buckets of each power of two
+        private static final int BUCKETS = (64 - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS; // Number of buckets covering every positive long
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS); // Count of latencies of each bucket (ns, log-linear buckets)
+        private final LongAdder count = new LongAdder(); // Number of operations
+        private final LongAdder errors = new LongAdder(); // Number of failed operations
+        private final LongAdder totalNanos = new LongAdder(); // Sum of the latencies
+        private final AtomicLong maxNanos = new AtomicLong(); // Highest latency
+
+        /**
+         * Record a latency
+         * @param nanos latency (ns)
+         * @param error the operation failed
+         */
+        void record(long nanos, boolean error){
+            nanos = Math.max(0, nanos);
+            this.buckets.incrementAndGet(bucketOf(nanos));
+            this.count.increment();
+            if(error) this.errors.increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Get the bucket of a latency : small latencies have their own bucket, then each power of two is split in SUB_BUCKETS buckets
+         * @param nanos latency (ns)
+         * @return index of the bucket
+         */
+        static int bucketOf(long nanos){
+            if(nanos < SUB_BUCKETS) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int subBucket = (int) (nanos >>> (exponent - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * Get the middle value of a bucket
+         * @param bucket index of the bucket
+         * @return latency (ns)
+         */
+        static long valueOf(int bucket){
+            if(bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKETS_BITS - 1;
+            long width = 1L << (exponent - SUB_BUCKETS_BITS);
+            return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width / 2;
+        }
+
+        /**
+         * Get a percentile of the latencies
+         * @param percentile percentile (0-100)
+         * @param total number of latencies recorded
+         * @return latency (ns)
+         */
+        long percentile(double percentile, long total){
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.buckets.get(i);
+                if(seen >= rank) return Math.min(valueOf(i), this.maxNanos.get());
+            }
+            return this.maxNanos.get();
+        }
+
+        /**
+         * Export the timer
+         * @return map of statistics (latencies in ms)
+         */
+        Map<String, Object> toMap(){
+            long total = this.count.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", total);
+            map.put("errors", this.errors.sum());
+            map.put("meanMs", total == 0 ? 0.0 : this.totalNanos.sum() / (double) total / 1_000_000.0);
+            map.put("p50Ms", this.percentile(50, total) / 1_000_000.0);
+            map.put("p90Ms", this.percentile(90, total) / 1_000_000.0);
+            map.put("p99Ms", this.percentile(99, total) / 1_000_000.0);
+            map.put("maxMs", this.maxNanos.get() / 1_000_000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.launch.LSPLauncher;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.eclipse.lsp4j.services.TextDocumentService;
+import org.eclipse.lsp4j.services.WorkspaceService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PolyglotStubLanguageServer implements LanguageServer {
+
+    private final PolyglotLanguageServerProperties.StubServerInfo info; // Canned payloads & latency of the responses
+    private final Random random; // Latency generator
+    private final ScheduledExecutorService delayExecutor; // Completes the delayed responses (the requests are answered concurrently)
+    private final TextDocumentService textDocumentService; // Answers the hover & rename requests
+    private final WorkspaceService workspaceService; // Ignores the workspace notifications
+    private Socket socket; // Connection with the language client
+
+    public PolyglotStubLanguageServer(PolyglotLanguageServerProperties.StubServerInfo info){
+        this.info = info;
+        this.random = new Random(info.seed);
+        this.delayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "polyglot-stub-latency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.textDocumentService = new StubTextDocumentService();
+        this.workspaceService = new StubWorkspaceService();
+    }
+
+    /**
+     * Start a stub language server in this process, listening for one client on the address of the language server
+     * @param lsInfo Language Server Information properties (the stub properties must be set)
+     * @return the server is listening
+     */
+    public static boolean listen(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo){
+        return listen(lsInfo, lsInfo.port);
+    }
+
+    /**
+     * Start a stub language server in this process, listening for one client on a port of the language server ip
+     * @param lsInfo Language Server Information properties (the stub properties must be set)
+     * @param port port of the stub (each instance of a language server has its own port)
+     * @return the server is listening
+     */
+    public static boolean listen(PolyglotLanguageServerProperties.LanguageServerInfo lsInfo, int port){
+        PolyglotStubLanguageServer server = new PolyglotStubLanguageServer(lsInfo.stub);
+        ServerSocket serverSocket;
+        try {
+            // Bound before returning, so the client can connect right away
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(lsInfo.ip), port));
+        } catch (IOException e) {
+            System.err.println(e);
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            // Only one client : the port is released as soon as it is connected
+            try (serverSocket) {
+                server.socket = serverSocket.accept();
+                // Headers & contents are written separately : without TCP_NODELAY each response waits for a delayed ACK
+                server.socket.setTcpNoDelay(true);
+                Launcher<LanguageClient> launcher = LSPLauncher.createServerLauncher(server, server.socket.getInputStream(), server.socket.getOutputStream());
+                launcher.startListening();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }, "polyglot-stub-" + lsInfo.language + "-" + port);
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
+        ServerCapabilities capabilities = new ServerCapabilities();
+        capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
+        capabilities.setHoverProvider(true);
+        capabilities.setRenameProvider(true);
+        return CompletableFuture.completedFuture(new InitializeResult(capabilities));
+    }
+
+    @Override
+    public CompletableFuture<Object> shutdown() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Close the connection (the stub runs in the polyglot server process, it must not exit)
+     */
+    @Override
+    public void exit() {
+        this.delayExecutor.shutdownNow();
+        try {
+            if(this.socket != null) this.socket.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    @Override
+    public TextDocumentService getTextDocumentService() {
+        return this.textDocumentService;
+    }
+
+    @Override
+    public WorkspaceService getWorkspaceService() {
+        return this.workspaceService;
+    }
+
+    /**
+     * Complete a response after a latency drawn from the configured distribution
+     * @param response response of the request
+     * @return response future
+     */
+    private <T> CompletableFuture<T> delay(T response){
+        long latency = this.nextLatencyMicros();
+        if(latency <= 0) return CompletableFuture.completedFuture(response);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        this.delayExecutor.schedule(() -> future.complete(response), latency, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    /**
+     * Draw the latency of a response
+     * @return latency (microseconds)
+     */
+    private synchronized long nextLatencyMicros(){
+        double mean = this.info.latencyMs;
+        double jitter = this.info.latencyJitterMs;
+        double latency;
+        switch (this.info.latencyDistribution){
+            case "constant":
+                latency = mean;
+                break;
+            case "uniform":
+                latency = mean - jitter + 2 * jitter * this.random.nextDouble();
+                break;
+            case "normal":
+                latency = mean + jitter * this.random.nextGaussian();
+                break;
+            case "lognormal":
+                // Parameters of the underlying normal distribution, from the mean & standard deviation of the latency
+                double sigma2 = mean > 0 ? Math.log(1 + (jitter * jitter) / (mean * mean)) : 0;
+                latency = mean > 0 ? Math.exp(Math.log(mean) - sigma2 / 2 + Math.sqrt(sigma2) * this.random.nextGaussian()) : 0;
+                break;
+            case "exponential":
+                latency = -mean * Math.log(1 - this.random.nextDouble());
+                break;
+            default:
+                latency = 0;
+        }
+        return (long) (Math.max(0, latency) * 1000);
+    }
+
+    private class StubTextDocumentService implements TextDocumentService {
+
+        /**
+         * Answer a hover request with the canned hover content
+         * @param params HoverParams
+         * @return hover future, completed after the injected latency
+         */
+        @Override
+        public CompletableFuture<Hover> hover(HoverParams params) {
+            return PolyglotStubLanguageServer.this.delay(new Hover(new MarkupContent(MarkupKind.MARKDOWN, PolyglotStubLanguageServer.this.info.hover)));
+        }
+
+        /**
+         * Answer a rename request with edits inserting the new name at the renamed position, on the renamed line and the following ones
+         * @param params RenameParams
+         * @return workspace edit future, completed after the injected latency
+         */
+        @Override
+        public CompletableFuture<WorkspaceEdit> rename(RenameParams params) {
+            ArrayList<TextEdit> edits = new ArrayList<>();
+            for (int i = 0; i < PolyglotStubLanguageServer.this.info.renameEdits; i++) {
+                Position position = new Position(params.getPosition().getLine() + i, params.getPosition().getCharacter());
+                edits.add(new TextEdit(new Range(position, position), params.getNewName()));
+            }
+            HashMap<String, List<TextEdit>> changes = new HashMap<>();
+            changes.put(params.getTextDocument().getUri(), edits);
+            return PolyglotStubLanguageServer.this.delay(new WorkspaceEdit(changes));
+        }
+
+        /**
+         * NOTIFICATIONS SECTION, THE DOCUMENTS ARE NOT TRACKED
+         */
+        @Override
+        public void didOpen(DidOpenTextDocumentParams params) {
+        }
+
+        @Override
+        public void didChange(DidChangeTextDocumentParams params) {
+        }
+
+        @Override
+        public void didClose(DidCloseTextDocumentParams params) {
+        }
+
+        @Override
+        public void didSave(DidSaveTextDocumentParams params) {
+        }
+    }
+
+    private static class StubWorkspaceService implements WorkspaceService {
+
+        @Override
+        public void didChangeConfiguration(DidChangeConfigurationParams params) {
+        }
+
+        @Override
+        public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import com.example.polyglotast.utils.ExportData;
+import com.example.polyglotast.utils.ImportData;
+import com.example.polyglotast.utils.PolyglotExpImpData;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+public class PolyglotSymbol {
+
+    public enum Kind {
+        EXPORT,
+        IMPORT;
+    }
+
+    public Kind kind; // The symbol is a polyglot export or a polyglot import
+    public String name; // Name of the polyglot variable
+    public int line; // Line of the start of the export/import statement
+    public int character; // Character of the start of the export/import statement
+    public int lineEnd; // Line of the end of the export/import statement
+    public int characterEnd; // Character of the end of the export/import statement
+    public int nameLine = -1; // Line of the polyglot variable name (string parameter of the statement, -1 if unknown)
+    public int nameCharacter = -1; // Character of the polyglot variable name (-1 if unknown)
+    public String storageVariable; // Variable storing the imported value (null for exports or if the import is not stored)
+    public int storageLine = -1; // Line of the storage variable (-1 if none)
+    public int storageCharacter = -1; // Character of the storage variable (-1 if none)
+
+    public PolyglotSymbol() {}
+
+    /**
+     * Create a symbol from an export spotted in an AST
+     * @param data export data
+     * @return the symbol
+     */
+    public static PolyglotSymbol fromExport(ExportData data){
+        return fromData(Kind.EXPORT, data);
+    }
+
+    /**
+     * Create a symbol from an import spotted in an AST
+     * @param data import data
+     * @return the symbol
+     */
+    public static PolyglotSymbol fromImport(ImportData data){
+        PolyglotSymbol symbol = fromData(Kind.IMPORT, data);
+        symbol.storageVariable = data.getStorageVariable();
+        if(data.storageVarPosition != null){
+            symbol.storageLine = data.storageVarPosition.component1();
+            symbol.storageCharacter = data.storageVarPosition.component2();
+        }
+        return symbol;
+    }
+
+    private static PolyglotSymbol fromData(Kind kind, PolyglotExpImpData data){
+        PolyglotSymbol symbol = new PolyglotSymbol();
+        symbol.kind = kind;
+        symbol.name = data.getVar_name();
+        symbol.line = data.getLine_pos();
+        symbol.character = data.getChar_pos();
+        symbol.lineEnd = data.getLine_pos_end();
+        symbol.characterEnd = data.getChar_pos_end();
+        if(data.getVar_name_position() != null){
+            symbol.nameLine = data.getVar_name_position().component1();
+            symbol.nameCharacter = data.getVar_name_position().component2();
+        }
+        return symbol;
+    }
+
+    /**
+     * Get the range of the export/import statement (range used by the import/export diagnostics)
+     * @return range of the statement
+     */
+    public Range getRange(){
+        return new Range(new Position(this.line, this.character), new Position(this.lineEnd, this.characterEnd));
+    }
+
+    /**
+     * Get the range of the polyglot variable name
+     * @return range of the name, null if the position of the name is unknown
+     */
+    public Range getNameRange(){
+        if(this.nameLine < 0 || this.nameCharacter < 0) return null;
+        return new Range(new Position(this.nameLine, this.nameCharacter), new Position(this.nameLine, this.nameCharacter + this.name.length()));
+    }
+
+    /**
+     * Get the signature of the symbol (what the import/export checks depend on, positions excluded)
+     * @return signature of the symbol
+     */
+    public String getSignature(){
+        return this.kind + ":" + this.name;
+    }
+}
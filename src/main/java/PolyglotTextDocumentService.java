@@ -1,5 +1,6 @@
 import com.example.polyglotast.*;
 import com.example.polyglotast.utils.*;
+import com.google.gson.JsonPrimitive;
 import jsitter.api.Zipper;
 import kotlin.Pair;
 import org.eclipse.lsp4j.*;
@@ -12,28 +13,37 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class PolyglotTextDocumentService implements TextDocumentService {
 
+    private static final Pattern LINE_PREFIX = Pattern.compile("\\s*([A-Za-z_$][\\w$]*)?"); // Beginning of a line where a polyglot import can be completed : indentation & start of an identifier
     private PolyglotLanguageServer languageServer; // Reference to the language Server
     private LSClientLogger clientLogger; // Reference to the instance of clientLogger
     private PolyglotDiagnosticsHandler diagHandler; // Reference to diagnostic Handler
-    private HashSet<Path> externLSOpenedPaths; // Set of all paths that have been opened in extern Language Server (Used to avoid duplicated open request)
-
+    private Set<Path> externLSOpenedPaths; // Set of all paths that have been opened in extern Language Server (Used to avoid duplicated open request)
+    private ConcurrentHashMap<Path, PolyglotDocumentBuffer> documentBuffers; // Content of each document opened by the client, kept up to date with incremental changes
+    private PolyglotChangeScheduler changeScheduler; // Scheduler debouncing & coalescing the analyses triggered by document changes
 
 
     public PolyglotTextDocumentService(PolyglotLanguageServer languageServer) {
         this.languageServer = languageServer;
         this.clientLogger = LSClientLogger.getInstance();
-        this.diagHandler = new PolyglotDiagnosticsHandler(this.languageServer);
-        this.externLSOpenedPaths = new HashSet<>();
+        this.diagHandler = new PolyglotDiagnosticsHandler(() -> this.languageServer.languageClient, this.languageServer::isPullDiagnostics, this.languageServer.metrics);
+        this.externLSOpenedPaths = ConcurrentHashMap.newKeySet();
+        this.documentBuffers = new ConcurrentHashMap<>();
+        this.changeScheduler = new PolyglotChangeScheduler(this.languageServer.analysisExecutor.getAnalysisExecutor(), () -> this.languageServer.properties != null ? this.languageServer.properties.changeDebounceDelay : 0);
     }
 
     /**
@@ -46,7 +56,8 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public void didOpen(DidOpenTextDocumentParams didOpenTextDocumentParams) {
-        this.clientLogger.logMessage("Operation '" + "text/didOpen" + "' {fileUri: '" + didOpenTextDocumentParams.getTextDocument().getUri() + "'} opened");
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation '" + "text/didOpen" + "' {fileUri: '" + didOpenTextDocumentParams.getTextDocument().getUri() + "'} opened");
 
         String uri = didOpenTextDocumentParams.getTextDocument().getUri();
         Path path;
@@ -55,19 +66,16 @@ public class PolyglotTextDocumentService implements TextDocumentService {
         } catch (Exception e) {
             return;
         }
-        if(PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)){
+        PolyglotDocumentBuffer buffer = new PolyglotDocumentBuffer(didOpenTextDocumentParams.getTextDocument().getText(), didOpenTextDocumentParams.getTextDocument().getVersion());
+        this.documentBuffers.put(path, buffer);
+        this.changeScheduler.submitNow(uri, buffer.getVersion(), run -> {
             try {
-                this.changeTree(uri, Files.readString(path));
-            } catch (Exception e) {
+                this.updateOrCreateTree(path, uri, buffer.getText(), run);
+            } catch (URISyntaxException | IOException e) {
                 System.err.println(e.getMessage());
             }
-        } else {
-            try {
-                this.createTree(uri);
-            } catch (Exception e) {
-                System.err.println(e.getMessage());
-            }
-        }
+        });
+        this.languageServer.metrics.stop("textDocument/didOpen", start);
     }
 
     /**
@@ -76,8 +84,8 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public void didChange(DidChangeTextDocumentParams didChangeTextDocumentParams) {
-        this.clientLogger.logMessage("Operation '" + "text/didChange" + "' {fileUri: '" + didChangeTextDocumentParams.getTextDocument().getUri() + "'} Changed");
-        this.languageServer.languageClientManager.didChangeRequest(didChangeTextDocumentParams);
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation '" + "text/didChange" + "' {fileUri: '" + didChangeTextDocumentParams.getTextDocument().getUri() + "'} Changed");
 
         String uri = didChangeTextDocumentParams.getTextDocument().getUri();
         Path path;
@@ -87,22 +95,36 @@ public class PolyglotTextDocumentService implements TextDocumentService {
             return;
         }
 
-        if(PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)){
-            if(didChangeTextDocumentParams.getContentChanges().size()>0 && didChangeTextDocumentParams.getContentChanges().get(0).getRange() == null){
-                try {
-                    this.changeTree(uri, didChangeTextDocumentParams.getContentChanges().get(0).getText());
-                } catch (URISyntaxException e) {
-                    throw new RuntimeException(e);
-                }
+        // Apply the changes (ranges) to the document buffer, the whole file is never sent by the client
+        PolyglotDocumentBuffer buffer = this.documentBuffers.get(path);
+        try {
+            if(buffer == null){
+                buffer = new PolyglotDocumentBuffer(this.languageServer.contentStore.getText(path), 0);
+                this.documentBuffers.put(path, buffer);
+                // The buffer now holds the content of the document
+                this.languageServer.contentStore.invalidate(path);
             }
-        } else {
-            try {
-                this.createTree(uri);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Integer version = didChangeTextDocumentParams.getTextDocument().getVersion();
+        synchronized (buffer) {
+            buffer.applyChanges(didChangeTextDocumentParams.getContentChanges(), version == null ? buffer.getVersion() + 1 : version);
+            // Every change is forwarded (in order) to the extern language server which already knows the document, only the analysis is debounced
+            if(this.externLSOpenedPaths.contains(path)){
+                this.languageServer.languageClientManager.didChangeRequest(didChangeTextDocumentParams, buffer::getText);
             }
         }
 
+        PolyglotDocumentBuffer changedBuffer = buffer;
+        this.changeScheduler.scheduleChange(uri, buffer.getVersion(), run -> {
+            try {
+                this.updateOrCreateTree(path, uri, changedBuffer.getText(), run);
+            } catch (URISyntaxException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        this.languageServer.metrics.stop("textDocument/didChange", start);
     }
 
     /**
@@ -111,7 +133,15 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public void didClose(DidCloseTextDocumentParams didCloseTextDocumentParams) {
-        this.clientLogger.logMessage("Operation '" + "text/didClose" + "' {fileUri: '" + didCloseTextDocumentParams.getTextDocument().getUri() + "'} Closed");
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation '" + "text/didClose" + "' {fileUri: '" + didCloseTextDocumentParams.getTextDocument().getUri() + "'} Closed");
+        try {
+            this.documentBuffers.remove(Paths.get(new URI(didCloseTextDocumentParams.getTextDocument().getUri())));
+            this.changeScheduler.forget(didCloseTextDocumentParams.getTextDocument().getUri());
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+        this.languageServer.metrics.stop("textDocument/didClose", start);
     }
 
     /**
@@ -120,7 +150,8 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public void didSave(DidSaveTextDocumentParams didSaveTextDocumentParams) {
-        this.clientLogger.logMessage("Operation '" + "text/didSave" + "' {fileUri: '" + didSaveTextDocumentParams.getTextDocument().getUri() + "'} Saved");
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation '" + "text/didSave" + "' {fileUri: '" + didSaveTextDocumentParams.getTextDocument().getUri() + "'} Saved");
         this.languageServer.languageClientManager.didSaveRequest(didSaveTextDocumentParams);
 
         String uri = didSaveTextDocumentParams.getTextDocument().getUri();
@@ -130,19 +161,42 @@ public class PolyglotTextDocumentService implements TextDocumentService {
         } catch (Exception e) {
             return;
         }
+        // The file on disk has a new version
+        this.languageServer.contentStore.invalidate(path);
 
-        if(PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)){
+        this.changeScheduler.submitNow(uri, null, run -> {
             try {
-                this.changeTree(uri, Files.readString(path));
-            } catch (Exception e) {
+                PolyglotDocumentBuffer buffer = this.documentBuffers.get(path);
+                this.updateOrCreateTree(path, uri, buffer != null ? buffer.getText() : this.languageServer.contentStore.getText(path), run);
+            } catch (URISyntaxException | IOException e) {
                 throw new RuntimeException(e);
             }
-        } else {
-            try {
-                this.createTree(uri);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        });
+        this.languageServer.metrics.stop("textDocument/didSave", start);
+    }
+
+    /**
+     * Reparse the AST of a file if it exists, otherwise create it (and the ASTs of its directory)
+     * @param path path of the file
+     * @param uri uri of the file
+     * @param code current code of the file
+     * @param run analysis run (null if the analysis can't be cancelled)
+     */
+    private void updateOrCreateTree(Path path, String uri, String code, PolyglotChangeScheduler.AnalysisRun run) throws URISyntaxException, IOException {
+        long start = this.languageServer.metrics.start();
+        try {
+            if(this.languageServer.workspaceManager.containsPath(path)){
+                this.changeTree(uri, code, run);
+            } else {
+                this.createTree(uri, run);
+                // The tree has been parsed from the saved file, bring it up to date with the edited content
+                PolyglotDocumentBuffer buffer = this.documentBuffers.get(path);
+                if(buffer != null) this.changeTree(uri, code, run);
             }
+            // One publication of the changed diagnostics per analysis
+            this.diagHandler.flush();
+        } finally {
+            this.languageServer.metrics.stop("analysis/update", start);
         }
     }
 
@@ -152,24 +206,51 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      * @param newCode new code of the file
      */
     public void changeTree(String uri, String newCode) throws URISyntaxException {
+        this.changeTree(uri, newCode, null);
+        this.diagHandler.flush();
+    }
+
+    /**
+     * Update AST of specific file with the new code, and update all diagnostics related to the edition (queued, they are sent by the flush at the end of the analysis)
+     * @param uri uri of file changed
+     * @param newCode new code of the file
+     * @param run analysis run, checked between each step so superseded analyses stop early and never publish (null if the analysis can't be cancelled)
+     */
+    public void changeTree(String uri, String newCode, PolyglotChangeScheduler.AnalysisRun run) throws URISyntaxException {
         Path path = Paths.get(new URI(uri));
-        if(!PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)) return;
-        PolyglotTreeHandler tree_changed = PolyglotTreeHandler.getfilePathToTreeHandler().get(path);
-        tree_changed.reparsePolyglotTree(newCode);
+        if(!this.languageServer.workspaceManager.containsPath(path)) return;
+        PolyglotTreeHandler tree_changed = this.languageServer.workspaceManager.getTree(path);
+        this.languageServer.analysisExecutor.writeTrees(() -> {
+            long start = this.languageServer.metrics.start();
+            tree_changed.reparsePolyglotTree(newCode);
+            this.languageServer.metrics.stop("tree/reparse", start);
+            // The edition may evaluate new files
+            this.registerTree(path, tree_changed);
+            return null;
+        });
+        checkCancelled(run);
+
+        // Diff the polyglot facts of the file : if the edition only moved its statements, the import/export checks can't change
+        PolyglotImportExportIndex.Delta delta = this.languageServer.importExportIndex.update(path, PolyglotFileFacts.extract(tree_changed, this.languageServer.workspaceManager));
+        if(delta.isPositionShiftOnly() && this.diagHandler.remapDiagnostics(uri, DiagnosticCategory.IMPORTEXPORT, delta.getRangeMapping())){
+            checkCancelled(run);
+            this.diagHandler.publishDiagnosticsIfChanged(uri);
+            return;
+        }
 
-        // CHECK ERROR NOT FOUND ERRORS
+        // CHECK ERROR NOT FOUND ERRORS (the file & the files it evaluates, from the evaluation graph of the index)
         HashSet<Path> paths = new HashSet<>();
         paths.add(path);
-        for (PolyglotTreeHandler subTree : tree_changed.getSubTrees()) {
-            if(PolyglotTreeHandler.getfilePathOfTreeHandler().containsKey(subTree)) paths.add(PolyglotTreeHandler.getfilePathOfTreeHandler().get(subTree));
-        }
+        paths.addAll(this.languageServer.importExportIndex.getEvaluatedFiles(path));
         this.checkFileNotFound(paths);
+        checkCancelled(run);
 
-        // CHECK IMPORT / EXPORT ERRORS
-        paths.addAll(this.checkInconsistencies(tree_changed.getHostTrees()));
+        // CHECK IMPORT / EXPORT ERRORS (every host tree of the file : the diagnostics of the file are stored per host, a host skipped would keep outdated ones)
+        paths.addAll(this.checkInconsistencies(this.getHostTrees(path)));
+        checkCancelled(run);
 
         for (Path pathUpdatedTree : paths) {
-            this.diagHandler.publishDiagnostics(pathUpdatedTree.toUri().toString());
+            this.diagHandler.publishDiagnosticsIfChanged(pathUpdatedTree.toUri().toString());
         }
     }
 
@@ -178,36 +259,40 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      * @param uri Uri of the file to parse
      */
     public void createTree(String uri) throws URISyntaxException, IOException {
+        this.createTree(uri, null);
+        this.diagHandler.flush();
+    }
+
+    /**
+     * Parse a new Polyglot AST from uri, parse all files in directory and process all diagnostics for all these files (queued, they are sent by the flush at the end of the analysis)
+     * @param uri Uri of the file to parse
+     * @param run analysis run, checked before publishing (null if the analysis can't be cancelled)
+     */
+    public void createTree(String uri, PolyglotChangeScheduler.AnalysisRun run) throws URISyntaxException, IOException {
         // Check if the file has not been parsed before
         Path path = Paths.get(new URI(uri));
-        if(PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)) return;
+        if(this.languageServer.workspaceManager.containsPath(path)) return;
         // Get language of file
         String[] splitURI = uri.split("[.]", 0);
         String language = getLanguageFromExtension(splitURI[splitURI.length-1]);
         if(language.equals("none")) return;
         // Parse the file into a Polyglot AST
-        PolyglotTreeHandler newTree = new PolyglotTreeHandler(path, language);
+        PolyglotTreeHandler newTree = this.parseTree(path, language);
 
         this.createTreesFromDirectory(path.getParent().toString());
 
-        HashSet<PolyglotTreeHandler> hostTrees = newTree.getHostTrees();
+        HashSet<PolyglotTreeHandler> hostTrees = this.getHostTrees(path);
 
         // CHECK "ERROR NOT FOUND" ERRORS
-        HashSet<Path> paths = new HashSet<>();
-        for (PolyglotTreeHandler hostTree : hostTrees) {
-            if(PolyglotTreeHandler.getfilePathOfTreeHandler().containsKey(hostTree)) paths.add(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree));
-            for (PolyglotTreeHandler subTree : hostTree.getSubTrees()) {
-                if(PolyglotTreeHandler.getfilePathOfTreeHandler().containsKey(subTree)) paths.add(PolyglotTreeHandler.getfilePathOfTreeHandler().get(subTree));
-            }
-        }
+        HashSet<Path> paths = this.getProgramPaths(path);
         this.checkFileNotFound(paths);
 
         // CHECK IMPORT / EXPORT ERRORS
         paths.addAll(this.checkInconsistencies(hostTrees));
 
         for (Path pathUpdatedTree : paths) {
-            // PUBLISH DIAGNOSTICS
-            this.diagHandler.publishDiagnostics(pathUpdatedTree.toUri().toString());
+            // PUBLISH DIAGNOSTICS (the extern language servers must still know every file, even if the run is outdated)
+            if(run == null || !run.isCancelled()) this.diagHandler.publishDiagnostics(pathUpdatedTree.toUri().toString());
 
             // SEND REQUEST TO LANGUAGE SERVER FOR THE SPECIFIC LANGUAGE
             this.sendDidOpenRequestToLanguageServers(pathUpdatedTree);
@@ -226,45 +311,408 @@ public class PolyglotTextDocumentService implements TextDocumentService {
             for (File file : files) {
                 // Check if the path has not been already parsed
                 Path path = Paths.get(file.getAbsolutePath());
-                if(!PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)){
+                if(!this.languageServer.workspaceManager.containsPath(path)){
                     // Check if it's a correct file extension handled by the server
                     String[] splitURI = path.toString().split("[.]", 0);
                     String language = getLanguageFromExtension(splitURI[splitURI.length-1]);
                     if(!language.equals("none")){
                         // Parse the file into a PolyglotTree and sendOpen request to the proper Language Server
-                        PolyglotTreeHandler newTree = new PolyglotTreeHandler(path, language);
+                        PolyglotTreeHandler newTree = this.parseTree(path, language);
                         this.sendDidOpenRequestToLanguageServers(path);
                         for (PolyglotTreeHandler subTree : newTree.getSubTrees()) {
-                            this.sendDidOpenRequestToLanguageServers(PolyglotTreeHandler.getfilePathOfTreeHandler().get(subTree));
+                            this.sendDidOpenRequestToLanguageServers(this.languageServer.workspaceManager.getPath(subTree));
                         }
-                        this.clientLogger.logMessage("Tree created at path : "+path);
+                        this.clientLogger.log(MessageType.Log, () -> "Tree created at path : "+path);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Parse a file found by the workspace bootstrap (if it has not been parsed before), and open it in the extern Language Server
+     * @param path path of the file
+     */
+    public void bootstrapTree(Path path) throws IOException {
+        if(this.languageServer.workspaceManager.containsPath(path)) return;
+        String language = getLanguageFromExtension(path);
+        if(language.equals("none")) return;
+        PolyglotTreeHandler newTree = this.parseTree(path, language);
+        this.sendDidOpenRequestToLanguageServers(path);
+        for (PolyglotTreeHandler subTree : newTree.getSubTrees()) {
+            this.sendDidOpenRequestToLanguageServers(this.languageServer.workspaceManager.getPath(subTree));
+        }
+    }
+
+    /**
+     * Index the cached facts of a file found by the workspace bootstrap, without parsing it (unless it has been indexed meanwhile)
+     * @param path path of the file
+     * @param facts facts of the file content, read from the facts cache
+     */
+    public void bootstrapFacts(Path path, PolyglotFileFacts facts){
+        if(this.languageServer.importExportIndex.getFacts(path) == null) this.languageServer.importExportIndex.update(path, facts);
+    }
+
+    /**
+     * Process & publish the diagnostics of all the files parsed by the workspace bootstrap
+     * @param bootstrappedPaths paths of the files parsed
+     */
+    public void checkBootstrappedTrees(Collection<Path> bootstrappedPaths){
+        HashSet<PolyglotTreeHandler> hostTrees = new HashSet<>();
+        HashSet<Path> paths = new HashSet<>();
+        for (Path path : bootstrappedPaths) {
+            if(!this.languageServer.workspaceManager.containsPath(path)) continue;
+            hostTrees.addAll(this.getHostTrees(path));
+            paths.addAll(this.getProgramPaths(path));
+        }
+        this.checkFileNotFound(paths);
+        paths.addAll(this.checkInconsistencies(hostTrees));
+        for (Path path : paths) {
+            this.diagHandler.publishDiagnosticsIfChanged(path.toUri().toString());
+        }
+        this.diagHandler.flush();
+    }
+
+    /**
+     * Get the ASTs of the host files of a file, from the evaluation graph of the index (walk of the ASTs if the file is not indexed).
+     * The hosts only known from their cached facts are parsed (and opened in the extern Language Servers), so their programs are still checked.
+     * Must be called from the analysis thread, without the ASTs lock
+     * @param path path of the file
+     * @return ASTs of the host files
+     */
+    private HashSet<PolyglotTreeHandler> getHostTrees(Path path){
+        PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(path);
+        if(this.languageServer.importExportIndex.getFacts(path) == null) return tree != null ? tree.getHostTrees() : new HashSet<>();
+        HashSet<PolyglotTreeHandler> hostTrees = new HashSet<>();
+        for (Path host : this.languageServer.importExportIndex.getHosts(path)) {
+            PolyglotTreeHandler hostTree = this.languageServer.workspaceManager.getTree(host);
+            if(hostTree == null){
+                try {
+                    this.bootstrapTree(host);
+                } catch (IOException | IllegalStateException e) {
+                    System.err.println(e);
+                }
+                hostTree = this.languageServer.workspaceManager.getTree(host);
+            }
+            if(hostTree != null) hostTrees.add(hostTree);
+        }
+        return hostTrees;
+    }
+
+    /**
+     * Get the parsed files of the polyglot programs a file is part of, from the evaluation graph of the index (walk of the ASTs if the file is not indexed)
+     * @param path path of the file
+     * @return paths of the host files & of the files they evaluate
+     */
+    private HashSet<Path> getProgramPaths(Path path){
+        HashSet<Path> paths = new HashSet<>();
+        if(this.languageServer.importExportIndex.getFacts(path) != null){
+            for (Path programPath : this.languageServer.importExportIndex.getHostClosure(path)) {
+                if(this.languageServer.workspaceManager.containsPath(programPath)) paths.add(programPath);
+            }
+            return paths;
+        }
+        for (PolyglotTreeHandler hostTree : this.getHostTrees(path)) {
+            if(this.languageServer.workspaceManager.getPath(hostTree) != null) paths.add(this.languageServer.workspaceManager.getPath(hostTree));
+            for (PolyglotTreeHandler subTree : hostTree.getSubTrees()) {
+                if(this.languageServer.workspaceManager.getPath(subTree) != null) paths.add(this.languageServer.workspaceManager.getPath(subTree));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Parse a file into a Polyglot AST (while no request is reading the ASTs), and index its polyglot facts
+     * @param path path of the file
+     * @param language programming language of the file
+     * @return the new AST
+     */
+    private PolyglotTreeHandler parseTree(Path path, String language){
+        PolyglotTreeHandler tree = this.languageServer.analysisExecutor.writeTrees(() -> {
+            try {
+                long start = this.languageServer.metrics.start();
+                PolyglotTreeHandler newTree = new PolyglotTreeHandler(path, language);
+                this.languageServer.metrics.stop("tree/parse", start);
+                this.registerTree(path, newTree);
+                return newTree;
+            } catch (Exception e) {
+                throw new IllegalStateException("Couldn't parse file " + path, e);
+            }
+        });
+        this.indexTree(path, tree);
+        // The evaluated files are parsed along with the file, index them as well
+        for (PolyglotTreeHandler subTree : tree.getSubTrees()) {
+            Path subPath = this.languageServer.workspaceManager.getPath(subTree);
+            if(subPath != null && this.languageServer.importExportIndex.getFacts(subPath) == null) this.indexTree(subPath, subTree);
+        }
+        return tree;
+    }
+
+    /**
+     * Register an AST and the ASTs of the files it evaluates in their workspaces (must be called while the ASTs are write-locked).
+     * The AST library is the only one knowing the paths of the evaluated files it parsed, its registry is only read here, from the analysis thread.
+     * @param path path of the file
+     * @param tree AST of the file
+     */
+    private void registerTree(Path path, PolyglotTreeHandler tree){
+        this.languageServer.workspaceManager.register(path, tree);
+        // The cached hovers computed from these ASTs are outdated
+        this.languageServer.hoverCache.invalidate(path);
+        HashSet<PolyglotTreeHandler> visited = new HashSet<>();
+        ArrayDeque<PolyglotTreeHandler> stack = new ArrayDeque<>(tree.getSubTrees());
+        while(!stack.isEmpty()){
+            PolyglotTreeHandler subTree = stack.pop();
+            if(!visited.add(subTree)) continue;
+            Path subPath = PolyglotTreeHandler.getfilePathOfTreeHandler().get(subTree);
+            if(subPath != null){
+                this.languageServer.workspaceManager.register(subPath, subTree);
+                this.languageServer.hoverCache.invalidate(subPath);
+            }
+            stack.addAll(subTree.getSubTrees());
+        }
+    }
+
+    /**
+     * Index the polyglot facts of an AST parsed from the file on disk, and store them in the facts cache
+     * @param path path of the file
+     * @param tree AST of the file
+     */
+    private void indexTree(Path path, PolyglotTreeHandler tree){
+        PolyglotFileFacts facts = PolyglotFileFacts.extract(tree, this.languageServer.workspaceManager);
+        this.languageServer.importExportIndex.update(path, facts);
+        if(this.languageServer.factsCache != null){
+            try {
+                this.languageServer.factsCache.put(path, this.languageServer.contentStore.getBytes(path), facts);
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
     /**
      * Send didOpen Request to specific Language Server of File Language Programming
      * @param path file opened
      */
     public void sendDidOpenRequestToLanguageServers(Path path) throws IOException {
-        if(this.externLSOpenedPaths.contains(path)) return;
+        // Only the first caller opens the document (the check & the insertion are atomic)
+        if(!this.externLSOpenedPaths.add(path)) return;
         DidOpenTextDocumentParams params = new DidOpenTextDocumentParams();
         TextDocumentItem tdi = new TextDocumentItem();
         tdi.setVersion(1);
-        tdi.setLanguageId(PolyglotTreeHandler.getfilePathToTreeHandler().get(path).getLang());
+        PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(path);
+        tdi.setLanguageId(tree != null ? tree.getLang() : getLanguageFromExtension(path));
         tdi.setUri(path.toUri().toString());
-        tdi.setText(Files.readString(path));
         params.setTextDocument(tdi);
-        this.externLSOpenedPaths.add(path);
-        this.languageServer.languageClientManager.didOpenRequest(params);
+        // Opened documents may have unsaved changes, the extern Language Server must start from the same content as the incremental changes
+        PolyglotDocumentBuffer buffer = this.documentBuffers.get(path);
+        if(buffer == null){
+            try {
+                tdi.setText(this.languageServer.contentStore.getText(path));
+            } catch (IOException e) {
+                // Not opened : the next caller tries again
+                this.externLSOpenedPaths.remove(path);
+                throw e;
+            }
+            this.languageServer.languageClientManager.didOpenRequest(params);
+            return;
+        }
+        synchronized (buffer) {
+            tdi.setText(buffer.getText());
+            this.languageServer.languageClientManager.didOpenRequest(params);
+        }
+    }
+
+    /**
+     * Open again in the extern Language Servers the documents they knew (used when a Language Server has been restarted)
+     * @param filter selects the documents known by the restarted Language Server
+     */
+    public void reopenExternDocuments(Predicate<Path> filter){
+        for (Path path : new ArrayList<>(this.externLSOpenedPaths)) {
+            if(!filter.test(path)) continue;
+            this.externLSOpenedPaths.remove(path);
+            try {
+                this.sendDidOpenRequestToLanguageServers(path);
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    /**
+     * Follow renamed files in the extern Language Servers : a document moved to another instance of its Language Server is closed in the old instance and opened in the new one
+     * @param params RenameFilesParams
+     * @param moved renames whose new uri is handled by another Language Server instance (not notified with didRenameFiles)
+     */
+    public void renameExternDocuments(RenameFilesParams params, List<FileRename> moved){
+        for (FileRename file : params.getFiles()) {
+            try {
+                Path oldPath = Paths.get(new URI(file.getOldUri()));
+                Path newPath = Paths.get(new URI(file.getNewUri()));
+                if(!this.externLSOpenedPaths.remove(oldPath)) continue;
+                if(!moved.contains(file)){
+                    // Renamed in the instance which knew the document
+                    this.externLSOpenedPaths.add(newPath);
+                    continue;
+                }
+                this.languageServer.languageClientManager.didCloseRequest(new DidCloseTextDocumentParams(new TextDocumentIdentifier(file.getOldUri())));
+                this.languageServer.contentStore.invalidate(newPath);
+                this.sendDidOpenRequestToLanguageServers(newPath);
+            } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    /**
+     * Throw a CancellationException if the analysis run has been superseded
+     * @param run analysis run (null if the analysis can't be cancelled)
+     */
+    private static void checkCancelled(PolyglotChangeScheduler.AnalysisRun run){
+        if(run != null) run.checkCancelled();
+    }
+
+    /**
+     * Stop the change scheduler timer
+     */
+    public void shutdown(){
+        this.changeScheduler.shutdown();
+    }
+
+    /**
+     * Add the workspace of a folder opened by the client, while no request or analysis reads the ASTs (the parsed files of the folder move to it)
+     * @param root root folder of the workspace
+     */
+    public void addWorkspace(Path root){
+        this.languageServer.analysisExecutor.writeTrees(() -> this.languageServer.workspaceManager.addWorkspace(root));
+    }
+
+    /**
+     * Remove the workspace of a folder closed by the client : the ASTs, document buffers, index entries & diagnostics of its files are dropped
+     * @param root root folder of the workspace
+     */
+    public void removeWorkspace(Path root){
+        Set<Path> dropped = this.languageServer.analysisExecutor.writeTrees(() -> this.languageServer.workspaceManager.removeWorkspace(root));
+        HashSet<String> uris = new HashSet<>();
+        for (Path path : dropped) {
+            String uri = path.toUri().toString();
+            uris.add(uri);
+            this.documentBuffers.remove(path);
+            this.changeScheduler.forget(uri);
+            this.languageServer.importExportIndex.remove(path);
+            this.languageServer.contentStore.invalidate(path);
+            this.languageServer.hoverCache.invalidate(path);
+        }
+        this.diagHandler.clearDiagnostics(uris);
+    }
+
+    /**
+     * Drop a file deleted from the disk (unless it is opened in the client) and check again the polyglot programs it was part of
+     * @param path path of the file deleted
+     */
+    public void deleteFile(Path path){
+        this.changeScheduler.submitNow(path.toUri().toString(), null, run -> this.deleteTree(path, run));
+    }
+
+    /**
+     * Drop the AST, index entry & diagnostics of a deleted file, parse again the files evaluating it and process the diagnostics of its previous programs
+     * @param path path of the file deleted
+     * @param run analysis run, checked before publishing (null if the analysis can't be cancelled)
+     */
+    private void deleteTree(Path path, PolyglotChangeScheduler.AnalysisRun run){
+        // The document opened in the client keeps its content
+        if(this.documentBuffers.containsKey(path)) return;
+        long start = this.languageServer.metrics.start();
+        try {
+            // The programs of the file, before it leaves the evaluation graph
+            HashSet<Path> closure = this.getProgramPaths(path);
+            closure.remove(path);
+            HashMap<Path, String> evaluators = new HashMap<>();
+            for (Path programPath : closure) {
+                if(!this.languageServer.importExportIndex.getEvaluatedFiles(programPath).contains(path)) continue;
+                PolyglotDocumentBuffer buffer = this.documentBuffers.get(programPath);
+                try {
+                    evaluators.put(programPath, buffer != null ? buffer.getText() : this.languageServer.contentStore.getText(programPath));
+                } catch (IOException e) {
+                    // Deleted too, its own event drops it
+                    System.err.println(e);
+                }
+            }
+
+            // The files evaluating the deleted file no longer find it, the AST of the deleted file is dropped after them (their parse must not register it again)
+            this.languageServer.analysisExecutor.writeTrees(() -> {
+                evaluators.forEach((evaluator, code) -> {
+                    PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(evaluator);
+                    tree.reparsePolyglotTree(code);
+                    this.registerTree(evaluator, tree);
+                });
+                this.languageServer.workspaceManager.remove(path);
+                return null;
+            });
+            for (Path evaluator : evaluators.keySet()) {
+                this.languageServer.importExportIndex.update(evaluator, PolyglotFileFacts.extract(this.languageServer.workspaceManager.getTree(evaluator), this.languageServer.workspaceManager));
+            }
+            this.languageServer.importExportIndex.remove(path);
+            this.languageServer.contentStore.invalidate(path);
+            this.languageServer.hoverCache.invalidate(path);
+            HashSet<String> uris = new HashSet<>();
+            uris.add(path.toUri().toString());
+            this.diagHandler.clearDiagnostics(uris);
+            for (Path programPath : closure) {
+                // The hovers of the programs may show the deleted file, and its diagnostics as a host are outdated
+                this.languageServer.hoverCache.invalidate(programPath);
+                this.diagHandler.clearDiagnostics(programPath.toUri().toString(), DiagnosticCategory.ALL, path);
+            }
+            checkCancelled(run);
+
+            // CHECK "ERROR NOT FOUND" & IMPORT / EXPORT ERRORS of the previous programs of the file
+            HashSet<Path> paths = new HashSet<>();
+            HashSet<PolyglotTreeHandler> hostTrees = new HashSet<>();
+            for (Path programPath : closure) {
+                if(!this.languageServer.workspaceManager.containsPath(programPath)) continue;
+                paths.add(programPath);
+                hostTrees.addAll(this.getHostTrees(programPath));
+            }
+            this.checkFileNotFound(paths);
+            paths.addAll(this.checkInconsistencies(hostTrees));
+            checkCancelled(run);
+
+            for (Path programPath : paths) {
+                this.diagHandler.publishDiagnosticsIfChanged(programPath.toUri().toString());
+            }
+            this.diagHandler.flush();
+        } finally {
+            this.languageServer.metrics.stop("analysis/delete", start);
+        }
     }
 
     /**
      * ################################################# DIAGNOSTICS ###################################################
      */
 
+    /**
+     * LSP diagnostic Request Handler (pull diagnostics)
+     * @param params DocumentDiagnosticParams
+     * @return diagnostics of the file, or unchanged report if they have the previous result id
+     */
+    @Override
+    public CompletableFuture<DocumentDiagnosticReport> diagnostic(DocumentDiagnosticParams params) {
+        long start = this.languageServer.metrics.start();
+        // The report is built from the diagnostics of the last completed analysis (the diagnostics being rebuilt are never read), no need to lock the ASTs
+        return this.languageServer.metrics.stopWhenComplete("textDocument/diagnostic", start, CompletableFuture.supplyAsync(() ->
+                this.diagHandler.getDocumentReport(params.getTextDocument().getUri(), params.getPreviousResultId()),
+                this.languageServer.analysisExecutor.getRequestExecutor()));
+    }
+
+    /**
+     * Get the diagnostics of all the files having diagnostics (workspace/diagnostic pull request)
+     * @param params WorkspaceDiagnosticParams
+     * @return diagnostics of each file, or unchanged report for the files having the previous result id
+     */
+    public CompletableFuture<WorkspaceDiagnosticReport> workspaceDiagnostic(WorkspaceDiagnosticParams params) {
+        return CompletableFuture.supplyAsync(() -> this.diagHandler.getWorkspaceReport(params.getPreviousResultIds()),
+                this.languageServer.analysisExecutor.getRequestExecutor());
+    }
+
     /**
      * Add diagnostics to diagnostic Handler for each file not found of files in paths
      * @param paths set of file paths to look in
@@ -275,8 +723,8 @@ public class PolyglotTextDocumentService implements TextDocumentService {
         // Put all files not found from all trees at specific path in the map
         for(Path path : paths){
             this.diagHandler.clearDiagnostics(path.toUri().toString(), DiagnosticCategory.FILENOTFOUND, path);
-            if(PolyglotTreeHandler.getfilePathToTreeHandler().containsKey(path)){
-                PolyglotTreeHandler tree = PolyglotTreeHandler.getfilePathToTreeHandler().get(path);
+            if(this.languageServer.workspaceManager.containsPath(path)){
+                PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(path);
                 for(FileNotFoundInfo fileNotFound : tree.getFilesNotFound()){
                     if(filesNotFound.containsKey(path)){
                         filesNotFound.get(path).add(fileNotFound);
@@ -313,11 +761,13 @@ public class PolyglotTextDocumentService implements TextDocumentService {
         // Loop through all trees and process all inconsistencies with DUBuilder
         for (PolyglotTreeHandler tree : trees) {
             PolyglotDUBuilder du = new PolyglotDUBuilder();
+            long start = this.languageServer.metrics.start();
             tree.apply(du);
+            this.languageServer.metrics.stop("analysis/duBuild", start);
 
             // Loop through all trees processed by DUBuilder to clear their diagnostics
             for (Path path : du.getPathsCovered()) {
-                this.diagHandler.clearDiagnostics(path.toUri().toString(), DiagnosticCategory.IMPORTEXPORT, PolyglotTreeHandler.getfilePathOfTreeHandler().get(tree));
+                this.diagHandler.clearDiagnostics(path.toUri().toString(), DiagnosticCategory.IMPORTEXPORT, this.languageServer.workspaceManager.getPath(tree));
                 // Add the path to pathsCovered if it wasn't in it previously
                 if(!pathsCovered.contains(path)){
                     pathsCovered.add(path);
@@ -341,20 +791,20 @@ public class PolyglotTextDocumentService implements TextDocumentService {
             // Warning : Import before the export
             for (String s : du.getImportBeforeExport().keySet()) {
                 for (ImportData importData : du.getImportBeforeExport().get(s)) {
-                    this.addImportExportDiagnostic("Variable \""+ importData.getVar_name()+"\" is imported before the export statement. (With Host : "+PolyglotTreeHandler.getfilePathOfTreeHandler().get(tree).getFileName().toString()+")",
+                    this.addImportExportDiagnostic("Variable \""+ importData.getVar_name()+"\" is imported before the export statement. (With Host : "+this.languageServer.workspaceManager.getPath(tree).getFileName().toString()+")",
                             "Polyglot Import Order Warning", DiagnosticSeverity.Warning, importData.getFilePath(),
                             new Range(new Position(importData.getLine_pos(), importData.getChar_pos()), new Position(importData.getLine_pos_end(), importData.getChar_pos_end())),
-                            PolyglotTreeHandler.getfilePathOfTreeHandler().get(tree));
+                            this.languageServer.workspaceManager.getPath(tree));
                 }
             }
 
             // Warning : Import without an export
             for (String s : du.getImportWithoutExport().keySet()) {
                 for (ImportData importData : du.getImportWithoutExport().get(s)) {
-                    this.addImportExportDiagnostic("Variable \""+ importData.getVar_name()+"\" is imported but is never exported. (With Host : "+PolyglotTreeHandler.getfilePathOfTreeHandler().get(tree).getFileName().toString()+")",
+                    this.addImportExportDiagnostic("Variable \""+ importData.getVar_name()+"\" is imported but is never exported. (With Host : "+this.languageServer.workspaceManager.getPath(tree).getFileName().toString()+")",
                             "Polyglot Undefined Import", DiagnosticSeverity.Warning, importData.getFilePath(),
                             new Range(new Position(importData.getLine_pos(), importData.getChar_pos()), new Position(importData.getLine_pos_end(), importData.getChar_pos_end())),
-                            PolyglotTreeHandler.getfilePathOfTreeHandler().get(tree));
+                            this.languageServer.workspaceManager.getPath(tree));
                 }
             }
 
@@ -416,58 +866,129 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public CompletableFuture<Either<List<CompletionItem>, CompletionList>> completion(CompletionParams completionParams) {
-        return CompletableFuture.supplyAsync(() -> {
-            this.clientLogger.logMessage("Operation '" + "text/completion");
-            ArrayList<CompletionItem> listItems = new ArrayList<>();
-            try {
-                this.checkCompletion(completionParams, listItems);
-            } catch (URISyntaxException e) {
-                throw new RuntimeException(e);
-            }
-            return Either.forLeft(listItems);
-        });
+        long start = this.languageServer.metrics.start();
+        return this.languageServer.metrics.stopWhenComplete("textDocument/completion", start, CompletableFuture.supplyAsync(() -> {
+            this.clientLogger.log(MessageType.Log, () -> "Operation '" + "text/completion");
+            CompletionList completions = this.languageServer.analysisExecutor.readTrees(() -> {
+                try {
+                    return this.checkCompletion(completionParams);
+                } catch (URISyntaxException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            return Either.forRight(completions);
+        }, this.languageServer.analysisExecutor.getRequestExecutor()));
     }
 
     /**
-     * Fill the list passed in parameters, with completions items of un-imported polyglot variables
+     * Get the completion items of un-imported polyglot variables, starting with the identifier typed at the beginning of the line
      * @param completionParams CompletionParams
-     * @param listCompletions the list to fill with completion items
-     */
-    public void checkCompletion(CompletionParams completionParams, ArrayList<CompletionItem> listCompletions) throws URISyntaxException {
-        // PROTOTYPE : only works when beginning a new line
-        if(completionParams.getPosition().getCharacter() == 0){
-            // Get the tree of current file & spot all variables export/import
-            PolyglotTreeHandler currentTree = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(completionParams.getTextDocument().getUri())));
-            if(currentTree == null) return;
+     * @return completion list, incomplete if more variables than completionMaxItems match (the client asks again when the identifier grows)
+     */
+    public CompletionList checkCompletion(CompletionParams completionParams) throws URISyntaxException {
+        CompletionList completions = new CompletionList(false, new ArrayList<>());
+        Path path = Paths.get(new URI(completionParams.getTextDocument().getUri()));
+        // PROTOTYPE : only works when beginning a new line (the import statement is inserted as a whole line)
+        String prefix = this.getLinePrefix(path, completionParams.getPosition());
+        if(prefix == null) return completions;
+        String[] importableNames;
+        String language;
+        PolyglotFileFacts currentFacts = this.languageServer.importExportIndex.getFacts(path);
+        if(currentFacts != null){
+            // Answer from the index : sorted polyglot variables exported in the programs of the file & not used by the file, maintained as the facts change
+            this.languageServer.importExportIndex.recordHit();
+            importableNames = this.languageServer.importExportIndex.getImportableNames(path);
+            if(importableNames == null) return completions;
+            language = currentFacts.language;
+        } else {
+            // File not indexed : get the tree of current file & spot all variables export/import
+            this.languageServer.importExportIndex.recordMiss();
+            PolyglotTreeHandler currentTree = this.languageServer.workspaceManager.getTree(path);
+            if(currentTree == null) return completions;
             PolyglotVariableSpotter varSpotter = new PolyglotVariableSpotter();
             for (PolyglotTreeHandler hostTree : currentTree.getHostTrees()) {
                 hostTree.apply(varSpotter);
             }
             // Create a set of all polyglot variables not imported in the current file
-            Set<String> listVarNotImported = new HashSet<String>(varSpotter.getExports().keySet());
+            HashSet<String> listVarNotImported = new HashSet<String>(varSpotter.getExports().keySet());
             for (String var : varSpotter.getExports().keySet()) {
                 if((varSpotter.getImports().containsKey(var) && varSpotter.getImports().get(var).containsKey(currentTree) && varSpotter.getImports().get(var).get(currentTree).size() > 0) || varSpotter.getExports().get(var).containsKey(currentTree)) listVarNotImported.remove(var);
             }
-            // Create one completion item for each
-            for (String var : listVarNotImported) {
-                CompletionItem completionItem = new CompletionItem();
-                completionItem.setLabel(var);
-                // Set insertText depending on the file programming language
-                switch (currentTree.getLang()){
-                    case "python":
-                        completionItem.setInsertText(var+" = polyglot.import_value(name=\""+var+"\")\r\n");
-                        break;
-                    case "js":
-                    case "javascript":
-                        completionItem.setInsertText("let "+var+" = Polyglot.import(\""+var+"\");\r\n");
-                        break;
-                }
-                // Set details of completion item
-                completionItem.setDetail("Polyglot Import "+var);
-                completionItem.setKind(CompletionItemKind.Variable);
-                listCompletions.add(completionItem);
+            importableNames = listVarNotImported.toArray(new String[0]);
+            Arrays.sort(importableNames);
+            language = currentTree.getLang();
+        }
+        List<String> names = PolyglotImportExportIndex.withPrefix(importableNames, prefix);
+        int maxItems = this.languageServer.properties != null ? this.languageServer.properties.completionMaxItems : 0;
+        if(maxItems > 0 && names.size() > maxItems){
+            names = names.subList(0, maxItems);
+            completions.setIsIncomplete(true);
+        }
+        // Create one completion item for each, their details are only computed when the client resolves them
+        for (String var : names) {
+            CompletionItem completionItem = new CompletionItem();
+            completionItem.setLabel(var);
+            // Set insertText depending on the file programming language
+            switch (language){
+                case "python":
+                    completionItem.setInsertText(var+" = polyglot.import_value(name=\""+var+"\")\r\n");
+                    break;
+                case "js":
+                case "javascript":
+                    completionItem.setInsertText("let "+var+" = Polyglot.import(\""+var+"\");\r\n");
+                    break;
             }
+            completionItem.setKind(CompletionItemKind.Variable);
+            completionItem.setData(completionParams.getTextDocument().getUri());
+            completions.getItems().add(completionItem);
         }
+        return completions;
+    }
+
+    /**
+     * LSP completionItem/resolve Request Handler : add the details of a completion item (files exporting the variable)
+     * @param unresolved completion item returned by completion, its data is the uri of the document
+     * @return completion item with its details
+     */
+    @Override
+    public CompletableFuture<CompletionItem> resolveCompletionItem(CompletionItem unresolved) {
+        long start = this.languageServer.metrics.start();
+        return this.languageServer.metrics.stopWhenComplete("completionItem/resolve", start, CompletableFuture.supplyAsync(() -> {
+            String var = unresolved.getLabel();
+            unresolved.setDetail("Polyglot Import "+var);
+            Object data = unresolved.getData();
+            String uri = data instanceof JsonPrimitive ? ((JsonPrimitive) data).getAsString() : data instanceof String ? (String) data : null;
+            if(uri == null) return unresolved;
+            try {
+                Path path = Paths.get(new URI(uri));
+                if(this.languageServer.importExportIndex.getFacts(path) == null) return unresolved;
+                TreeSet<String> exportingFiles = new TreeSet<>();
+                this.languageServer.importExportIndex.getSymbols(var, this.languageServer.importExportIndex.getHostClosure(path)).forEach((file, symbols) -> {
+                    for (PolyglotSymbol symbol : symbols) {
+                        if(symbol.kind == PolyglotSymbol.Kind.EXPORT) exportingFiles.add(file.getFileName().toString());
+                    }
+                });
+                if(!exportingFiles.isEmpty()) unresolved.setDocumentation("Exported by : " + String.join(", ", exportingFiles));
+            } catch (URISyntaxException e) {
+                System.err.println(e);
+            }
+            return unresolved;
+        }, this.languageServer.analysisExecutor.getRequestExecutor()));
+    }
+
+    /**
+     * Get the identifier typed at the beginning of a line, before a position
+     * @param path path of the document
+     * @param position position of the completion
+     * @return identifier typed ("" at the beginning of the line), null if something else is typed before the position
+     */
+    private String getLinePrefix(Path path, Position position){
+        if(position.getCharacter() == 0) return "";
+        PolyglotDocumentBuffer buffer = this.documentBuffers.get(path);
+        if(buffer == null) return null;
+        Matcher m = LINE_PREFIX.matcher(buffer.getLineTextBefore(position));
+        if(!m.matches()) return null;
+        return m.group(1) == null ? "" : m.group(1);
     }
 
     /**
@@ -481,56 +1002,116 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public CompletableFuture<Hover> hover(HoverParams params) {
+        long start = this.languageServer.metrics.start();
+        // Cancelled by the client ($/cancelRequest) : the typing visit stops before the next host tree, and the request to the language server is cancelled
+        CompletableFuture<Hover> hover = new CompletableFuture<>();
+        // The typing visit runs on the request pool, it only waits for a reparse in progress (not for a whole analysis)
+        CompletableFuture<CompletableFuture<Hover>> computation = CompletableFuture.supplyAsync(() -> this.languageServer.analysisExecutor.readTrees(() -> this.computeHover(params, hover::isCancelled)), this.languageServer.analysisExecutor.getRequestExecutor());
+        return this.languageServer.metrics.stopWhenComplete("textDocument/hover", start, forwardCancellable(computation, hover));
+    }
+
+    /**
+     * Compute the hover result of a position, the ASTs must be read-locked
+     * @param params HoverParams
+     * @param cancelled the request has been cancelled
+     * @return hover text future (null if the request has been cancelled)
+     */
+    private CompletableFuture<Hover> computeHover(HoverParams params, BooleanSupplier cancelled) {
+        if(cancelled.getAsBoolean()) return CompletableFuture.completedFuture(null);
         try{
             // Get tree, get the tree node which is hovered, and verify if it's an identifier
-            PolyglotTreeHandler tree = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri())));
+            Path path = Paths.get(new URI(params.getTextDocument().getUri()));
+            PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(path);
             PolyglotZipper zipper = new PolyglotZipper(tree, tree.getNodeAtPosition(new Pair<>(params.getPosition().getLine(), params.getPosition().getCharacter())));
             if(zipper.node != null && (zipper.getType().equals("identifier") || zipper.getType().equals("shorthand_property_identifier_pattern"))){
-                // Loop through HostTrees to make typing visit, TODO : Handle multiple results from all Host for typing feature
-                HashSet<PolyglotTreeHandler> hostTrees = tree.getHostTrees();
-                for (PolyglotTreeHandler hostTree : hostTrees) {
-                    // Make analysis for typing
-                    PolyglotTypeVisitor typeVisitor = new PolyglotTypeVisitor(zipper);
-                    hostTree.apply(typeVisitor);
-                    PolyglotTypeVisitor.TypingResult result = typeVisitor.getTypeResult();
-                    // The variable was exported directly with a raw value
-                    if(result.typeResult.equals(PolyglotTypeVisitor.TypeResultEnum.VALUETYPE)){
-                        return CompletableFuture.supplyAsync(() -> {
-                            Hover hov = getHoverObject(zipper, result.type, hostTree, hostTrees.size());
-                            return hov;
-                        });
-                        // The variable was exported with a variable
-                    } else if (result.typeResult.equals(PolyglotTypeVisitor.TypeResultEnum.EXPORTTYPE)){
-                        // Make a hover request to Language Server to get the type of the variable which was used for the export
-                        HoverParams newParams = new HoverParams();
-                        newParams.setTextDocument(new TextDocumentIdentifier(result.fileExportPath.toUri().toString()));
-                        newParams.setPosition(new Position(result.hoverLocation.component1(), result.hoverLocation.component2()));
-                        return this.languageServer.languageClientManager.hoverRequest(newParams).thenApply((h) -> {
-                            // Process the result to try to format it
-                            Pair<String, Integer> hoverInfo = getLanguageServerHoverRegex(result.fileExportPath);
-                            Hover hov = new Hover();
-                            if(hoverInfo != null){
-                                // Use regex to get the type from the hover result
-                                Pattern p = Pattern.compile(hoverInfo.component1());
-                                String text = h.getContents().toString();
-                                Matcher m = p.matcher(text);
-                                if(m.find()){
-                                    Hover hover = getHoverObject(zipper, m.group(hoverInfo.component2()).replaceAll("\\\\n", "\n"), hostTree, hostTrees.size());
-                                    return hover;
-                                }
+                // The typing visit only finds polyglot variables : skip it when the identifier isn't one of the file (according to the index)
+                PolyglotFileFacts facts = this.languageServer.importExportIndex.getFacts(path);
+                if(facts != null){
+                    this.languageServer.importExportIndex.recordHit();
+                    if(!facts.usesIdentifier(zipper.getCode())) return CompletableFuture.completedFuture(new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "")));
+                } else {
+                    this.languageServer.importExportIndex.recordMiss();
+                }
+                // The hover only changes when a file of the host closure is reparsed (the closure is only known for indexed files)
+                String cacheKey = params.getTextDocument().getUri() + "@" + params.getPosition().getLine() + ":" + params.getPosition().getCharacter();
+                Set<Path> closure = facts != null ? this.languageServer.importExportIndex.getHostClosure(path) : null;
+                if(closure != null){
+                    Hover cached = this.languageServer.hoverCache.get(cacheKey, closure);
+                    if(cached != null) return CompletableFuture.completedFuture(cached);
+                }
+                Map<Path, Long> generations = closure != null ? this.languageServer.hoverCache.snapshot(closure) : null;
+                CompletableFuture<Hover> typeHover = this.computeTypeHover(zipper, tree, cancelled);
+                return cancelWith(typeHover.thenApply(hover -> {
+                    if(generations != null) this.languageServer.hoverCache.put(cacheKey, hover, generations);
+                    return hover;
+                }), typeHover);
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+        return CompletableFuture.completedFuture(new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "")));
+    }
+
+    /**
+     * Compute the type of a polyglot variable with a typing visit of the host trees, the ASTs must be read-locked
+     * @param zipper identifier hovered
+     * @param tree AST of the file hovered
+     * @param cancelled the request has been cancelled
+     * @return hover text future (null if the request has been cancelled or the language server of the exporting file has no hover)
+     */
+    private CompletableFuture<Hover> computeTypeHover(PolyglotZipper zipper, PolyglotTreeHandler tree, BooleanSupplier cancelled) {
+        try{
+            // Loop through HostTrees to make typing visit, TODO : Handle multiple results from all Host for typing feature
+            HashSet<PolyglotTreeHandler> hostTrees = tree.getHostTrees();
+            for (PolyglotTreeHandler hostTree : hostTrees) {
+                if(cancelled.getAsBoolean()) return CompletableFuture.completedFuture(null);
+                // Make analysis for typing
+                PolyglotTypeVisitor typeVisitor = new PolyglotTypeVisitor(zipper);
+                hostTree.apply(typeVisitor);
+                PolyglotTypeVisitor.TypingResult result = typeVisitor.getTypeResult();
+                // The variable was exported directly with a raw value
+                if(result.typeResult.equals(PolyglotTypeVisitor.TypeResultEnum.VALUETYPE)){
+                    return CompletableFuture.completedFuture(getHoverObject(zipper, result.type, hostTree, hostTrees.size()));
+                    // The variable was exported with a variable
+                } else if (result.typeResult.equals(PolyglotTypeVisitor.TypeResultEnum.EXPORTTYPE)){
+                    // Make a hover request to Language Server to get the type of the variable which was used for the export
+                    HoverParams newParams = new HoverParams();
+                    newParams.setTextDocument(new TextDocumentIdentifier(result.fileExportPath.toUri().toString()));
+                    newParams.setPosition(new Position(result.hoverLocation.component1(), result.hoverLocation.component2()));
+                    // The response of the language server only changes when the exporting file is reparsed
+                    String downstreamKey = this.languageServer.hoverCache.getDownstreamKey(result.fileExportPath, newParams.getPosition());
+                    Hover downstreamHover = this.languageServer.hoverCache.getDownstream(downstreamKey);
+                    CompletableFuture<Hover> downstream = downstreamHover != null ? CompletableFuture.completedFuture(downstreamHover) : this.languageServer.languageClientManager.hoverRequest(newParams);
+                    // No language server for the exporting file : no hover (null is not cached, the language server can be started later)
+                    if(downstream == null) return CompletableFuture.completedFuture(null);
+                    return cancelWith(downstream.thenApply((h) -> {
+                        // The language server has no hover for the variable (yet) : not cached either
+                        if(h == null || h.getContents() == null) return null;
+                        if(downstreamHover == null) this.languageServer.hoverCache.putDownstream(downstreamKey, h);
+                        // Process the result to try to format it
+                        Pair<String, Integer> hoverInfo = getLanguageServerHoverRegex(result.fileExportPath);
+                        Hover hov = new Hover();
+                        if(hoverInfo != null){
+                            // Use regex to get the type from the hover result
+                            Pattern p = Pattern.compile(hoverInfo.component1());
+                            String text = h.getContents().toString();
+                            Matcher m = p.matcher(text);
+                            if(m.find()){
+                                Hover hover = getHoverObject(zipper, m.group(hoverInfo.component2()).replaceAll("\\\\n", "\n"), hostTree, hostTrees.size());
+                                return hover;
                             }
-                            // Regex didn't worked, just return the hover result from the language server
-                            hov.setContents(h.getContents());
-                            setHoverRange(zipper, hov);
-                            return hov;
-                        });
-                    }
+                        }
+                        // Regex didn't worked, just return the hover result from the language server
+                        hov.setContents(h.getContents());
+                        setHoverRange(zipper, hov);
+                        return hov;
+                    }), downstream);
                 }
             }
         } catch (Exception e) {
             System.err.println(e);
         }
-        return CompletableFuture.supplyAsync(() -> {return new Hover(new MarkupContent(MarkupKind.PLAINTEXT, ""));});
+        return CompletableFuture.completedFuture(new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "")));
     }
 
     /**
@@ -543,7 +1124,7 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     public Hover getHoverObject(PolyglotZipper nodeHovered, String type, PolyglotTreeHandler hostTree, int numberHostTrees){
         Hover hov = new Hover();
-        String text = "```typescript\nPolyglot "+nodeHovered.getCode()+" : "+type+"\n```\n"+(numberHostTrees>1 ? "(With Host : "+PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).getFileName()+") + "+(numberHostTrees-1)+" more host(s)..." : "");
+        String text = "```typescript\nPolyglot "+nodeHovered.getCode()+" : "+type+"\n```\n"+(numberHostTrees>1 ? "(With Host : "+this.languageServer.workspaceManager.getPath(hostTree).getFileName()+") + "+(numberHostTrees-1)+" more host(s)..." : "");
         hov.setContents(new MarkupContent(MarkupKind.MARKDOWN, text));
         setHoverRange(nodeHovered, hov);
         return hov;
@@ -591,9 +1172,22 @@ public class PolyglotTextDocumentService implements TextDocumentService {
      */
     @Override
     public CompletableFuture<WorkspaceEdit> rename(RenameParams params) {
+        long start = this.languageServer.metrics.start();
+        CompletableFuture<WorkspaceEdit> edit = new CompletableFuture<>();
+        // The requests to the language servers (and the files they open) are sent once the ASTs are unlocked
+        CompletableFuture<CompletableFuture<WorkspaceEdit>> computation = CompletableFuture.supplyAsync(() -> this.languageServer.analysisExecutor.readTrees(() -> this.computeRename(params)).get(), this.languageServer.analysisExecutor.getRequestExecutor());
+        return this.languageServer.metrics.stopWhenComplete("textDocument/rename", start, forwardCancellable(computation, edit));
+    }
+
+    /**
+     * Compute the edits of a rename request, the ASTs must be read-locked
+     * @param params RenameParams
+     * @return supplier of the WorkspaceEdit future, sending the requests to the language servers (to call without the ASTs lock)
+     */
+    private Supplier<CompletableFuture<WorkspaceEdit>> computeRename(RenameParams params) {
         try{
             String newName = params.getNewName();
-            PolyglotTreeHandler tree = PolyglotTreeHandler.getfilePathToTreeHandler().get(Paths.get(new URI(params.getTextDocument().getUri())));
+            PolyglotTreeHandler tree = this.languageServer.workspaceManager.getTree(Paths.get(new URI(params.getTextDocument().getUri())));
             PolyglotZipper zipper = new PolyglotZipper(tree, tree.getNodeAtPosition(new Pair<>(params.getPosition().getLine(), params.getPosition().getCharacter())));
             // Specific condition when the rename request is made on the last char of the variable name
             if((zipper.getType().equals("\"") || zipper.getType().equals("'")) && params.getPosition().getCharacter() > 0) zipper = new PolyglotZipper(tree, tree.getNodeAtPosition(new Pair<>(params.getPosition().getLine(), params.getPosition().getCharacter()-1)));
@@ -611,87 +1205,229 @@ public class PolyglotTextDocumentService implements TextDocumentService {
                 if(data_renameStringName == null && (data_renameVariable == null || !data_renameVariable.getVar_name().equals(oldName))){
                     // Can't rename a field that is not an identifier
                     if(!zipper.getType().equals("identifier")) {
-                        return CompletableFuture.supplyAsync(() -> {
-                            return null;
-                        });
+                        return () -> CompletableFuture.completedFuture(null);
                     }
                     // Return result from proper language server
                     this.clientLogger.logMessage("Rename request to none polyglot variable");
-                    return this.languageServer.languageClientManager.renameRequest(params).thenApply((w) -> {
-                        return w;
-                    });
+                    return () -> this.languageServer.languageClientManager.renameRequest(params);
                 }
 
-                /** variables that could be used to concatenate result from different language server requests later
-                 CompletableFuture<WorkspaceEdit> resultFuture = new CompletableFuture<>();
-                ArrayList<CompletableFuture<WorkspaceEdit>> futuresRenameRequests = new ArrayList<>();
-                HashMap<String, HashSet<String>> variableRenamed = new HashMap<>(); // textDocumentURI -> HashSet of variables renamed **/
-
-                // Spot the polyglot variables in the ast
-                HashSet<PolyglotTreeHandler> hostTrees = tree.getHostTrees();
-                PolyglotVariableSpotter spotter = new PolyglotVariableSpotter();
-                for (PolyglotTreeHandler hostTree : hostTrees) {
-                    hostTree.apply(spotter);
-                }
-                HashMap<PolyglotTreeHandler, ArrayList<ExportData>> variablesSpottedExp = spotter.getExports().get(oldName);
-                HashMap<PolyglotTreeHandler, ArrayList<ImportData>> variablesSpottedImp = spotter.getImports().get(oldName);
-
-                WorkspaceEdit result = new WorkspaceEdit();
                 HashMap<String, List<TextEdit>> edits = new HashMap<>();
-
-                // Create TextEdit result for each import variable spotted
-                if(variablesSpottedImp != null) variablesSpottedImp.forEach((hostTree, imports) -> {
-                    for (ImportData imp : imports) {
-                        TextEdit e = new TextEdit();
-                        e.setNewText(newName);
-                        e.setRange(new Range(new Position(imp.getVar_name_position().component1(), imp.getVar_name_position().component2()), new Position(imp.getVar_name_position().component1(), imp.getVar_name_position().component2() + imp.getVar_name().length())));
-
-                        edits.computeIfAbsent(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString(), k -> new ArrayList<>());
-                        edits.get(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString()).add(e);
-
-                        /** can be used to prepare request to others language servers to rename variables that store polyglot import or that are exported
-                        if(imp.getVar_name().equals(imp.getStorageVariable())){
-                            variableRenamed.computeIfAbsent(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString(), k -> new HashSet<>());
-                            if(!variableRenamed.get(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString()).contains(imp.getStorageVariable())){
-                                variableRenamed.get(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString()).add(imp.getStorageVariable());
-                                futuresRenameRequests.add(
-                                        this.languageServer.languageClientManager.renameRequest(
-                                                new RenameParams(
-                                                        new TextDocumentIdentifier(
-                                                                PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString()),
-                                                        new Position(imp.storageVarPosition.component1(),
-                                                                imp.storageVarPosition.component2()), newName)));
+                // Imports stored in a variable of the same name : the variable is renamed by the language server of the file (all its usages change)
+                LinkedHashMap<String, RenameParams> storageRenames = new LinkedHashMap<>(); // uri#variable -> rename request to the language server
+                Path path = this.languageServer.workspaceManager.getPath(tree);
+                if(this.languageServer.importExportIndex.getFacts(path) != null){
+                    // Create TextEdit result for each export/import of the variable indexed in the programs of the file
+                    this.languageServer.importExportIndex.recordHit();
+                    Map<Path, List<PolyglotSymbol>> symbols = this.languageServer.importExportIndex.getSymbols(oldName, this.languageServer.importExportIndex.getHostClosure(path));
+                    for (Map.Entry<Path, List<PolyglotSymbol>> entry : symbols.entrySet()) {
+                        String uri = entry.getKey().toUri().toString();
+                        for (PolyglotSymbol symbol : entry.getValue()) {
+                            // No name position : no edit (it would be placed at the start of the file)
+                            Range nameRange = symbol.getNameRange();
+                            if(nameRange != null) edits.computeIfAbsent(uri, k -> new ArrayList<>()).add(new TextEdit(nameRange, newName));
+                            if(oldName.equals(symbol.storageVariable) && symbol.storageLine >= 0){
+                                storageRenames.putIfAbsent(uri + "#" + symbol.storageVariable, new RenameParams(new TextDocumentIdentifier(uri), new Position(symbol.storageLine, symbol.storageCharacter), newName));
                             }
-                        }*/
-                    }
-                });
-
-                // Create TextEdit result for each export variable spotted
-                if(variablesSpottedExp != null) variablesSpottedExp.forEach((hostTree, exports) -> {
-                    for (ExportData exp : exports) {
-                        TextEdit e = new TextEdit();
-                        e.setNewText(newName);
-                        e.setRange(new Range(new Position(exp.getVar_name_position().component1(), exp.getVar_name_position().component2()), new Position(exp.getVar_name_position().component1(), exp.getVar_name_position().component2() + exp.getVar_name().length())));
-
-                        edits.computeIfAbsent(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString(), k -> new ArrayList<>());
-                        edits.get(PolyglotTreeHandler.getfilePathOfTreeHandler().get(hostTree).toUri().toString()).add(e);
+                        }
                     }
-                });
+                } else {
+                    this.languageServer.importExportIndex.recordMiss();
+                    this.spotRenameEdits(tree, oldName, newName, edits, storageRenames);
+                }
 
-                result.setChanges(edits);
-                return CompletableFuture.supplyAsync(() -> {
-                    return result;
-                });
+                if(storageRenames.isEmpty()) return () -> CompletableFuture.completedFuture(new WorkspaceEdit(edits));
+                return () -> this.fanOutRenames(params, edits, storageRenames.values());
             }
-            return CompletableFuture.supplyAsync(() -> {
-                return null;
-            });
+            return () -> CompletableFuture.completedFuture(null);
         } catch (Exception e){
             System.err.println(e);
-            return CompletableFuture.supplyAsync(() -> {
-                return null;
+            return () -> CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Send the renames of the variables storing the polyglot variable to their language servers concurrently, and merge their edits with the polyglot edits as they arrive.
+     * At the deadline, the client gets the edits received so far : the requests still running are cancelled, and reported in the $/progress end message (or in the logs).
+     * @param params RenameParams of the client (its workDoneToken is used for the progress)
+     * @param polyglotEdits edits of the polyglot exports & imports, they take precedence over the overlapping edits of the language servers
+     * @param downstreamRenames rename requests to the language servers
+     * @return WorkspaceEdit future
+     */
+    private CompletableFuture<WorkspaceEdit> fanOutRenames(RenameParams params, HashMap<String, List<TextEdit>> polyglotEdits, Collection<RenameParams> downstreamRenames){
+        long deadline = this.languageServer.properties != null ? this.languageServer.properties.renameDeadline : 2000;
+        Either<String, Integer> token = params.getWorkDoneToken();
+        HashMap<String, List<TextEdit>> merged = new HashMap<>();
+        mergeEdits(merged, polyglotEdits);
+        CompletableFuture<WorkspaceEdit> result = new CompletableFuture<>();
+        LinkedHashMap<RenameParams, CompletableFuture<WorkspaceEdit>> requests = new LinkedHashMap<>();
+        for (RenameParams downstreamRename : downstreamRenames) {
+            try {
+                this.sendDidOpenRequestToLanguageServers(Paths.get(new URI(downstreamRename.getTextDocument().getUri())));
+            } catch (IOException | URISyntaxException e) {
+                System.err.println(e);
+            }
+            CompletableFuture<WorkspaceEdit> request = this.languageServer.languageClientManager.renameRequest(downstreamRename);
+            if(request != null) requests.put(downstreamRename, request);
+        }
+        int total = requests.size();
+        this.notifyProgress(token, new WorkDoneProgressBegin(), "Renaming in " + total + " file(s)", 0);
+
+        // Complete the result with the edits merged so far (when every language server answered, or at the deadline)
+        Runnable finish = () -> {
+            ArrayList<String> missing = new ArrayList<>();
+            synchronized (merged) {
+                if(result.isDone()) return;
+                requests.forEach((downstreamRename, request) -> {
+                    if(!request.isDone() || request.isCompletedExceptionally()) missing.add(downstreamRename.getTextDocument().getUri());
+                });
+                HashMap<String, List<TextEdit>> changes = new HashMap<>();
+                merged.forEach((uri, edits) -> changes.put(uri, new ArrayList<>(edits)));
+                result.complete(new WorkspaceEdit(changes));
+            }
+            requests.values().forEach(request -> request.cancel(true));
+            String message = missing.isEmpty() ? "Renamed in " + total + " file(s)" : "Partial rename : no answer in time for " + String.join(", ", missing);
+            if(!missing.isEmpty()) this.clientLogger.log(MessageType.Warning, () -> message);
+            this.notifyProgress(token, new WorkDoneProgressEnd(), message, 100);
+        };
+        AtomicInteger answered = new AtomicInteger();
+        for (CompletableFuture<WorkspaceEdit> request : requests.values()) {
+            request.whenComplete((edit, error) -> {
+                synchronized (merged) {
+                    if(result.isDone()) return;
+                    if(edit != null) mergeEdits(merged, getTextEdits(edit));
+                }
+                int done = answered.incrementAndGet();
+                if(done == total) finish.run();
+                else this.notifyProgress(token, new WorkDoneProgressReport(), done + "/" + total + " file(s) renamed", done * 100 / total);
             });
         }
+        if(total == 0) finish.run();
+        else CompletableFuture.delayedExecutor(deadline, TimeUnit.MILLISECONDS).execute(finish);
+        // Cancelled by the client : the requests still running are cancelled as well
+        result.whenComplete((edit, error) -> {
+            if(result.isCancelled()) requests.values().forEach(request -> request.cancel(true));
+        });
+        return result;
+    }
+
+    /**
+     * Send a $/progress notification of a rename to the client (nothing is sent if the client didn't give a token)
+     * @param token workDoneToken of the request, null if the client doesn't want progress
+     * @param notification begin, report or end notification to fill
+     * @param message message of the notification
+     * @param percentage progress of the rename (0-100)
+     */
+    private void notifyProgress(Either<String, Integer> token, WorkDoneProgressNotification notification, String message, int percentage){
+        if(token == null || this.languageServer.languageClient == null) return;
+        if(notification instanceof WorkDoneProgressBegin){
+            ((WorkDoneProgressBegin) notification).setTitle("Polyglot rename");
+            ((WorkDoneProgressBegin) notification).setMessage(message);
+            ((WorkDoneProgressBegin) notification).setPercentage(percentage);
+        } else if(notification instanceof WorkDoneProgressReport){
+            ((WorkDoneProgressReport) notification).setMessage(message);
+            ((WorkDoneProgressReport) notification).setPercentage(percentage);
+        } else if(notification instanceof WorkDoneProgressEnd){
+            ((WorkDoneProgressEnd) notification).setMessage(message);
+        }
+        this.languageServer.languageClient.notifyProgress(new ProgressParams(token, Either.forLeft(notification)));
+    }
+
+    /**
+     * Get the text edits of a WorkspaceEdit, sent as changes or as document changes
+     * @param edit WorkspaceEdit of a language server
+     * @return map of file uri -> edits
+     */
+    private static Map<String, List<TextEdit>> getTextEdits(WorkspaceEdit edit){
+        HashMap<String, List<TextEdit>> edits = new HashMap<>();
+        if(edit.getChanges() != null) edits.putAll(edit.getChanges());
+        if(edit.getDocumentChanges() != null){
+            for (Either<TextDocumentEdit, ResourceOperation> documentChange : edit.getDocumentChanges()) {
+                if(documentChange.isLeft()) edits.computeIfAbsent(documentChange.getLeft().getTextDocument().getUri(), k -> new ArrayList<>()).addAll(documentChange.getLeft().getEdits());
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Merge text edits into a map of edits, the edits overlapping an edit already merged are dropped (same edit sent twice, or conflicting edits)
+     * @param merged map of file uri -> edits merged
+     * @param edits map of file uri -> edits to merge
+     */
+    private static void mergeEdits(Map<String, List<TextEdit>> merged, Map<String, List<TextEdit>> edits){
+        edits.forEach((uri, fileEdits) -> {
+            List<TextEdit> mergedEdits = merged.computeIfAbsent(uri, k -> new ArrayList<>());
+            for (TextEdit edit : fileEdits) {
+                boolean overlaps = false;
+                for (TextEdit mergedEdit : mergedEdits) {
+                    if(comparePositions(edit.getRange().getStart(), mergedEdit.getRange().getEnd()) < 0 && comparePositions(mergedEdit.getRange().getStart(), edit.getRange().getEnd()) < 0
+                            || edit.getRange().equals(mergedEdit.getRange())){
+                        overlaps = true;
+                        break;
+                    }
+                }
+                if(!overlaps) mergedEdits.add(edit);
+            }
+        });
+    }
+
+    /**
+     * Compare two positions of a document
+     * @param a first position
+     * @param b second position
+     * @return negative if a is before b, 0 if they are equal, positive if a is after b
+     */
+    private static int comparePositions(Position a, Position b){
+        return a.getLine() != b.getLine() ? Integer.compare(a.getLine(), b.getLine()) : Integer.compare(a.getCharacter(), b.getCharacter());
+    }
+
+    /**
+     * Fill the edits of a rename request by spotting the polyglot variables in the host trees of a file (used when the file is not indexed)
+     * @param tree AST of the file where the rename is made
+     * @param oldName name of the polyglot variable renamed
+     * @param newName new name of the polyglot variable
+     * @param edits map of file uri -> edits to fill
+     * @param storageRenames map of uri#variable -> rename requests to fill, for the imports stored in a variable of the same name
+     */
+    private void spotRenameEdits(PolyglotTreeHandler tree, String oldName, String newName, HashMap<String, List<TextEdit>> edits, Map<String, RenameParams> storageRenames){
+        // Spot the polyglot variables in the ast
+        HashSet<PolyglotTreeHandler> hostTrees = tree.getHostTrees();
+        PolyglotVariableSpotter spotter = new PolyglotVariableSpotter();
+        for (PolyglotTreeHandler hostTree : hostTrees) {
+            hostTree.apply(spotter);
+        }
+        HashMap<PolyglotTreeHandler, ArrayList<ExportData>> variablesSpottedExp = spotter.getExports().get(oldName);
+        HashMap<PolyglotTreeHandler, ArrayList<ImportData>> variablesSpottedImp = spotter.getImports().get(oldName);
+
+        // Create TextEdit result for each import variable spotted
+        if(variablesSpottedImp != null) variablesSpottedImp.forEach((hostTree, imports) -> {
+            for (ImportData imp : imports) {
+                TextEdit e = new TextEdit();
+                e.setNewText(newName);
+                e.setRange(new Range(new Position(imp.getVar_name_position().component1(), imp.getVar_name_position().component2()), new Position(imp.getVar_name_position().component1(), imp.getVar_name_position().component2() + imp.getVar_name().length())));
+
+                String uri = this.languageServer.workspaceManager.getPath(hostTree).toUri().toString();
+                edits.computeIfAbsent(uri, k -> new ArrayList<>());
+                edits.get(uri).add(e);
+
+                // Prepare the request to the language server renaming the variable storing the polyglot import
+                if(imp.getVar_name().equals(imp.getStorageVariable()) && imp.storageVarPosition != null){
+                    storageRenames.putIfAbsent(uri + "#" + imp.getStorageVariable(), new RenameParams(new TextDocumentIdentifier(uri), new Position(imp.storageVarPosition.component1(), imp.storageVarPosition.component2()), newName));
+                }
+            }
+        });
+
+        // Create TextEdit result for each export variable spotted
+        if(variablesSpottedExp != null) variablesSpottedExp.forEach((hostTree, exports) -> {
+            for (ExportData exp : exports) {
+                TextEdit e = new TextEdit();
+                e.setNewText(newName);
+                e.setRange(new Range(new Position(exp.getVar_name_position().component1(), exp.getVar_name_position().component2()), new Position(exp.getVar_name_position().component1(), exp.getVar_name_position().component2() + exp.getVar_name().length())));
+
+                edits.computeIfAbsent(this.languageServer.workspaceManager.getPath(hostTree).toUri().toString(), k -> new ArrayList<>());
+                edits.get(this.languageServer.workspaceManager.getPath(hostTree).toUri().toString()).add(e);
+            }
+        });
     }
 
     /**
@@ -770,23 +1506,66 @@ public class PolyglotTextDocumentService implements TextDocumentService {
     }
 
     /**
-     * LSP diagnostic Request Handler
+     * ################################################## UTILS ########################################################
      */
-    @Override
-    public CompletableFuture<DocumentDiagnosticReport> diagnostic(DocumentDiagnosticParams params) {
-        return TextDocumentService.super.diagnostic(params);
+
+    /**
+     * Complete a request future with the result of an asynchronous computation, and cancel the computation when the request is cancelled :
+     * a computation not started yet never runs, and the future it returned (a request to a language server) is cancelled
+     * @param computation computation of the result future
+     * @param result future of the request, returned to the client
+     * @return the result future
+     */
+    private static <T> CompletableFuture<T> forwardCancellable(CompletableFuture<CompletableFuture<T>> computation, CompletableFuture<T> result){
+        computation.whenComplete((inner, e) -> {
+            if(e != null || inner == null){
+                if(e != null) result.completeExceptionally(e);
+                else result.complete(null);
+                return;
+            }
+            inner.whenComplete((value, error) -> {
+                if(error != null) result.completeExceptionally(error);
+                else result.complete(value);
+            });
+            result.whenComplete((value, error) -> {
+                if(result.isCancelled()) inner.cancel(true);
+            });
+        });
+        result.whenComplete((value, error) -> {
+            if(result.isCancelled()) computation.cancel(true);
+        });
+        return result;
     }
 
     /**
-     * ################################################## UTILS ########################################################
+     * Cancel a future when a future derived from it (thenApply...) is cancelled, cancelling a derived future doesn't reach its source otherwise
+     * @param derived future derived from the source
+     * @param source future to cancel along with the derived future
+     * @return the derived future
+     */
+    private static <T> CompletableFuture<T> cancelWith(CompletableFuture<T> derived, CompletableFuture<?> source){
+        derived.whenComplete((value, error) -> {
+            if(derived.isCancelled()) source.cancel(true);
+        });
+        return derived;
+    }
+
+    /**
+     * Get the programming language of a file from its extension
+     * @param path path of the file
+     * @return language of the file, "none" if the file isn't handled by the server
      */
+    public static String getLanguageFromExtension(Path path){
+        String[] splitPath = path.toString().split("[.]", 0);
+        return getLanguageFromExtension(splitPath[splitPath.length-1]);
+    }
 
     /**
      * Return programming language name from the file extension
      * @param extension file extension
      * @return programming language name of the file, "none" if not found
      */
-    private String getLanguageFromExtension(String extension){
+    private static String getLanguageFromExtension(String extension){
         switch (extension){
             case "js":
                 return "javascript";
@@ -0,0 +1,91 @@
+import com.example.polyglotast.PolyglotTreeHandler;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PolyglotWorkspace {
+
+    private final Path root; // Root folder of the workspace (null for the workspace of the files outside every folder)
+    private final ConcurrentHashMap<Path, PolyglotTreeHandler> pathToTree; // File path -> AST of the file
+    private final ConcurrentHashMap<PolyglotTreeHandler, Path> treeToPath; // AST -> file path parsed into the AST
+
+    public PolyglotWorkspace(Path root){
+        this.root = root;
+        this.pathToTree = new ConcurrentHashMap<>();
+        this.treeToPath = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the root folder of the workspace
+     * @return root folder, null for the workspace of the files outside every folder
+     */
+    public Path getRoot(){
+        return this.root;
+    }
+
+    /**
+     * Verify if a file belongs to the folder of the workspace
+     * @param path path of the file
+     * @return the file is inside the root folder (always true for the workspace without root)
+     */
+    public boolean isInside(Path path){
+        return this.root == null || path.startsWith(this.root);
+    }
+
+    /**
+     * Register the AST of a file (replace the previous AST of the file)
+     * @param path path of the file
+     * @param tree AST of the file
+     */
+    public void register(Path path, PolyglotTreeHandler tree){
+        PolyglotTreeHandler previous = this.pathToTree.put(path, tree);
+        if(previous != null && previous != tree) this.treeToPath.remove(previous, path);
+        this.treeToPath.put(tree, path);
+    }
+
+    /**
+     * Remove the AST of a file
+     * @param path path of the file
+     */
+    public void remove(Path path){
+        PolyglotTreeHandler previous = this.pathToTree.remove(path);
+        if(previous != null) this.treeToPath.remove(previous, path);
+    }
+
+    /**
+     * Get the AST of a file
+     * @param path path of the file
+     * @return the AST of the file, null if the file has not been parsed
+     */
+    public PolyglotTreeHandler getTree(Path path){
+        return this.pathToTree.get(path);
+    }
+
+    /**
+     * Get the file path of an AST
+     * @param tree AST
+     * @return path of the file parsed into the AST, null if the AST is not in this workspace
+     */
+    public Path getPath(PolyglotTreeHandler tree){
+        return this.treeToPath.get(tree);
+    }
+
+    /**
+     * Verify if a file has been parsed
+     * @param path path of the file
+     * @return the file has an AST in this workspace
+     */
+    public boolean containsPath(Path path){
+        return this.pathToTree.containsKey(path);
+    }
+
+    /**
+     * Get the paths of all the files parsed
+     * @return unmodifiable (live) view of the paths
+     */
+    public Set<Path> getPaths(){
+        return Collections.unmodifiableSet(this.pathToTree.keySet());
+    }
+}
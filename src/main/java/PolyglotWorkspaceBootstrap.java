@@ -0,0 +1,333 @@
+import org.eclipse.lsp4j.ProgressParams;
+import org.eclipse.lsp4j.WorkDoneProgressBegin;
+import org.eclipse.lsp4j.WorkDoneProgressCreateParams;
+import org.eclipse.lsp4j.WorkDoneProgressEnd;
+import org.eclipse.lsp4j.WorkDoneProgressNotification;
+import org.eclipse.lsp4j.WorkDoneProgressReport;
+import org.eclipse.lsp4j.WindowClientCapabilities;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class PolyglotWorkspaceBootstrap {
+
+    private static final int PARSE_BATCH_SIZE = 16; // Number of files parsed by each analysis task (analyses of the opened documents run between two batches)
+    private static final int READ_TASK_THRESHOLD = 32; // Number of files under which a read task is not split anymore
+    private static final long SUBMIT_RETRY_DELAY = 50; // Delay (ms) before submitting again a task rejected by the full analysis queue
+
+    private final PolyglotLanguageServer languageServer; // Reference to the Polyglot Language Server
+    private final PolyglotTextDocumentService textDocumentService; // Text Document Service parsing the files & publishing their diagnostics
+    private final LSClientLogger clientLogger; // Reference to LSClient Logger to print message to the client
+
+    public PolyglotWorkspaceBootstrap(PolyglotLanguageServer languageServer, PolyglotTextDocumentService textDocumentService){
+        this.languageServer = languageServer;
+        this.textDocumentService = textDocumentService;
+        this.clientLogger = LSClientLogger.getInstance();
+    }
+
+    /**
+     * Index the workspace folders in background : requests arriving meanwhile are served from the ASTs already built
+     * @param roots root folders of the workspace
+     * @return future completed with the number of files parsed
+     */
+    public CompletableFuture<Integer> start(Collection<Path> roots){
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                future.complete(this.run(roots));
+            } catch (Exception e) {
+                System.err.println(e);
+                future.completeExceptionally(e);
+            }
+        }, "polyglot-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Walk the workspace folders, read & filter the files in parallel, then parse them on the analysis executor
+     * @param roots root folders of the workspace
+     * @return number of files parsed
+     */
+    private int run(Collection<Path> roots) throws IOException, InterruptedException {
+        PolyglotLanguageServerProperties properties = this.languageServer.properties;
+        String token = "polyglot-bootstrap-" + UUID.randomUUID();
+        boolean progress = this.createProgress(token);
+        if(progress) this.notifyProgress(token, begin("Indexing polyglot workspace"));
+        int parsed = 0;
+        try {
+            // Walk the folders (the ignored directories are never entered)
+            ArrayList<Path> candidates = new ArrayList<>();
+            for (Path root : roots) {
+                this.walk(root, properties.bootstrapIgnoreGlobs, candidates);
+            }
+
+            // Read & filter the files across a fork-join pool, the files whose content is in the facts cache won't be parsed
+            int parallelism = properties.bootstrapParallelism > 0 ? properties.bootstrapParallelism : Runtime.getRuntime().availableProcessors();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ReadResult read;
+            try {
+                read = pool.invoke(new ReadTask(candidates, 0, candidates.size(), properties.bootstrapMaxFileSize, this.languageServer.contentStore, this.languageServer.factsCache));
+            } finally {
+                pool.shutdown();
+            }
+            List<Path> files = read.toParse;
+            this.clientLogger.logMessage("Workspace bootstrap : " + files.size() + " file(s) to parse, " + read.cached.size() + " file(s) cached (" + candidates.size() + " found)");
+            if(!read.cached.isEmpty()){
+                this.runAnalysis(() -> read.cached.forEach(this.textDocumentService::bootstrapFacts));
+            }
+
+            // The ASTs register themselves in static maps which are not thread-safe : parsing is serialized on the analysis executor, by batches
+            for (int start = 0; start < files.size(); start += PARSE_BATCH_SIZE) {
+                List<Path> batch = files.subList(start, Math.min(files.size(), start + PARSE_BATCH_SIZE));
+                this.runAnalysis(() -> {
+                    for (Path path : batch) {
+                        try {
+                            this.textDocumentService.bootstrapTree(path);
+                        } catch (Exception e) {
+                            System.err.println(e);
+                        }
+                    }
+                });
+                parsed += batch.size();
+                if(progress) this.notifyProgress(token, report(parsed + "/" + files.size() + " files", parsed * 100 / files.size()));
+            }
+            // Check the diagnostics of the whole workspace once every file is parsed
+            this.runAnalysis(() -> this.textDocumentService.checkBootstrappedTrees(files));
+        } finally {
+            if(progress) this.notifyProgress(token, end(parsed + " files indexed"));
+            this.clientLogger.logMessage("Workspace bootstrap done : " + parsed + " file(s) parsed");
+        }
+        return parsed;
+    }
+
+    /**
+     * Run a task on the analysis executor and wait for it. The bootstrap only queues one task at a time, so the analyses of the
+     * opened documents always find room in the bounded queue (and run between two batches). The submission is retried while the queue is full.
+     * @param task task to run
+     */
+    private void runAnalysis(Runnable task) throws InterruptedException {
+        PolyglotAnalysisExecutor analysisExecutor = this.languageServer.analysisExecutor;
+        CompletableFuture<Void> future = null;
+        while(future == null){
+            try {
+                future = CompletableFuture.runAsync(task, analysisExecutor.getAnalysisExecutor());
+            } catch (RejectedExecutionException e) {
+                if(analysisExecutor.isShutdown()) throw e;
+                Thread.sleep(SUBMIT_RETRY_DELAY);
+            }
+        }
+        // A task dropped by the shutdown of the pool never completes
+        while(true){
+            try {
+                future.get(SUBMIT_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                return;
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (TimeoutException e) {
+                if(analysisExecutor.isShutdown() && !future.isDone()) throw new RejectedExecutionException("Analysis executor stopped");
+            }
+        }
+    }
+
+    /**
+     * Collect the files handled by the server in a folder
+     * @param root folder to walk
+     * @param ignoreGlobs globs (relative to the folder, or of the name alone) of the files & directories to ignore
+     * @param candidates list to fill with the files found
+     */
+    private void walk(Path root, List<String> ignoreGlobs, ArrayList<Path> candidates) throws IOException {
+        if(!Files.isDirectory(root)) return;
+        ArrayList<PathMatcher> matchers = new ArrayList<>();
+        if(ignoreGlobs != null) for (String glob : ignoreGlobs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(root) && isIgnored(root.relativize(dir), matchers) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(attrs.isRegularFile() && !isIgnored(root.relativize(file), matchers) && !PolyglotTextDocumentService.getLanguageFromExtension(file).equals("none")){
+                    candidates.add(file.toAbsolutePath());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Unreadable file or directory : skipped
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Verify if a path (or its name alone) matches one of the ignore globs
+     * @param relativePath path relative to the workspace folder
+     * @param matchers matchers of the ignore globs
+     * @return the path is ignored
+     */
+    private static boolean isIgnored(Path relativePath, List<PathMatcher> matchers){
+        for (PathMatcher matcher : matchers) {
+            if(matcher.matches(relativePath) || (relativePath.getFileName() != null && matcher.matches(relativePath.getFileName()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ask the client to create a progress token, if it supports server initiated progress
+     * @param token token of the progress
+     * @return the progress can be reported with this token
+     */
+    private boolean createProgress(String token){
+        if(this.languageServer.languageClient == null || this.languageServer.initializationParams == null) return false;
+        WindowClientCapabilities window = this.languageServer.initializationParams.getCapabilities() != null ? this.languageServer.initializationParams.getCapabilities().getWindow() : null;
+        if(window == null || !Boolean.TRUE.equals(window.getWorkDoneProgress())) return false;
+        try {
+            this.languageServer.languageClient.createProgress(new WorkDoneProgressCreateParams(Either.forLeft(token))).get(5, TimeUnit.SECONDS);
+            return true;
+        } catch (Exception e) {
+            System.err.println(e);
+            return false;
+        }
+    }
+
+    /**
+     * Send a $/progress notification to the client
+     * @param token token of the progress
+     * @param notification begin, report or end notification
+     */
+    private void notifyProgress(String token, WorkDoneProgressNotification notification){
+        this.languageServer.languageClient.notifyProgress(new ProgressParams(Either.forLeft(token), Either.forLeft(notification)));
+    }
+
+    /**
+     * Create the begin notification of a progress
+     * @param title title of the progress
+     * @return begin notification
+     */
+    private static WorkDoneProgressBegin begin(String title){
+        WorkDoneProgressBegin begin = new WorkDoneProgressBegin();
+        begin.setTitle(title);
+        begin.setPercentage(0);
+        begin.setCancellable(false);
+        return begin;
+    }
+
+    /**
+     * Create a report notification of a progress
+     * @param message message of the report
+     * @param percentage percentage done
+     * @return report notification
+     */
+    private static WorkDoneProgressReport report(String message, int percentage){
+        WorkDoneProgressReport report = new WorkDoneProgressReport();
+        report.setMessage(message);
+        report.setPercentage(percentage);
+        return report;
+    }
+
+    /**
+     * Create the end notification of a progress
+     * @param message final message
+     * @return end notification
+     */
+    private static WorkDoneProgressEnd end(String message){
+        WorkDoneProgressEnd end = new WorkDoneProgressEnd();
+        end.setMessage(message);
+        return end;
+    }
+
+    private static class ReadResult {
+        final ArrayList<Path> toParse = new ArrayList<>(); // Files to parse, in the walk order
+        final LinkedHashMap<Path, PolyglotFileFacts> cached = new LinkedHashMap<>(); // Files whose facts are in the facts cache
+    }
+
+    private static class ReadTask extends RecursiveTask<ReadResult> {
+        private final List<Path> candidates; // Files found by the walk
+        private final int start; // First file of the task (inclusive)
+        private final int end; // Last file of the task (exclusive)
+        private final long maxFileSize; // Files bigger than this size (in bytes) are not parsed
+        private final PolyglotContentStore contentStore; // Store of the files content (the content read is reused to open the files in the extern Language Servers)
+        private final PolyglotFactsCache factsCache; // Cache of the facts of each file content (null if disabled)
+
+        ReadTask(List<Path> candidates, int start, int end, long maxFileSize, PolyglotContentStore contentStore, PolyglotFactsCache factsCache){
+            this.candidates = candidates;
+            this.start = start;
+            this.end = end;
+            this.maxFileSize = maxFileSize;
+            this.contentStore = contentStore;
+            this.factsCache = factsCache;
+        }
+
+        /**
+         * Read the files of the task (which also loads them in the OS cache before the parser reads them), keep the parsable ones and look up their facts in the cache
+         * @return files to parse & cached facts, in the walk order
+         */
+        @Override
+        protected ReadResult compute(){
+            if(this.end - this.start > READ_TASK_THRESHOLD){
+                int middle = (this.start + this.end) >>> 1;
+                ReadTask left = new ReadTask(this.candidates, this.start, middle, this.maxFileSize, this.contentStore, this.factsCache);
+                left.fork();
+                ReadResult right = new ReadTask(this.candidates, middle, this.end, this.maxFileSize, this.contentStore, this.factsCache).compute();
+                ReadResult result = left.join();
+                result.toParse.addAll(right.toParse);
+                result.cached.putAll(right.cached);
+                return result;
+            }
+            ReadResult result = new ReadResult();
+            for (int i = this.start; i < this.end; i++) {
+                Path path = this.candidates.get(i);
+                try {
+                    if(this.maxFileSize > 0 && Files.size(path) > this.maxFileSize) continue;
+                    ByteBuffer content = this.contentStore.getBytes(path);
+                    if(isBinary(content)) continue;
+                    PolyglotFileFacts facts = this.factsCache != null ? this.factsCache.get(path, content) : null;
+                    if(facts != null) result.cached.put(path, facts);
+                    else result.toParse.add(path);
+                } catch (IOException e) {
+                    // Unreadable file : not parsed
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Verify if a file content is binary (generated or minified files with NUL bytes can't be parsed)
+         * @param content content of the file
+         * @return the content contains a NUL byte
+         */
+        private static boolean isBinary(ByteBuffer content){
+            for (int i = content.position(); i < content.limit(); i++) {
+                if(content.get(i) == 0) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import com.example.polyglotast.PolyglotTreeHandler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PolyglotWorkspaceManager {
+
+    private volatile List<PolyglotWorkspace> workspaces; // Workspaces of the folders, deepest root first (nested folders have their own workspace), immutable : replaced as a whole when a folder is added or removed
+    private final PolyglotWorkspace defaultWorkspace; // Workspace of the files outside every folder
+
+    public PolyglotWorkspaceManager(){
+        this.workspaces = List.of();
+        this.defaultWorkspace = new PolyglotWorkspace(null);
+    }
+
+    /**
+     * Add the workspace of a folder (nothing is done if the folder already has a workspace).
+     * The files already parsed are copied to the new workspace before it is published, the lookups never miss them (the ASTs should be write-locked)
+     * @param root root folder of the workspace
+     * @return the workspace of the folder
+     */
+    public synchronized PolyglotWorkspace addWorkspace(Path root){
+        for (PolyglotWorkspace workspace : this.workspaces) {
+            if(workspace.getRoot().equals(root)) return workspace;
+        }
+        PolyglotWorkspace workspace = new PolyglotWorkspace(root);
+        // The files of the new folder already parsed move to its workspace (if it's deeper than their current one)
+        HashMap<Path, PolyglotWorkspace> moved = new HashMap<>();
+        for (PolyglotWorkspace other : this.getAllWorkspaces()) {
+            for (Path path : new ArrayList<>(other.getPaths())) {
+                if(workspace.isInside(path) && (other.getRoot() == null || root.startsWith(other.getRoot()))){
+                    workspace.register(path, other.getTree(path));
+                    moved.put(path, other);
+                }
+            }
+        }
+        ArrayList<PolyglotWorkspace> sorted = new ArrayList<>(this.workspaces);
+        sorted.add(workspace);
+        sorted.sort(Comparator.comparingInt((PolyglotWorkspace w) -> w.getRoot().getNameCount()).reversed());
+        this.workspaces = List.copyOf(sorted);
+        // The files now resolve to the new workspace : the previous ones can forget them
+        moved.forEach((path, other) -> other.remove(path));
+        return workspace;
+    }
+
+    /**
+     * Remove the workspace of a folder, its ASTs are dropped (the files also inside another folder move to the workspace of this folder).
+     * The files moved are registered in their new workspace before the removal is published (the ASTs should be write-locked)
+     * @param root root folder of the workspace
+     * @return paths of the files whose ASTs have been dropped
+     */
+    public synchronized Set<Path> removeWorkspace(Path root){
+        HashSet<Path> dropped = new HashSet<>();
+        PolyglotWorkspace removed = null;
+        ArrayList<PolyglotWorkspace> remaining = new ArrayList<>();
+        for (PolyglotWorkspace workspace : this.workspaces) {
+            if(workspace.getRoot().equals(root)) removed = workspace;
+            else remaining.add(workspace);
+        }
+        if(removed == null) return dropped;
+        for (Path path : new ArrayList<>(removed.getPaths())) {
+            PolyglotTreeHandler tree = removed.getTree(path);
+            PolyglotWorkspace workspace = this.getWorkspace(path, remaining);
+            if(workspace != this.defaultWorkspace && tree != null) workspace.register(path, tree);
+            else dropped.add(path);
+        }
+        this.workspaces = List.copyOf(remaining);
+        for (Path path : new ArrayList<>(removed.getPaths())) {
+            removed.remove(path);
+        }
+        return dropped;
+    }
+
+    /**
+     * Get the workspace of a file : the workspace of the deepest folder containing it
+     * @param path path of the file
+     * @return workspace of the file (the default workspace if no folder contains it)
+     */
+    public PolyglotWorkspace getWorkspace(Path path){
+        return this.getWorkspace(path, this.workspaces);
+    }
+
+    /**
+     * Get the workspace of a file among a list of workspaces
+     * @param path path of the file
+     * @param workspaces workspaces of the folders, deepest root first
+     * @return workspace of the file (the default workspace if no folder contains it)
+     */
+    private PolyglotWorkspace getWorkspace(Path path, List<PolyglotWorkspace> workspaces){
+        for (PolyglotWorkspace workspace : workspaces) {
+            if(workspace.isInside(path)) return workspace;
+        }
+        return this.defaultWorkspace;
+    }
+
+    /**
+     * Get every workspace
+     * @return workspaces of the folders, then the default workspace
+     */
+    public List<PolyglotWorkspace> getAllWorkspaces(){
+        ArrayList<PolyglotWorkspace> all = new ArrayList<>(this.workspaces);
+        all.add(this.defaultWorkspace);
+        return all;
+    }
+
+    /**
+     * Register the AST of a file in its workspace
+     * @param path path of the file
+     * @param tree AST of the file
+     */
+    public void register(Path path, PolyglotTreeHandler tree){
+        this.getWorkspace(path).register(path, tree);
+    }
+
+    /**
+     * Remove the AST of a file from its workspace
+     * @param path path of the file
+     */
+    public void remove(Path path){
+        this.getWorkspace(path).remove(path);
+    }
+
+    /**
+     * Get the AST of a file
+     * @param path path of the file
+     * @return the AST of the file, null if the file has not been parsed
+     */
+    public PolyglotTreeHandler getTree(Path path){
+        List<PolyglotWorkspace> workspaces;
+        PolyglotTreeHandler tree;
+        // A file moved by a folder change is removed from its previous workspace after the new list is published : retry a miss if the list changed meanwhile
+        do {
+            workspaces = this.workspaces;
+            tree = this.getWorkspace(path, workspaces).getTree(path);
+        } while(tree == null && workspaces != this.workspaces);
+        return tree;
+    }
+
+    /**
+     * Get the file path of an AST
+     * @param tree AST
+     * @return path of the file parsed into the AST, null if unknown
+     */
+    public Path getPath(PolyglotTreeHandler tree){
+        List<PolyglotWorkspace> workspaces;
+        Path path;
+        do {
+            workspaces = this.workspaces;
+            path = this.getPath(tree, workspaces);
+        } while(path == null && workspaces != this.workspaces);
+        return path;
+    }
+
+    /**
+     * Get the file path of an AST among a list of workspaces
+     * @param tree AST
+     * @param workspaces workspaces of the folders
+     * @return path of the file parsed into the AST, null if unknown
+     */
+    private Path getPath(PolyglotTreeHandler tree, List<PolyglotWorkspace> workspaces){
+        for (PolyglotWorkspace workspace : workspaces) {
+            Path path = workspace.getPath(tree);
+            if(path != null) return path;
+        }
+        return this.defaultWorkspace.getPath(tree);
+    }
+
+    /**
+     * Verify if a file has been parsed
+     * @param path path of the file
+     * @return the file has an AST
+     */
+    public boolean containsPath(Path path){
+        List<PolyglotWorkspace> workspaces;
+        boolean contains;
+        do {
+            workspaces = this.workspaces;
+            contains = this.getWorkspace(path, workspaces).containsPath(path);
+        } while(!contains && workspaces != this.workspaces);
+        return contains;
+    }
+}
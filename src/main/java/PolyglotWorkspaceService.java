@@ -1,6 +1,13 @@
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.services.WorkspaceService;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public class PolyglotWorkspaceService implements WorkspaceService {
 
     private PolyglotLanguageServer languageServer; // Reference to the Polyglot Language Server
@@ -17,8 +24,45 @@ public class PolyglotWorkspaceService implements WorkspaceService {
      */
     @Override
     public void didRenameFiles(RenameFilesParams params) {
-        this.clientLogger.logMessage("Operation 'workspace/didRenameFiles' Ack");
-        this.languageServer.languageClientManager.didRenameFiles(params);
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didRenameFiles' Ack");
+        List<FileRename> moved = this.languageServer.languageClientManager.didRenameFiles(params);
+        ((PolyglotTextDocumentService) this.languageServer.getTextDocumentService()).renameExternDocuments(params, moved);
+        this.languageServer.metrics.stop("workspace/didRenameFiles", start);
+    }
+
+    /**
+     * LSP workspace diagnostic Request Handler (pull diagnostics)
+     * @param params WorkspaceDiagnosticParams
+     * @return diagnostics of each file, unchanged reports for the files having the previous result id
+     */
+    @Override
+    public CompletableFuture<WorkspaceDiagnosticReport> diagnostic(WorkspaceDiagnosticParams params) {
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/diagnostic' Ack");
+        PolyglotTextDocumentService textDocumentService = (PolyglotTextDocumentService) this.languageServer.getTextDocumentService();
+        return this.languageServer.metrics.stopWhenComplete("workspace/diagnostic", start, textDocumentService.workspaceDiagnostic(params));
+    }
+
+    /**
+     * LSP didChangeWorkspaceFolders Notification Handler
+     * @param params DidChangeWorkspaceFoldersParams
+     */
+    @Override
+    public void didChangeWorkspaceFolders(DidChangeWorkspaceFoldersParams params) {
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didChangeWorkspaceFolders' Ack");
+        try {
+            for (WorkspaceFolder folder : params.getEvent().getRemoved()) {
+                ((PolyglotTextDocumentService) this.languageServer.getTextDocumentService()).removeWorkspace(Paths.get(new URI(folder.getUri())));
+            }
+            for (WorkspaceFolder folder : params.getEvent().getAdded()) {
+                ((PolyglotTextDocumentService) this.languageServer.getTextDocumentService()).addWorkspace(Paths.get(new URI(folder.getUri())));
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            System.err.println(e);
+        }
+        this.languageServer.metrics.stop("workspace/didChangeWorkspaceFolders", start);
     }
 
     /**
@@ -27,7 +71,9 @@ public class PolyglotWorkspaceService implements WorkspaceService {
      */
     @Override
     public void didChangeConfiguration(DidChangeConfigurationParams didChangeConfigurationParams) {
-        this.clientLogger.logMessage("Operation 'workspace/didChangeConfiguration' Ack");
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didChangeConfiguration' Ack");
+        this.languageServer.metrics.stop("workspace/didChangeConfiguration", start);
     }
 
     /**
@@ -36,16 +82,33 @@ public class PolyglotWorkspaceService implements WorkspaceService {
      */
     @Override
     public void didChangeWatchedFiles(DidChangeWatchedFilesParams didChangeWatchedFilesParams) {
-        this.clientLogger.logMessage("Operation 'workspace/didChangeWatchedFiles' Ack");
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didChangeWatchedFiles' Ack");
+        // The files created, changed or deleted on disk must be read again
+        for (FileEvent event : didChangeWatchedFilesParams.getChanges()) {
+            try {
+                Path path = Paths.get(new URI(event.getUri()));
+                this.languageServer.contentStore.invalidate(path);
+                // A deleted file no longer exports anything to completion, rename & import/export checks : its programs are checked again
+                if(event.getType() == FileChangeType.Deleted) ((PolyglotTextDocumentService) this.languageServer.getTextDocumentService()).deleteFile(path);
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                System.err.println(e);
+            }
+        }
+        this.languageServer.metrics.stop("workspace/didChangeWatchedFiles", start);
     }
 
     @Override
     public void didCreateFiles(CreateFilesParams params) {
-        this.clientLogger.logMessage("Operation 'workspace/didCreateFiles' Ack : "+params.toString());
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didCreateFiles' Ack : "+params.toString());
+        this.languageServer.metrics.stop("workspace/didCreateFiles", start);
     }
 
     @Override
     public void didDeleteFiles(DeleteFilesParams params) {
-        this.clientLogger.logMessage("Operation 'workspace/didDeleteFiles' Ack : "+params.toString());
+        long start = this.languageServer.metrics.start();
+        this.clientLogger.log(MessageType.Log, () -> "Operation 'workspace/didDeleteFiles' Ack : "+params.toString());
+        this.languageServer.metrics.stop("workspace/didDeleteFiles", start);
     }
 }
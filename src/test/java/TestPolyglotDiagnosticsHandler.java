@@ -0,0 +1,264 @@
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.DiagnosticSeverity;
+import org.eclipse.lsp4j.DocumentDiagnosticReport;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.PreviousResultId;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.WorkspaceDiagnosticReport;
+import org.eclipse.lsp4j.WorkspaceDocumentDiagnosticReport;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPolyglotDiagnosticsHandler {
+
+    private static final String URI = "file:///tmp/host.py";
+    private static final Path HOST = Paths.get("/tmp/host.py");
+
+    private LanguageClient client;
+    private boolean pull;
+    private PolyglotDiagnosticsHandler handler;
+    private List<PublishDiagnosticsParams> published;
+    private AtomicInteger refreshes;
+
+    @BeforeEach
+    public void setUp(){
+        this.published = new ArrayList<>();
+        this.refreshes = new AtomicInteger();
+        this.client = new RecordingLanguageClient(this.published, this.refreshes);
+        this.pull = false;
+        this.handler = new PolyglotDiagnosticsHandler(() -> this.client, () -> this.pull, new PolyglotMetrics(false));
+    }
+
+    private static Diagnostic diagnostic(int line, int character, String message){
+        return new Diagnostic(new Range(new Position(line, character), new Position(line, character + 5)), message, DiagnosticSeverity.Error, "polyglot");
+    }
+
+    @Test
+    public void unchangedDiagnosticsSuppressedTest(){
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.publishDiagnosticsIfChanged(URI);
+        this.handler.flush();
+        assertEquals(1, this.published.size());
+
+        // Same diagnostics after a new analysis : not sent again
+        this.handler.clearDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.publishDiagnosticsIfChanged(URI);
+        this.handler.flush();
+        assertEquals(1, this.published.size());
+
+        // Unless the publish is forced
+        this.handler.publishDiagnostics(URI);
+        this.handler.flush();
+        assertEquals(2, this.published.size());
+    }
+
+    @Test
+    public void changedDiagnosticsPublishedTest(){
+        Diagnostic diagnostic = diagnostic(3, 4, "x is not exported");
+        this.handler.addDiagnostic(URI, diagnostic, DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.publishDiagnosticsIfChanged(URI);
+        this.handler.flush();
+        assertEquals(1, this.published.size());
+
+        // Moved diagnostic
+        Range moved = new Range(new Position(5, 4), new Position(5, 9));
+        assertTrue(this.handler.remapDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, Map.of(diagnostic.getRange(), moved)));
+        this.handler.publishDiagnosticsIfChanged(URI);
+        this.handler.flush();
+        assertEquals(2, this.published.size());
+        assertEquals(moved, this.published.get(1).getDiagnostics().get(0).getRange());
+
+        // Same range, other message
+        this.handler.clearDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(URI, diagnostic(5, 4, "y is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.publishDiagnosticsIfChanged(URI);
+        this.handler.flush();
+        assertEquals(3, this.published.size());
+        assertEquals("y is not exported", this.published.get(2).getDiagnostics().get(0).getMessage());
+    }
+
+    @Test
+    public void largePositionsTest(){
+        Range range = new Range(new Position(Integer.MAX_VALUE, 0), new Position(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        this.handler.addDiagnostic(URI, new Diagnostic(range, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+
+        // Positions are packed in the stored diagnostics, they must come back unchanged
+        List<Diagnostic> diagnostics = this.handler.getDiagnostics(URI);
+        assertEquals(1, diagnostics.size());
+        assertEquals(range, diagnostics.get(0).getRange());
+        assertNull(diagnostics.get(0).getSeverity());
+        Range moved = new Range(new Position(Integer.MAX_VALUE - 1, Integer.MAX_VALUE), new Position(Integer.MAX_VALUE, 1));
+        assertTrue(this.handler.remapDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, Map.of(range, moved)));
+        assertEquals(moved, this.handler.getDiagnostics(URI).get(0).getRange());
+    }
+
+    /**
+     * End an analysis : the changed diagnostics of the files are flushed
+     */
+    private void flush(String... uris){
+        for (String uri : uris) {
+            this.handler.publishDiagnosticsIfChanged(uri);
+        }
+        this.handler.flush();
+    }
+
+    @Test
+    public void documentReportTest(){
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI);
+        DocumentDiagnosticReport report = this.handler.getDocumentReport(URI, null);
+        assertTrue(report.isLeft());
+        assertEquals(1, report.getLeft().getItems().size());
+        String resultId = report.getLeft().getResultId();
+        assertNotNull(resultId);
+
+        // Same result id : unchanged
+        report = this.handler.getDocumentReport(URI, resultId);
+        assertTrue(report.isRight());
+        assertEquals(resultId, report.getRight().getResultId());
+
+        // A diagnostic changed : full report with a new result id
+        this.handler.clearDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "y is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI);
+        report = this.handler.getDocumentReport(URI, resultId);
+        assertTrue(report.isLeft());
+        assertNotEquals(resultId, report.getLeft().getResultId());
+        assertEquals("y is not exported", report.getLeft().getItems().get(0).getMessage());
+    }
+
+    @Test
+    public void workspaceReportTest(){
+        String otherUri = "file:///tmp/guest.js";
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(otherUri, diagnostic(1, 0, "y is not imported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI, otherUri);
+        WorkspaceDiagnosticReport report = this.handler.getWorkspaceReport(null);
+        assertEquals(2, report.getItems().size());
+        List<PreviousResultId> previous = new ArrayList<>();
+        for (WorkspaceDocumentDiagnosticReport item : report.getItems()) {
+            assertTrue(item.isLeft());
+            previous.add(new PreviousResultId(item.getLeft().getUri(), item.getLeft().getResultId()));
+        }
+
+        // Only the file whose diagnostics changed gets a full report
+        this.handler.clearDiagnostics(otherUri, DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(otherUri, diagnostic(2, 0, "y is not imported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI, otherUri);
+        report = this.handler.getWorkspaceReport(previous);
+        assertEquals(2, report.getItems().size());
+        for (WorkspaceDocumentDiagnosticReport item : report.getItems()) {
+            if(item.isRight()){
+                assertEquals(URI, item.getRight().getUri());
+            } else {
+                assertEquals(otherUri, item.getLeft().getUri());
+                assertEquals(new Position(2, 0), item.getLeft().getItems().get(0).getRange().getStart());
+            }
+        }
+    }
+
+    @Test
+    public void reportDuringRebuildTest(){
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.handler.addDiagnostic(URI, diagnostic(6, 0, "guest.js not found"), DiagnosticCategory.FILENOTFOUND, HOST);
+        this.flush(URI);
+        String resultId = this.handler.getDocumentReport(URI, null).getLeft().getResultId();
+
+        // An analysis is rebuilding the diagnostics of the file : the pulled report is the one of the last analysis
+        this.handler.clearDiagnostics(URI, DiagnosticCategory.IMPORTEXPORT, HOST);
+        DocumentDiagnosticReport report = this.handler.getDocumentReport(URI, null);
+        assertEquals(2, report.getLeft().getItems().size());
+        assertEquals(resultId, report.getLeft().getResultId());
+        assertTrue(this.handler.getDocumentReport(URI, resultId).isRight());
+
+        // Same diagnostics at the end of the analysis : still unchanged
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI);
+        assertTrue(this.handler.getDocumentReport(URI, resultId).isRight());
+    }
+
+    @Test
+    public void pullRefreshTest(){
+        this.pull = true;
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.IMPORTEXPORT, HOST);
+        this.flush(URI);
+        // Nothing pushed, the client is asked to pull again
+        assertTrue(this.published.isEmpty());
+        assertEquals(1, this.refreshes.get());
+
+        // Same diagnostics : no refresh
+        this.flush(URI);
+        assertEquals(1, this.refreshes.get());
+
+        this.handler.clearDiagnostics(new HashSet<>(List.of(URI)));
+        assertTrue(this.published.isEmpty());
+        assertEquals(2, this.refreshes.get());
+    }
+
+    @Test
+    public void clearWithoutClientTest(){
+        this.client = null;
+        this.handler.addDiagnostic(URI, diagnostic(3, 4, "x is not exported"), DiagnosticCategory.FILENOTFOUND, HOST);
+        this.handler.clearDiagnostics(URI, DiagnosticCategory.ALL, HOST);
+        assertTrue(this.handler.getDiagnostics(URI).isEmpty());
+    }
+
+    /**
+     * Client recording the diagnostics published
+     */
+    private static class RecordingLanguageClient implements LanguageClient {
+
+        private final List<PublishDiagnosticsParams> published; // Diagnostics published, in order
+        private final AtomicInteger refreshes; // Number of refresh requests
+
+        RecordingLanguageClient(List<PublishDiagnosticsParams> published, AtomicInteger refreshes){
+            this.published = published;
+            this.refreshes = refreshes;
+        }
+
+        @Override
+        public CompletableFuture<Void> refreshDiagnostics() {
+            this.refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+            this.published.add(diagnostics);
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestPolyglotDocumentBuffer {
+
+    @Test
+    public void incrementalChangesTest(){
+        PolyglotDocumentBuffer buffer = new PolyglotDocumentBuffer("import polyglot\nx = 1\n", 1);
+        buffer.applyChanges(List.of(
+                new TextDocumentContentChangeEvent(new Range(new Position(1, 4), new Position(1, 5)), "42"),
+                new TextDocumentContentChangeEvent(new Range(new Position(2, 0), new Position(2, 0)), "y = x\n")), 2);
+        assertEquals("import polyglot\nx = 42\ny = x\n", buffer.getText());
+        assertEquals(4, buffer.getLineCount());
+        assertEquals(2, buffer.getVersion());
+
+        buffer.applyChange(new TextDocumentContentChangeEvent(new Range(new Position(0, 6), new Position(2, 1)), ""));
+        assertEquals("import = x\n", buffer.getText());
+        assertEquals(2, buffer.getLineCount());
+
+        buffer.applyChange(new TextDocumentContentChangeEvent("full\ntext"));
+        assertEquals("full\ntext", buffer.getText());
+        assertEquals(new Position(1, 2), buffer.positionAt(7));
+    }
+
+    @Test
+    public void randomEditionsTest(){
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder("let a = Polyglot.import(\"a\");\r\nPolyglot.export(\"b\", a);\n");
+        PolyglotDocumentBuffer buffer = new PolyglotDocumentBuffer(expected.toString(), 0);
+        String[] insertions = {"", "x", "\n", "foo\nbar", "\r\n", "polyglot.eval(path=\"guest.js\")\n"};
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(8));
+            String text = insertions[random.nextInt(insertions.length)];
+            Range range = new Range(buffer.positionAt(start), buffer.positionAt(end));
+            buffer.applyChange(new TextDocumentContentChangeEvent(range, text));
+            expected.replace(start, end, text);
+            assertEquals(expected.length(), buffer.getLength());
+            if(i % 97 == 0) assertEquals(expected.toString(), buffer.getText());
+        }
+        assertEquals(expected.toString(), buffer.getText());
+        assertEquals(expected.toString().split("\n", -1).length, buffer.getLineCount());
+    }
+}
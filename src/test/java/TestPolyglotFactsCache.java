@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestPolyglotFactsCache {
+
+    @TempDir
+    Path cacheDirectory;
+
+    @TempDir
+    Path workspace;
+
+    private PolyglotFileFacts facts(String name) throws IOException {
+        PolyglotFileFacts facts = new PolyglotFileFacts();
+        facts.language = "python";
+        PolyglotSymbol symbol = new PolyglotSymbol();
+        symbol.kind = PolyglotSymbol.Kind.EXPORT;
+        symbol.name = name;
+        symbol.line = 3;
+        symbol.nameCharacter = 28;
+        facts.symbols.add(symbol);
+        Path guest = this.workspace.resolve("guest.js");
+        if(!Files.exists(guest)) Files.createFile(guest);
+        facts.evaluatedFiles.add(guest.toString());
+        return facts;
+    }
+
+    @Test
+    public void cacheRoundTripTest() throws IOException {
+        Path file = Path.of("/workspace/host.py");
+        ByteBuffer content = ByteBuffer.wrap("polyglot.export_value(name=\"x\", value=1)".getBytes(StandardCharsets.UTF_8));
+        PolyglotFactsCache cache = new PolyglotFactsCache(this.cacheDirectory, 0);
+        cache.put(file, content, facts("x"));
+
+        // Entries survive a restart, and are only found for the same path & content
+        cache = new PolyglotFactsCache(this.cacheDirectory, 0);
+        PolyglotFileFacts cached = cache.get(file, content);
+        assertNotNull(cached);
+        assertEquals("x", cached.symbols.get(0).name);
+        assertEquals(PolyglotSymbol.Kind.EXPORT, cached.symbols.get(0).kind);
+        assertEquals(28, cached.symbols.get(0).nameCharacter);
+        assertEquals(this.workspace.resolve("guest.js").toString(), cached.evaluatedFiles.get(0));
+        assertNull(cache.get(Path.of("/workspace/other.py"), content));
+        assertNull(cache.get(file, ByteBuffer.wrap("changed".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void corruptedEntryTest() throws IOException {
+        Path file = Path.of("/workspace/host.py");
+        ByteBuffer content = ByteBuffer.wrap("x = 1".getBytes(StandardCharsets.UTF_8));
+        PolyglotFactsCache cache = new PolyglotFactsCache(this.cacheDirectory, 0);
+        cache.put(file, content, facts("x"));
+        Path entry;
+        try (Stream<Path> entries = Files.list(this.cacheDirectory)) {
+            entry = entries.findFirst().orElseThrow();
+        }
+        Files.writeString(entry, Files.readString(entry).replace("\\\"x\\\"", "\\\"y\\\""));
+
+        assertNull(cache.get(file, content));
+        assertEquals(1L, cache.getStatistics().get("corrupted"));
+        assertEquals(0, cache.getStatistics().get("entries"));
+    }
+
+    @Test
+    public void evaluatedFilesChangedTest() throws IOException {
+        Path file = this.workspace.resolve("host.py");
+        ByteBuffer content = ByteBuffer.wrap("x = 1".getBytes(StandardCharsets.UTF_8));
+        PolyglotFactsCache cache = new PolyglotFactsCache(this.cacheDirectory, 0);
+        PolyglotFileFacts facts = facts("x");
+        facts.filesNotFound.add("missing.js");
+        cache.put(file, content, facts);
+        assertNotNull(cache.get(file, content));
+
+        // A file not found has been created : the evaluations of the cached facts are outdated
+        Files.createFile(this.workspace.resolve("missing.js"));
+        assertNull(cache.get(file, content));
+        Files.delete(this.workspace.resolve("missing.js"));
+        assertNotNull(cache.get(file, content));
+
+        // An evaluated file has been deleted
+        Files.delete(this.workspace.resolve("guest.js"));
+        assertNull(cache.get(file, content));
+        assertEquals(2L, cache.getStatistics().get("stale"));
+    }
+
+    @Test
+    public void temporaryFilesTest() throws IOException {
+        Files.createFile(this.cacheDirectory.resolve("interrupted.tmp"));
+        new PolyglotFactsCache(this.cacheDirectory, 0);
+        assertFalse(Files.exists(this.cacheDirectory.resolve("interrupted.tmp")));
+    }
+
+    @Test
+    public void evictionTest() throws IOException {
+        PolyglotFactsCache cache = new PolyglotFactsCache(this.cacheDirectory, 0);
+        cache.put(Path.of("/workspace/a.py"), ByteBuffer.wrap(new byte[]{1}), facts("a"));
+        long entrySize = (long) cache.getStatistics().get("bytes");
+
+        // Room for two entries : the least recently used one is evicted
+        cache = new PolyglotFactsCache(this.cacheDirectory, 2 * entrySize + 1);
+        cache.put(Path.of("/workspace/b.py"), ByteBuffer.wrap(new byte[]{1}), facts("b"));
+        assertNotNull(cache.get(Path.of("/workspace/a.py"), ByteBuffer.wrap(new byte[]{1})));
+        cache.put(Path.of("/workspace/c.py"), ByteBuffer.wrap(new byte[]{1}), facts("c"));
+
+        assertNotNull(cache.get(Path.of("/workspace/a.py"), ByteBuffer.wrap(new byte[]{1})));
+        assertNull(cache.get(Path.of("/workspace/b.py"), ByteBuffer.wrap(new byte[]{1})));
+        assertNotNull(cache.get(Path.of("/workspace/c.py"), ByteBuffer.wrap(new byte[]{1})));
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+    }
+}
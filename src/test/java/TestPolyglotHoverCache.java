@@ -0,0 +1,61 @@
+import org.eclipse.lsp4j.Hover;
+import org.eclipse.lsp4j.MarkupContent;
+import org.eclipse.lsp4j.MarkupKind;
+import org.eclipse.lsp4j.Position;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPolyglotHoverCache {
+
+    @Test
+    public void invalidationTest(){
+        PolyglotHoverCache cache = new PolyglotHoverCache(16);
+        Path host = Paths.get("/tmp/host.py");
+        Path evaluated = Paths.get("/tmp/evaluated.js");
+        Set<Path> closure = Set.of(host, evaluated);
+        Hover hover = new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "int"));
+
+        Map<Path, Long> generations = cache.snapshot(closure);
+        assertNull(cache.get("host@1:2", closure));
+        cache.put("host@1:2", hover, generations);
+        assertSame(hover, cache.get("host@1:2", closure));
+
+        // A file of the closure is reparsed
+        cache.invalidate(evaluated);
+        assertNull(cache.get("host@1:2", closure));
+
+        // A hover computed while a file was reparsed is not stored
+        generations = cache.snapshot(closure);
+        cache.invalidate(host);
+        cache.put("host@1:2", hover, generations);
+        assertNull(cache.get("host@1:2", closure));
+
+        // The closure changed (new evaluated file)
+        cache.put("host@1:2", hover, cache.snapshot(closure));
+        assertNull(cache.get("host@1:2", Set.of(host, evaluated, Paths.get("/tmp/other.js"))));
+    }
+
+    @Test
+    public void downstreamTest(){
+        PolyglotHoverCache cache = new PolyglotHoverCache(1);
+        Path file = Paths.get("/tmp/file.py");
+        Hover hover = new Hover(new MarkupContent(MarkupKind.PLAINTEXT, "x -> int\n"));
+        String key = cache.getDownstreamKey(file, new Position(3, 4));
+        cache.putDownstream(key, hover);
+        assertSame(hover, cache.getDownstream(key));
+
+        cache.invalidate(file);
+        assertNotEquals(key, cache.getDownstreamKey(file, new Position(3, 4)));
+
+        // Least recently used responses are dropped
+        cache.putDownstream(cache.getDownstreamKey(file, new Position(5, 6)), hover);
+        assertNull(cache.getDownstream(key));
+        assertEquals(1, cache.getStatistics().get("downstreamHovers"));
+    }
+}
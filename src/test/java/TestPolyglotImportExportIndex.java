@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPolyglotImportExportIndex {
+
+    @Test
+    public void importableNamesTest(){
+        PolyglotImportExportIndex index = new PolyglotImportExportIndex();
+        Path host = Paths.get("/tmp/host.py");
+        Path evaluated = Paths.get("/tmp/evaluated.js");
+        index.update(host, facts(List.of(evaluated.toString()), symbol(PolyglotSymbol.Kind.EXPORT, "alpha"), symbol(PolyglotSymbol.Kind.IMPORT, "beta")));
+        index.update(evaluated, facts(List.of(), symbol(PolyglotSymbol.Kind.EXPORT, "beta"), symbol(PolyglotSymbol.Kind.EXPORT, "bravo")));
+
+        assertArrayEquals(new String[]{"alpha"}, index.getImportableNames(evaluated));
+        assertArrayEquals(new String[]{"bravo"}, index.getImportableNames(host));
+        assertNull(index.getImportableNames(Paths.get("/tmp/other.py")));
+
+        // The sets of the programs of a file are updated when its exports change
+        index.update(evaluated, facts(List.of(), symbol(PolyglotSymbol.Kind.EXPORT, "beta"), symbol(PolyglotSymbol.Kind.EXPORT, "bravo"), symbol(PolyglotSymbol.Kind.EXPORT, "charlie")));
+        assertArrayEquals(new String[]{"bravo", "charlie"}, index.getImportableNames(host));
+
+        String[] names = {"alpha", "beta", "bravo", "charlie"};
+        assertEquals(List.of("beta", "bravo"), PolyglotImportExportIndex.withPrefix(names, "b"));
+        assertEquals(List.of("bravo"), PolyglotImportExportIndex.withPrefix(names, "br"));
+        assertEquals(List.of(), PolyglotImportExportIndex.withPrefix(names, "d"));
+        assertEquals(4, PolyglotImportExportIndex.withPrefix(names, "").size());
+    }
+
+    @Test
+    public void evalGraphTest(){
+        PolyglotEvalGraph graph = new PolyglotEvalGraph();
+        Path host = Paths.get("/tmp/host.py");
+        Path otherHost = Paths.get("/tmp/other.py");
+        Path middle = Paths.get("/tmp/middle.js");
+        Path leaf = Paths.get("/tmp/leaf.py");
+        assertTrue(graph.setEvaluatedFiles(host, List.of(middle)));
+        assertTrue(graph.setEvaluatedFiles(middle, List.of(leaf, leaf)));
+        assertTrue(graph.setEvaluatedFiles(otherHost, List.of(leaf)));
+        assertFalse(graph.setEvaluatedFiles(middle, List.of(leaf)));
+        assertEquals(3, graph.getEdgeCount());
+
+        assertEquals(Set.of(host, otherHost), graph.getHosts(leaf));
+        assertEquals(Set.of(host), graph.getHosts(middle));
+        assertEquals(Set.of(host, middle, leaf, otherHost), graph.getHostClosure(leaf));
+        assertEquals(Set.of(host, middle, leaf), graph.getHostClosure(host));
+        assertEquals(Set.of(middle, otherHost), graph.getEvaluators(leaf));
+
+        // The evaluation is removed from the file
+        assertTrue(graph.setEvaluatedFiles(middle, List.of()));
+        assertEquals(Set.of(otherHost), graph.getHosts(leaf));
+        assertEquals(Set.of(host, middle), graph.getHostClosure(middle));
+        assertEquals(2, graph.getEdgeCount());
+    }
+
+    private static PolyglotFileFacts facts(List<String> evaluatedFiles, PolyglotSymbol... symbols){
+        PolyglotFileFacts facts = new PolyglotFileFacts();
+        facts.language = "python";
+        facts.evaluatedFiles.addAll(evaluatedFiles);
+        facts.symbols.addAll(List.of(symbols));
+        return facts;
+    }
+
+    private static PolyglotSymbol symbol(PolyglotSymbol.Kind kind, String name){
+        PolyglotSymbol symbol = new PolyglotSymbol();
+        symbol.kind = kind;
+        symbol.name = name;
+        return symbol;
+    }
+}
@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestPolyglotMetrics {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void timersTest(){
+        PolyglotMetrics metrics = new PolyglotMetrics(true);
+        for (int i = 0; i < 100; i++) {
+            metrics.stop("textDocument/didChange", metrics.start());
+        }
+        CompletableFuture<Object> failed = metrics.stopWhenComplete("textDocument/hover", metrics.start(), new CompletableFuture<>());
+        failed.completeExceptionally(new IllegalStateException());
+        metrics.increment("downstream/python/textDocument/didOpen");
+
+        Map<String, Object> statistics = metrics.getStatistics();
+        Map<String, Map<String, Object>> timers = (Map<String, Map<String, Object>>) statistics.get("timers");
+        assertEquals(100L, timers.get("textDocument/didChange").get("count"));
+        assertTrue((double) timers.get("textDocument/didChange").get("p50Ms") <= (double) timers.get("textDocument/didChange").get("maxMs"));
+        assertEquals(1L, timers.get("textDocument/hover").get("errors"));
+        assertEquals(1L, ((Map<String, Object>) statistics.get("counters")).get("downstream/python/textDocument/didOpen"));
+    }
+
+    @Test
+    public void disabledTest(){
+        PolyglotMetrics metrics = new PolyglotMetrics(false);
+        assertEquals(0, metrics.start());
+        metrics.stop("textDocument/didChange", metrics.start());
+        metrics.increment("downstream/python/textDocument/didOpen");
+        assertTrue(((Map<?, ?>) metrics.getStatistics().get("timers")).isEmpty());
+        assertTrue(((Map<?, ?>) metrics.getStatistics().get("counters")).isEmpty());
+    }
+}